@@ -0,0 +1,87 @@
+package org.util.text.regex;
+
+import org.openjdk.jmh.annotations.*;
+import org.util.text.regex.nfa.BitParallelMatcher;
+import org.util.text.regex.nfa.BytecodeMatcher;
+import org.util.text.regex.nfa.Dfa;
+import org.util.text.regex.nfa.Nfa;
+import org.util.text.regex.nfa.PatternMatcher;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The matching engines on the same pattern and input: the generated {@link BytecodeMatcher} against the interpreted
+ * {@link Nfa}, lazy DFA, {@link Dfa} table and {@link BitParallelMatcher}. The input is random text over the pattern's
+ * letters, so {@code matches} fails only near its end and {@code find} scans for the pattern's suffix.
+ *
+ * @author ahmad
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MatcherBenchmark {
+
+    public enum Engine {
+        NFA, LAZY_DFA, DFA, BIT_PARALLEL, BYTECODE
+    }
+
+    @Param({"(a|b)*abbab", "((a|b)(c|d))*(ab|cd)*", "(ERROR|WARN|FATAL)"})
+    public String pattern;
+
+    @Param({"NFA", "LAZY_DFA", "DFA", "BIT_PARALLEL", "BYTECODE"})
+    public Engine engine;
+
+    @Param({"100", "10000"})
+    public int length;
+
+    private PatternMatcher matcher;
+    private String input;
+
+    @Setup
+    public void setUp() {
+        ParseTree tree = Parser.parse(pattern);
+        switch (engine) {
+            case NFA:
+                matcher = Nfa.compile(tree);
+                break;
+            case LAZY_DFA:
+                matcher = Nfa.compile(tree).lazyDfa(1 << 20);
+                break;
+            case DFA:
+                matcher = Dfa.compile(tree);
+                break;
+            case BIT_PARALLEL:
+                matcher = BitParallelMatcher.compile(tree);
+                break;
+            default:
+                matcher = BytecodeMatcher.compile(tree);
+        }
+        StringBuilder letters = new StringBuilder();
+        for (char c : pattern.toCharArray()) {
+            if (Character.isLetter(c) && letters.indexOf(String.valueOf(c)) < 0) {
+                letters.append(c);
+            }
+        }
+        Random random = new Random(42);
+        StringBuilder sb = new StringBuilder(length);
+        for (int i = 0; i < length; i++) {
+            sb.append(letters.charAt(random.nextInt(letters.length())));
+        }
+        input = sb.toString();
+    }
+
+    @Benchmark
+    public boolean matches() {
+        return matcher.matches(input);
+    }
+
+    @Benchmark
+    public boolean find() {
+        return matcher.find(input);
+    }
+
+}
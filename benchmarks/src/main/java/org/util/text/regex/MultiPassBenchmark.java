@@ -0,0 +1,102 @@
+package org.util.text.regex;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The multi-pass pipeline end to end and phase by phase. Each phase runs on the output of the phases before it,
+ * prepared once per trial; the phases that mutate the token list run on a copy, so compare them against
+ * {@link #copy()}.
+ * <p>
+ * Several phases are quadratic, so the default sizes stop at 10000; pass {@code -p size=100000} to go further.
+ *
+ * @author ahmad
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class MultiPassBenchmark {
+
+    @Param({"LITERAL", "ESCAPED_LITERAL", "NESTED", "ALTERNATION", "REPETITION"})
+    public PatternFamily family;
+
+    @Param({"10", "100", "1000", "10000"})
+    public int size;
+
+    private String regex;
+    private List<Token> tokenized;
+    private List<Token> escaped;
+    private List<Token> normalized;
+    private Group rootGroup;
+    private List<Parser.OpIndex> opIndices;
+
+    @Setup
+    public void setUp() {
+        regex = family.generate(size);
+        tokenized = Parser.tokenize(regex);
+        escaped = new ArrayList<>(tokenized);
+        Parser.applyEscapeCharacters(escaped);
+        Parser.validate(escaped);
+        normalized = new ArrayList<>(escaped);
+        Parser.normalize(normalized);
+        rootGroup = Parser.group(normalized);
+        opIndices = Parser.indexOperators(normalized, Parser.group(normalized));
+    }
+
+    @Benchmark
+    public ParseTree parse() {
+        return Parser.parse(regex, Parser.Engine.MULTI_PASS);
+    }
+
+    @Benchmark
+    public List<Token> tokenize() {
+        return Parser.tokenize(regex);
+    }
+
+    @Benchmark
+    public List<Token> copy() {
+        return new ArrayList<>(tokenized);
+    }
+
+    @Benchmark
+    public List<Token> applyEscapeCharacters() {
+        List<Token> tokens = new ArrayList<>(tokenized);
+        Parser.applyEscapeCharacters(tokens);
+        return tokens;
+    }
+
+    @Benchmark
+    public List<Token> validate() {
+        Parser.validate(escaped);
+        return escaped;
+    }
+
+    @Benchmark
+    public List<Token> normalize() {
+        List<Token> tokens = new ArrayList<>(escaped);
+        Parser.normalize(tokens);
+        return tokens;
+    }
+
+    @Benchmark
+    public Group group() {
+        return Parser.group(normalized);
+    }
+
+    @Benchmark
+    public List<Parser.OpIndex> indexOperators() {
+        return Parser.indexOperators(normalized, rootGroup);
+    }
+
+    @Benchmark
+    public ParseTree buildTree() {
+        return Parser.buildTree(normalized, opIndices);
+    }
+
+}
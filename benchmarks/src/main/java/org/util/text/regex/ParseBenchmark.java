@@ -0,0 +1,46 @@
+package org.util.text.regex;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * End-to-end {@link Parser#parse(String, Parser.Engine)} on the single-pass engine, plus {@link ParseTree#toString()}.
+ * The multi-pass engine is measured by {@link MultiPassBenchmark}.
+ *
+ * @author ahmad
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ParseBenchmark {
+
+    @Param({"LITERAL", "ESCAPED_LITERAL", "NESTED", "ALTERNATION", "REPETITION"})
+    public PatternFamily family;
+
+    @Param({"10", "100", "1000", "10000", "100000"})
+    public int size;
+
+    private String regex;
+    private ParseTree tree;
+
+    @Setup
+    public void setUp() {
+        regex = family.generate(size);
+        tree = Parser.parse(regex, Parser.Engine.SINGLE_PASS);
+    }
+
+    @Benchmark
+    public ParseTree parse() {
+        return Parser.parse(regex, Parser.Engine.SINGLE_PASS);
+    }
+
+    @Benchmark
+    public String prettyPrint() {
+        return tree.toString();
+    }
+
+}
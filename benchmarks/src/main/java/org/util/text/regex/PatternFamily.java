@@ -0,0 +1,101 @@
+package org.util.text.regex;
+
+/**
+ * Generated pattern shapes; {@code size} is the number of repeated units in the pattern.
+ * <p>
+ * Every pattern is wrapped in a group, so the multi-pass pipeline, which drops a trailing token that needs an
+ * implicit concatenation, builds the same tree as the single-pass engine.
+ *
+ * @author ahmad
+ */
+public enum PatternFamily {
+
+    /**
+     * {@code (abcd...)}
+     */
+    LITERAL {
+        @Override
+        void unit(StringBuilder sb, int i) {
+            sb.append(letter(i));
+        }
+    },
+
+    /**
+     * {@code (\*\+\|\(...)}
+     */
+    ESCAPED_LITERAL {
+        @Override
+        void unit(StringBuilder sb, int i) {
+            sb.append(EscapeCharacter.SYMBOL).append(META_CHARACTERS.charAt(i % META_CHARACTERS.length()));
+        }
+    },
+
+    /**
+     * {@code (a(b(c...z)*)*)}
+     */
+    NESTED {
+        @Override
+        void unit(StringBuilder sb, int i) {
+            sb.append(letter(i)).append('(');
+        }
+
+        @Override
+        void close(StringBuilder sb, int size) {
+            sb.append('z');
+            for (int i = 0; i < size; i++) {
+                sb.append(")*");
+            }
+        }
+    },
+
+    /**
+     * {@code (a|b|c|...)}
+     */
+    ALTERNATION {
+        @Override
+        void unit(StringBuilder sb, int i) {
+            if (i > 0) {
+                sb.append('|');
+            }
+            sb.append(letter(i));
+        }
+    },
+
+    /**
+     * {@code (a*b+c*+...)}
+     */
+    REPETITION {
+        @Override
+        void unit(StringBuilder sb, int i) {
+            sb.append(letter(i)).append(i % 3 == 0 ? "*" : i % 3 == 1 ? "+" : "*+");
+        }
+    };
+
+    private static final String META_CHARACTERS = "*+|()\\";
+
+    String generate(int size) {
+        StringBuilder sb = new StringBuilder(3 * size + 3);
+        sb.append('(');
+        for (int i = 0; i < size; i++) {
+            unit(sb, i);
+        }
+        close(sb, size);
+        return sb.append(')').toString();
+    }
+
+    /**
+     * Appends the {@code i}th unit.
+     */
+    abstract void unit(StringBuilder sb, int i);
+
+    /**
+     * Appends what follows the units, which is nothing unless they leave groups open.
+     */
+    void close(StringBuilder sb, int size) {
+    }
+
+    private static char letter(int i) {
+        return (char) ('a' + i % 26);
+    }
+
+}
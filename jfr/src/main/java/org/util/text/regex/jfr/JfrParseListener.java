@@ -0,0 +1,78 @@
+package org.util.text.regex.jfr;
+
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.FlightRecorderListener;
+import jdk.jfr.Recording;
+import jdk.jfr.RecordingState;
+import org.util.text.regex.ParseListener;
+import org.util.text.regex.Parser;
+
+/**
+ * Publishes each parse phase as a {@code org.util.text.regex.ParsePhase} Flight Recorder event.
+ * <p>
+ * {@link #install()} registers the listener with the {@link Parser} only while a recording is running, so parsing
+ * is not instrumented at all otherwise. It lives in its own module, built for Java 11, as it needs the
+ * {@code jdk.jfr} module, while the library itself targets Java 8.
+ *
+ * @author ahmad
+ */
+public final class JfrParseListener implements ParseListener {
+
+    private static final JfrParseListener INSTANCE = new JfrParseListener();
+
+    private static boolean installed;
+    private static boolean registered;
+
+    private JfrParseListener() {
+    }
+
+    /**
+     * Starts publishing parse events whenever Flight Recorder is recording; calling it again has no effect.
+     */
+    public static synchronized void install() {
+        if (installed) {
+            return;
+        }
+        installed = true;
+        FlightRecorder.addListener(new FlightRecorderListener() {
+            @Override
+            public void recorderInitialized(FlightRecorder recorder) {
+                update(recorder);
+            }
+
+            @Override
+            public void recordingStateChanged(Recording recording) {
+                update(FlightRecorder.getFlightRecorder());
+            }
+        });
+    }
+
+    private static synchronized void update(FlightRecorder recorder) {
+        boolean recording = false;
+        for (Recording r : recorder.getRecordings()) {
+            recording |= r.getState() == RecordingState.RUNNING;
+        }
+        if (recording != registered) {
+            registered = recording;
+            if (recording) {
+                Parser.addListener(INSTANCE);
+            } else {
+                Parser.removeListener(INSTANCE);
+            }
+        }
+    }
+
+    @Override
+    public void phaseCompleted(String regex, Parser.Phase phase, long nanos, int tokens, int count) {
+        ParsePhaseEvent event = new ParsePhaseEvent();
+        if (event.shouldCommit()) {
+            event.phase = phase.name();
+            event.patternLength = regex.length();
+            event.elapsed = nanos;
+            event.tokens = tokens;
+            event.count = count;
+            event.commit();
+        }
+    }
+
+}
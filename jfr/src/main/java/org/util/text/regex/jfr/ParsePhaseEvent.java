@@ -0,0 +1,40 @@
+package org.util.text.regex.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * A Flight Recorder event for one completed phase of parsing a pattern.
+ *
+ * @author ahmad
+ */
+@Name("org.util.text.regex.ParsePhase")
+@Label("Regex Parse Phase")
+@Category("Regex Parser")
+@Description("A phase of parsing a regular expression")
+@StackTrace(false)
+final class ParsePhaseEvent extends Event {
+
+    @Label("Phase")
+    String phase;
+
+    @Label("Pattern Length")
+    int patternLength;
+
+    @Label("Elapsed")
+    @Timespan(Timespan.NANOSECONDS)
+    long elapsed;
+
+    @Label("Tokens")
+    int tokens;
+
+    @Label("Count")
+    @Description("The phase-specific count: tokens, escapes, insertions, groups, operators or nodes")
+    int count;
+
+}
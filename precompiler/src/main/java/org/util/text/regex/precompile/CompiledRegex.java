@@ -0,0 +1,46 @@
+package org.util.text.regex.precompile;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Repeatable;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Declares a pattern to be parsed and compiled at build time.
+ * <p>
+ * For a type {@code Patterns} carrying these annotations, {@link CompiledRegexProcessor} generates the class
+ * {@code CompiledPatterns} in the same package, with for each annotation the constants {@code NAME_PATTERN} (the
+ * pattern), {@code NAME_TREE} (its {@code ParseTree}) and {@code NAME} (its {@code PatternMatcher}). An invalid
+ * pattern is a compilation error.
+ *
+ * @author ahmad
+ */
+@Documented
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+@Repeatable(CompiledRegex.List.class)
+public @interface CompiledRegex {
+
+    /**
+     * The name of the generated constants, a Java identifier. No two names of a type may generate the same constant,
+     * as {@code X} and {@code X_TREE} would.
+     */
+    String name();
+
+    /**
+     * The pattern.
+     */
+    String value();
+
+    @Documented
+    @Retention(RetentionPolicy.SOURCE)
+    @Target(ElementType.TYPE)
+    @interface List {
+
+        CompiledRegex[] value();
+
+    }
+
+}
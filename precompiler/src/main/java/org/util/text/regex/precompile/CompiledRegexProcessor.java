@@ -0,0 +1,187 @@
+package org.util.text.regex.precompile;
+
+import com.sun.source.tree.AnnotationTree;
+import com.sun.source.tree.AssignmentTree;
+import com.sun.source.tree.ClassTree;
+import com.sun.source.tree.ExpressionTree;
+import com.sun.source.tree.Tree;
+import com.sun.source.util.TreePath;
+import com.sun.source.util.Trees;
+import org.util.text.regex.Parser;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.ProcessingEnvironment;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Generates the class of precompiled patterns for each type annotated with {@link CompiledRegex}, reporting invalid
+ * patterns and names as errors on their annotation.
+ * <p>
+ * javac gives no position to the annotations it wraps into a {@link CompiledRegex.List}, so errors on those are
+ * located in the source tree of the type when the compiler provides one, and reported on the type otherwise.
+ *
+ * @author ahmad
+ */
+@SupportedAnnotationTypes({
+        "org.util.text.regex.precompile.CompiledRegex",
+        "org.util.text.regex.precompile.CompiledRegex.List"
+})
+public final class CompiledRegexProcessor extends AbstractProcessor {
+
+    static final String CLASS_PREFIX = "Compiled";
+
+    private static final int NONE = -1;
+
+    private static final String ANNOTATION = CompiledRegex.class.getCanonicalName();
+    private static final String CONTAINER = CompiledRegex.List.class.getCanonicalName();
+
+    /* null unless the compiler is javac */
+    private Trees trees;
+
+    @Override
+    public synchronized void init(ProcessingEnvironment processingEnv) {
+        super.init(processingEnv);
+        try {
+            trees = Trees.instance(processingEnv);
+        } catch (IllegalArgumentException e) {
+            trees = null;
+        }
+    }
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment round) {
+        Set<Element> types = new LinkedHashSet<>();
+        for (TypeElement annotation : annotations) {
+            types.addAll(round.getElementsAnnotatedWith(annotation));
+        }
+        for (Element type : types) {
+            generate((TypeElement) type);
+        }
+        return true;
+    }
+
+    private void generate(TypeElement type) {
+        Map<String, String> patterns = new LinkedHashMap<>();
+        Map<String, String> constants = new HashMap<>();
+        boolean valid = true;
+        for (AnnotationMirror mirror : type.getAnnotationMirrors()) {
+            String annotation = ((TypeElement) mirror.getAnnotationType().asElement()).getQualifiedName().toString();
+            if (annotation.equals(ANNOTATION)) {
+                valid &= add(type, mirror, NONE, patterns, constants);
+            } else if (annotation.equals(CONTAINER)) {
+                List<?> values = (List<?>) value(mirror, "value").getValue();
+                for (int i = 0; i < values.size(); i++) {
+                    AnnotationMirror repeated = (AnnotationMirror) ((AnnotationValue) values.get(i)).getValue();
+                    valid &= add(type, repeated, i, patterns, constants);
+                }
+            }
+        }
+        if (!valid) {
+            return;
+        }
+        String packageName = packageOf(type).getQualifiedName().toString();
+        String simpleName = CLASS_PREFIX + type.getSimpleName();
+        String qualifiedName = packageName.isEmpty() ? simpleName : packageName + '.' + simpleName;
+        try (Writer out = processingEnv.getFiler().createSourceFile(qualifiedName, type).openWriter()) {
+            out.write(SourceGenerator.generate(packageName, simpleName, patterns));
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Cannot write " + qualifiedName + ": " + e.getMessage(), type);
+        }
+    }
+
+    /**
+     * Validates the name and pattern of {@code mirror}, the {@code repeat}th of the repeated annotations or
+     * {@link #NONE} if it is not repeated, and adds the pattern to {@code patterns}.
+     *
+     * @return {@code false} if an error was reported
+     */
+    private boolean add(TypeElement type, AnnotationMirror mirror, int repeat, Map<String, String> patterns,
+                        Map<String, String> constants) {
+        AnnotationValue name = value(mirror, "name");
+        AnnotationValue value = value(mirror, "value");
+        String error = SourceGenerator.checkName((String) name.getValue(), constants);
+        if (error != null) {
+            report(error, type, mirror, repeat, "name", name);
+            return false;
+        }
+        try {
+            Parser.parse((String) value.getValue());
+        } catch (PatternSyntaxException e) {
+            report(e.getMessage(), type, mirror, repeat, "value", value);
+            return false;
+        }
+        patterns.put((String) name.getValue(), (String) value.getValue());
+        return true;
+    }
+
+    /**
+     * Reports {@code error} on the element {@code element} of {@code mirror}, whose value is {@code value}.
+     */
+    private void report(String error, TypeElement type, AnnotationMirror mirror, int repeat, String element,
+                        AnnotationValue value) {
+        TreePath path = repeat == NONE || trees == null ? null : trees.getPath(type);
+        if (path != null && path.getLeaf() instanceof ClassTree) {
+            int seen = 0;
+            for (AnnotationTree annotation : ((ClassTree) path.getLeaf()).getModifiers().getAnnotations()) {
+                Element annotationType = trees.getElement(new TreePath(path, annotation.getAnnotationType()));
+                if (!(annotationType instanceof TypeElement)
+                        || !((TypeElement) annotationType).getQualifiedName().contentEquals(ANNOTATION)
+                        || seen++ != repeat) {
+                    continue;
+                }
+                Tree located = annotation;
+                for (ExpressionTree argument : annotation.getArguments()) {
+                    if (argument instanceof AssignmentTree && ((AssignmentTree) argument).getVariable().toString()
+                            .equals(element)) {
+                        located = ((AssignmentTree) argument).getExpression();
+                    }
+                }
+                trees.printMessage(Diagnostic.Kind.ERROR, error, located, path.getCompilationUnit());
+                return;
+            }
+        }
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, error, type, mirror, value);
+    }
+
+    private static AnnotationValue value(AnnotationMirror mirror, String element) {
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : mirror.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(element)) {
+                return entry.getValue();
+            }
+        }
+        throw new IllegalStateException("@" + mirror.getAnnotationType() + " has no " + element);
+    }
+
+    private static PackageElement packageOf(Element element) {
+        while (!(element instanceof PackageElement)) {
+            element = element.getEnclosingElement();
+        }
+        return (PackageElement) element;
+    }
+
+}
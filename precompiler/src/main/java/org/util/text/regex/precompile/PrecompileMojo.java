@@ -0,0 +1,89 @@
+package org.util.text.regex.precompile;
+
+import org.apache.maven.plugin.AbstractMojo;
+import org.apache.maven.plugin.MojoExecutionException;
+import org.apache.maven.plugin.MojoFailureException;
+import org.apache.maven.plugins.annotations.LifecyclePhase;
+import org.apache.maven.plugins.annotations.Mojo;
+import org.apache.maven.plugins.annotations.Parameter;
+import org.apache.maven.project.MavenProject;
+import org.util.text.regex.Parser;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Parses the configured patterns and generates the class holding them precompiled, as {@link CompiledRegexProcessor}
+ * does for an annotated type, then adds it to the compile sources. Invalid patterns fail the build.
+ *
+ * @author ahmad
+ */
+@Mojo(name = "precompile", defaultPhase = LifecyclePhase.GENERATE_SOURCES, threadSafe = true)
+public final class PrecompileMojo extends AbstractMojo {
+
+    /**
+     * The fully qualified name of the generated class.
+     */
+    @Parameter(required = true)
+    private String className;
+
+    /**
+     * The patterns, keyed by the name of their constants.
+     */
+    @Parameter(required = true)
+    private Map<String, String> patterns;
+
+    @Parameter(defaultValue = "${project.build.directory}/generated-sources/regex", required = true)
+    private File outputDirectory;
+
+    @Parameter(defaultValue = "${project}", readonly = true, required = true)
+    private MavenProject project;
+
+    @Override
+    public void execute() throws MojoExecutionException, MojoFailureException {
+        Map<String, String> sorted = new TreeMap<>(patterns);
+        Map<String, String> constants = new HashMap<>();
+        List<String> errors = new ArrayList<>();
+        for (Map.Entry<String, String> entry : sorted.entrySet()) {
+            String error = SourceGenerator.checkName(entry.getKey(), constants);
+            if (error != null) {
+                errors.add(error);
+                continue;
+            }
+            try {
+                Parser.parse(entry.getValue());
+            } catch (PatternSyntaxException e) {
+                errors.add(entry.getKey() + ": " + e.getMessage());
+            }
+        }
+        if (!errors.isEmpty()) {
+            throw new MojoFailureException("Invalid patterns:\n" + String.join("\n", errors));
+        }
+        int dot = className.lastIndexOf('.');
+        String packageName = dot < 0 ? "" : className.substring(0, dot);
+        String source = SourceGenerator.generate(packageName, className.substring(dot + 1), sorted);
+        Path file = outputDirectory.toPath().resolve(className.replace('.', File.separatorChar) + ".java");
+        try {
+            byte[] bytes = source.getBytes(StandardCharsets.UTF_8);
+            if (!Files.exists(file) || !Arrays.equals(Files.readAllBytes(file), bytes)) {
+                Files.createDirectories(file.getParent());
+                Files.write(file, bytes);
+                getLog().info("Precompiled " + sorted.size() + " patterns into " + file);
+            }
+        } catch (IOException e) {
+            throw new MojoExecutionException("Cannot write " + file, e);
+        }
+        project.addCompileSourceRoot(outputDirectory.getPath());
+    }
+
+}
@@ -0,0 +1,166 @@
+package org.util.text.regex.precompile;
+
+import org.util.text.regex.ParseTree;
+import org.util.text.regex.ParseTreeCodec;
+import org.util.text.regex.Parser;
+import org.util.text.regex.nfa.Dfa;
+
+import javax.lang.model.SourceVersion;
+import java.nio.ByteBuffer;
+import java.util.Map;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Writes the Java source of a class holding precompiled patterns.
+ * <p>
+ * Each pattern is parsed here, and the generated class only decodes the embedded {@link ParseTreeCodec} encoding of
+ * its tree and wraps the embedded table of its {@link Dfa}, so loading the class parses and validates nothing.
+ * Patterns whose DFA is too large get an {@code Nfa} compiled from the decoded tree instead.
+ *
+ * @author ahmad
+ */
+final class SourceGenerator {
+
+    static final int MAX_TABLE_BYTES = 1 << 16;
+
+    /* chars per string constant, well below the 65535 bytes a class file constant can hold */
+    private static final int CHUNK_CHARS = 16384;
+
+    /* appended to the name of a pattern to name its constants */
+    private static final String[] SUFFIXES = {"", "_PATTERN", "_TREE"};
+
+    private SourceGenerator() {
+    }
+
+    /**
+     * Returns an error message if {@code name} cannot name the constants of a pattern, or if one of them is in
+     * {@code constants}, which maps the constants of the names checked so far to their name. Otherwise adds the
+     * constants of {@code name} and returns {@code null}.
+     */
+    static String checkName(String name, Map<String, String> constants) {
+        if (!SourceVersion.isName(name)) {
+            return "Not a Java identifier: " + name;
+        }
+        for (String suffix : SUFFIXES) {
+            String other = constants.get(name + suffix);
+            if (other != null) {
+                return other.equals(name) ? "Duplicate pattern name " + name
+                        : "Pattern names " + other + " and " + name + " both generate " + name + suffix;
+            }
+        }
+        for (String suffix : SUFFIXES) {
+            constants.put(name + suffix, name);
+        }
+        return null;
+    }
+
+    /**
+     * Returns the source of the class {@code simpleName} in package {@code packageName} holding {@code patterns},
+     * keyed by constant name, in iteration order.
+     *
+     * @throws PatternSyntaxException if a pattern is invalid
+     */
+    static String generate(String packageName, String simpleName, Map<String, String> patterns) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("// Generated by the RegexParser precompiler. Do not edit.\n");
+        if (!packageName.isEmpty()) {
+            sb.append("package ").append(packageName).append(";\n\n");
+        }
+        sb.append("import org.util.text.regex.ParseTree;\n")
+                .append("import org.util.text.regex.ParseTreeCodec;\n")
+                .append("import org.util.text.regex.nfa.Dfa;\n")
+                .append("import org.util.text.regex.nfa.Nfa;\n")
+                .append("import org.util.text.regex.nfa.PatternMatcher;\n\n")
+                .append("import java.nio.ByteBuffer;\n")
+                .append("import java.nio.charset.StandardCharsets;\n\n")
+                .append("public final class ").append(simpleName).append(" {\n");
+        for (Map.Entry<String, String> entry : patterns.entrySet()) {
+            String name = entry.getKey();
+            ParseTree tree = Parser.parse(entry.getValue());
+            ByteBuffer table = dfaTable(tree);
+            sb.append('\n')
+                    .append("    public static final String ").append(name).append("_PATTERN = ");
+            literal(sb, entry.getValue());
+            sb.append(";\n")
+                    .append("    public static final ParseTree ").append(name)
+                    .append("_TREE = ParseTreeCodec.read(bytes(");
+            bytes(sb, ParseTreeCodec.encode(tree));
+            sb.append("));\n")
+                    .append("    public static final PatternMatcher ").append(name).append(" = ");
+            if (table != null) {
+                sb.append("Dfa.wrap(bytes(");
+                bytes(sb, table);
+                sb.append("));\n");
+            } else {
+                sb.append("Nfa.compile(").append(name).append("_TREE);\n");
+            }
+        }
+        sb.append('\n')
+                .append("    private ").append(simpleName).append("() {\n")
+                .append("    }\n\n")
+                .append("    private static ByteBuffer bytes(String... chunks) {\n")
+                .append("        StringBuilder sb = new StringBuilder();\n")
+                .append("        for (String chunk : chunks) {\n")
+                .append("            sb.append(chunk);\n")
+                .append("        }\n")
+                .append("        return ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.ISO_8859_1));\n")
+                .append("    }\n\n")
+                .append("}\n");
+        return sb.toString();
+    }
+
+    /**
+     * Returns the table of the DFA of {@code tree}, or {@code null} if it has too many states or classes or exceeds
+     * {@value #MAX_TABLE_BYTES} bytes.
+     */
+    private static ByteBuffer dfaTable(ParseTree tree) {
+        try {
+            ByteBuffer table = Dfa.compile(tree).toByteBuffer();
+            return table.remaining() <= MAX_TABLE_BYTES ? table : null;
+        } catch (IllegalArgumentException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Appends the remaining bytes of {@code buffer} as Latin-1 string literals, one per chunk.
+     */
+    private static void bytes(StringBuilder sb, ByteBuffer buffer) {
+        for (int i = 0; buffer.hasRemaining(); i++) {
+            if (i > 0) {
+                sb.append(",\n            ");
+            }
+            sb.append('"');
+            for (int n = 0; n < CHUNK_CHARS && buffer.hasRemaining(); n++) {
+                escape(sb, (char) (buffer.get() & 0xFF));
+            }
+            sb.append('"');
+        }
+    }
+
+    private static void literal(StringBuilder sb, String s) {
+        sb.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            escape(sb, s.charAt(i));
+        }
+        sb.append('"');
+    }
+
+    /**
+     * Appends {@code ch} as it reads in a string literal. Octal escapes are used instead of unicode escapes, which
+     * the compiler would translate before lexing the literal.
+     */
+    private static void escape(StringBuilder sb, char ch) {
+        if (ch == '"' || ch == '\\') {
+            sb.append('\\').append(ch);
+        } else if (ch >= 0x20 && ch < 0x7F) {
+            sb.append(ch);
+        } else if (ch <= 0xFF) {
+            sb.append('\\').append((char) ('0' + (ch >> 6))).append((char) ('0' + (ch >> 3 & 7)))
+                    .append((char) ('0' + (ch & 7)));
+        } else {
+            sb.append(String.format("\\u%04x", (int) ch));
+        }
+    }
+
+}
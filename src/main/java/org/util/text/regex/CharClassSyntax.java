@@ -0,0 +1,87 @@
+package org.util.text.regex;
+
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The syntax of character classes, shared by both parsing engines: {@code .} matches any character, and
+ * {@code [...]} the listed characters and {@code a-z} ranges, or all others if the list starts with {@code ^}. Within
+ * brackets, an escape character makes the next character literal, and {@code -} is literal at either end of the list.
+ * <p>
+ * Errors are reported with the pattern as written and the offset of the offending character in it, or in the
+ * buffer it was read from.
+ *
+ * @author ahmad
+ */
+final class CharClassSyntax {
+
+    static final char ANY = '.';
+    static final char OPEN = '[';
+    static final char CLOSE = ']';
+    static final char NEGATION = '^';
+    static final char RANGE = '-';
+
+    private CharClassSyntax() {
+    }
+
+    /**
+     * Returns the offset of the {@code ]} closing the class opened at {@code start}.
+     *
+     * @throws PatternSyntaxException if the class is not closed
+     */
+    static int end(CharSequence regex, int start) {
+        for (int i = start + 1, n = regex.length(); i < n; i++) {
+            char ch = regex.charAt(i);
+            if (ch == EscapeCharacter.SYMBOL) {
+                ++i;
+            } else if (ch == CLOSE) {
+                return i;
+            }
+        }
+        throw SourceSequence.syntaxError("Unclosed character class", regex, regex.length());
+    }
+
+    /**
+     * Returns the characters of the class between the {@code [} at {@code start} and the {@code ]} at {@code end}.
+     *
+     * @throws PatternSyntaxException if the class is empty or has a range whose bounds are out of order
+     */
+    static CharSet parse(CharSequence regex, int start, int end) {
+        int i = start + 1;
+        boolean negated = i < end && regex.charAt(i) == NEGATION;
+        if (negated) {
+            ++i;
+        }
+        long[] ranges = new long[end - i];
+        int count = 0;
+        while (i < end) {
+            char lo = regex.charAt(i);
+            if (lo == EscapeCharacter.SYMBOL) {
+                lo = regex.charAt(++i);
+            }
+            ++i;
+            if (i + 1 < end && regex.charAt(i) == RANGE) {
+                int at = ++i;
+                char hi = regex.charAt(i);
+                if (hi == EscapeCharacter.SYMBOL) {
+                    hi = regex.charAt(++i);
+                }
+                ++i;
+                if (hi < lo) {
+                    throw SourceSequence.syntaxError("Illegal character range", regex, at);
+                }
+                ranges[count++] = (long) lo << 16 | hi;
+            } else {
+                ranges[count++] = (long) lo << 16 | lo;
+            }
+        }
+        CharSet set = CharSet.of(ranges, count);
+        if (negated) {
+            set = set.complement();
+        }
+        if (set.isEmpty()) {
+            throw SourceSequence.syntaxError("Empty character class", regex, end);
+        }
+        return set;
+    }
+
+}
@@ -0,0 +1,33 @@
+package org.util.text.regex;
+
+/**
+ * @author ahmad
+ */
+final class CharClassToken extends AbstractToken {
+
+    private final CharSet chars;
+    private final String text;
+
+    /**
+     * @param text the source of the class, with its escape characters removed
+     */
+    CharClassToken(CharSet chars, String text) {
+        this.chars = chars;
+        this.text = text;
+    }
+
+    CharSet getChars() {
+        return chars;
+    }
+
+    @Override
+    public char value() {
+        return text.charAt(0);
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+}
@@ -0,0 +1,239 @@
+package org.util.text.regex;
+
+import java.util.Arrays;
+
+/**
+ * An immutable set of characters, as matched by a character class.
+ * <p>
+ * The set is kept as a sorted array of disjoint, non-adjacent inclusive ranges, which the set operations merge in
+ * linear time, and as a bitset of 256 blocks of 256 characters each for constant-time membership tests. Blocks that
+ * are empty or full share one array, and the block table stops after the last block holding a character, so a class
+ * of ASCII characters costs one block.
+ *
+ * @author ahmad
+ */
+public final class CharSet {
+
+    private static final int UNION = 0;
+    private static final int INTERSECTION = 1;
+    private static final int DIFFERENCE = 2;
+
+    private static final long[] EMPTY_BLOCK = new long[4];
+    private static final long[] FULL_BLOCK = {-1L, -1L, -1L, -1L};
+
+    private static final CharSet EMPTY = new CharSet(new char[0]);
+    private static final CharSet ANY = new CharSet(new char[]{Character.MIN_VALUE, Character.MAX_VALUE});
+
+    /* lo, hi pairs, ascending */
+    private final char[] ranges;
+    private final long[][] blocks;
+    private final int size;
+
+    private CharSet(char[] ranges) {
+        this.ranges = ranges;
+        int count = 0;
+        for (int i = 0; i < ranges.length; i += 2) {
+            count += ranges[i + 1] - ranges[i] + 1;
+        }
+        size = count;
+        blocks = new long[ranges.length == 0 ? 0 : (ranges[ranges.length - 1] >>> 8) + 1][];
+        Arrays.fill(blocks, EMPTY_BLOCK);
+        for (int i = 0; i < ranges.length; i += 2) {
+            int lo = ranges[i], hi = ranges[i + 1];
+            while (lo <= hi) {
+                int b = lo >>> 8, blockEnd = Math.min(hi, lo | 0xFF);
+                if ((lo & 0xFF) == 0 && (blockEnd & 0xFF) == 0xFF) {
+                    blocks[b] = FULL_BLOCK;
+                } else {
+                    if (blocks[b] == EMPTY_BLOCK) {
+                        blocks[b] = new long[4];
+                    }
+                    for (int c = lo; c <= blockEnd; c++) {
+                        blocks[b][(c >>> 6) & 3] |= 1L << c;
+                    }
+                }
+                lo = blockEnd + 1;
+            }
+        }
+    }
+
+    public static CharSet empty() {
+        return EMPTY;
+    }
+
+    /**
+     * Returns the set of all characters, as matched by {@code .}.
+     */
+    public static CharSet any() {
+        return ANY;
+    }
+
+    public static CharSet of(char c) {
+        return new CharSet(new char[]{c, c});
+    }
+
+    /**
+     * Returns the union of the first {@code count} ranges, each packed as its first character in bits 16 to 31 and
+     * its last in the low 16 bits. Sorts the ranges in place.
+     */
+    static CharSet of(long[] ranges, int count) {
+        Arrays.sort(ranges, 0, count);
+        char[] merged = new char[2 * count];
+        int n = 0;
+        for (int i = 0; i < count; i++) {
+            char lo = (char) (ranges[i] >>> 16), hi = (char) ranges[i];
+            if (n > 0 && lo <= merged[n - 1] + 1) {
+                merged[n - 1] = (char) Math.max(merged[n - 1], hi);
+            } else {
+                merged[n++] = lo;
+                merged[n++] = hi;
+            }
+        }
+        return of(merged, n);
+    }
+
+    /**
+     * Returns the characters from {@code lo} to {@code hi}, inclusive.
+     *
+     * @throws IllegalArgumentException if {@code lo > hi}
+     */
+    public static CharSet range(char lo, char hi) {
+        if (lo > hi) {
+            throw new IllegalArgumentException("lo(" + lo + ") > hi(" + hi + ")");
+        }
+        return lo == Character.MIN_VALUE && hi == Character.MAX_VALUE ? ANY : new CharSet(new char[]{lo, hi});
+    }
+
+    public boolean contains(char c) {
+        int b = c >>> 8;
+        return b < blocks.length && (blocks[b][(c >>> 6) & 3] & 1L << c) != 0;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * Returns the number of characters in this set.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the number of disjoint, non-adjacent ranges this set is made of.
+     */
+    public int rangeCount() {
+        return ranges.length >>> 1;
+    }
+
+    /**
+     * Returns the first character of the {@code i}-th range, in ascending order.
+     */
+    public char rangeStart(int i) {
+        return ranges[2 * i];
+    }
+
+    /**
+     * Returns the last character of the {@code i}-th range, in ascending order.
+     */
+    public char rangeEnd(int i) {
+        return ranges[2 * i + 1];
+    }
+
+    public CharSet union(CharSet other) {
+        return combine(other, UNION);
+    }
+
+    public CharSet intersect(CharSet other) {
+        return combine(other, INTERSECTION);
+    }
+
+    public CharSet minus(CharSet other) {
+        return combine(other, DIFFERENCE);
+    }
+
+    public CharSet complement() {
+        return ANY.minus(this);
+    }
+
+    /**
+     * Sweeps the boundaries of both range arrays in ascending order, keeping the runs where {@code operation} holds.
+     */
+    private CharSet combine(CharSet other, int operation) {
+        char[] a = ranges, b = other.ranges;
+        char[] result = new char[a.length + b.length];
+        int n = 0, i = 0, j = 0;
+        boolean inA = false, inB = false, in = false;
+        while (i < a.length || j < b.length) {
+            /* the next boundary, as the first character at which membership may change */
+            int nextA = i < a.length ? (i & 1) == 0 ? a[i] : a[i] + 1 : Integer.MAX_VALUE;
+            int nextB = j < b.length ? (j & 1) == 0 ? b[j] : b[j] + 1 : Integer.MAX_VALUE;
+            int at = Math.min(nextA, nextB);
+            if (nextA == at) {
+                inA = (i++ & 1) == 0;
+            }
+            if (nextB == at) {
+                inB = (j++ & 1) == 0;
+            }
+            boolean now = operation == UNION ? inA || inB : operation == INTERSECTION ? inA && inB : inA && !inB;
+            if (now != in) {
+                result[n++] = (char) (now ? at : at - 1);
+                in = now;
+            }
+        }
+        return of(result, n);
+    }
+
+    private static CharSet of(char[] ranges, int length) {
+        if (length == 0) {
+            return EMPTY;
+        }
+        return length == 2 && ranges[0] == Character.MIN_VALUE && ranges[1] == Character.MAX_VALUE
+                ? ANY : new CharSet(Arrays.copyOf(ranges, length));
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return this == o || o instanceof CharSet && Arrays.equals(ranges, ((CharSet) o).ranges);
+    }
+
+    @Override
+    public int hashCode() {
+        return Arrays.hashCode(ranges);
+    }
+
+    /**
+     * Returns the canonical class syntax of this set: {@code .} for all characters, otherwise the bracketed ranges of
+     * this set or, if it has fewer ranges, the negated ranges of its complement. Equal sets have equal strings.
+     */
+    @Override
+    public String toString() {
+        if (this.equals(ANY)) {
+            return ".";
+        }
+        CharSet complement = complement();
+        boolean negated = complement.rangeCount() < rangeCount();
+        char[] r = negated ? complement.ranges : ranges;
+        StringBuilder sb = new StringBuilder(2 + 3 * r.length);
+        sb.append(negated ? "[^" : "[");
+        for (int i = 0; i < r.length; i += 2) {
+            append(sb, r[i]);
+            if (r[i + 1] != r[i]) {
+                if (r[i + 1] > r[i] + 1) {
+                    sb.append('-');
+                }
+                append(sb, r[i + 1]);
+            }
+        }
+        return sb.append(']').toString();
+    }
+
+    private static void append(StringBuilder sb, char c) {
+        if (c == '\\' || c == '[' || c == ']' || c == '^' || c == '-') {
+            sb.append(EscapeCharacter.SYMBOL);
+        }
+        sb.append(c);
+    }
+
+}
@@ -5,12 +5,24 @@ package org.util.text.regex;
  */
 final class CharToken extends AbstractToken {
 
+    private static final CharToken[] LATIN1 = new CharToken[256];
+
+    static {
+        for (char ch = 0; ch < LATIN1.length; ch++) {
+            LATIN1[ch] = new CharToken(ch);
+        }
+    }
+
     private final char value;
 
-    CharToken(char value) {
+    private CharToken(char value) {
         this.value = value;
     }
 
+    static CharToken of(char value) {
+        return value < LATIN1.length ? LATIN1[value] : new CharToken(value);
+    }
+
     @Override
     public char value() {
         return value;
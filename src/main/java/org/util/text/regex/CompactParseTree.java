@@ -0,0 +1,228 @@
+package org.util.text.regex;
+
+/**
+ * A parse tree stored in parallel primitive arrays, one slot per node.
+ * <p>
+ * Nodes are laid out in the order their {@code r}-labels are numbered, so node {@code i} is labelled
+ * {@code "r" + (i + 1)} and every child precedes its parent. Compared to the {@link TreeNode} graph, a character leaf
+ * and its {@code r}-node share one slot, and the {@code *}, {@code +}, {@code |} and repetition marker nodes are
+ * implied by the operator of their parent; {@link #firstChild(int)} and {@link #nextSibling(int)} walk the remaining
+ * operands. {@link #type(int)}, {@link #value(int)}, {@link #charSet(int)}, {@link #min(int)}, {@link #max(int)} and
+ * the token span read a node in place; {@link #toParseTree()} expands the tree back into {@link TreeNode}s. The sets
+ * of character classes and the bounds of repetitions are kept in arrays allocated only for trees that have them.
+ *
+ * @author ahmad
+ */
+public final class CompactParseTree {
+
+    static final byte CHAR = 0;
+    static final byte EPSILON = 1;
+    static final byte OPERATOR = 2;
+    static final byte CLASS = 3;
+
+    private static final Operator[] OPERATORS = Operator.values();
+
+    private final byte[] kind;
+    private final byte[] operator;
+    private final char[] value;
+    /* null if the tree has no class */
+    private final CharSet[] sets;
+    /* null if the tree has no repetition */
+    private final long[] bounds;
+    private final int[] firstChild;
+    private final int[] nextSibling;
+    private final int[] start;
+    private final int[] end;
+
+    CompactParseTree(byte[] kind, byte[] operator, char[] value, CharSet[] sets, long[] bounds, int[] firstChild,
+                     int[] nextSibling, int[] start, int[] end) {
+        this.kind = kind;
+        this.operator = operator;
+        this.value = value;
+        this.sets = sets;
+        this.bounds = bounds;
+        this.firstChild = firstChild;
+        this.nextSibling = nextSibling;
+        this.start = start;
+        this.end = end;
+    }
+
+    public int size() {
+        return kind.length;
+    }
+
+    public int root() {
+        return kind.length - 1;
+    }
+
+    /**
+     * Returns the first operand of {@code node}, or {@code -1} for a leaf.
+     */
+    public int firstChild(int node) {
+        return firstChild[node];
+    }
+
+    /**
+     * Returns the operand following {@code node} under the same parent, or {@code -1}.
+     */
+    public int nextSibling(int node) {
+        return nextSibling[node];
+    }
+
+    public String label(int node) {
+        return kind[node] == EPSILON ? String.valueOf(Epsilon.SYMBOL) : "r" + (node + 1);
+    }
+
+    /**
+     * Returns the type of the {@link TreeNode} {@code node} expands into: {@link TreeNode.Type#LITERAL},
+     * {@link TreeNode.Type#CHAR_CLASS}, {@link TreeNode.Type#EPSILON} or the type of its operator.
+     */
+    public TreeNode.Type type(int node) {
+        switch (kind[node]) {
+            case CHAR:
+                return TreeNode.Type.LITERAL;
+            case EPSILON:
+                return TreeNode.Type.EPSILON;
+            case CLASS:
+                return TreeNode.Type.CHAR_CLASS;
+            default:
+                switch (OPERATORS[operator[node]]) {
+                    case KLEENE_STAR:
+                        return TreeNode.Type.KLEENE_STAR;
+                    case KLEENE_PLUS:
+                        return TreeNode.Type.KLEENE_PLUS;
+                    case REPETITION:
+                        return TreeNode.Type.REPETITION;
+                    case CONCATENATION:
+                        return TreeNode.Type.CONCATENATION;
+                    default:
+                        return TreeNode.Type.ALTERNATION;
+                }
+        }
+    }
+
+    byte kind(int node) {
+        return kind[node];
+    }
+
+    Operator operator(int node) {
+        return OPERATORS[operator[node]];
+    }
+
+    /**
+     * Returns the character of a {@link TreeNode.Type#LITERAL} node, or the symbol of an
+     * {@link TreeNode.Type#EPSILON} node.
+     *
+     * @throws IllegalStateException if {@code node} is of another type
+     */
+    public char value(int node) {
+        if (kind[node] != CHAR && kind[node] != EPSILON) {
+            throw new IllegalStateException(type(node) + " node has no value");
+        }
+        return value[node];
+    }
+
+    /**
+     * Returns the set of a {@link TreeNode.Type#CHAR_CLASS} node, or {@code null} for other nodes.
+     */
+    public CharSet charSet(int node) {
+        return sets == null ? null : sets[node];
+    }
+
+    /**
+     * Returns the bounds of a {@link Operator#REPETITION} node, packed as by {@link RepetitionSyntax}, or {@code 0}
+     * for other nodes.
+     */
+    long bounds(int node) {
+        return bounds == null ? 0 : bounds[node];
+    }
+
+    /**
+     * Returns the least number of times a {@link TreeNode.Type#REPETITION} node repeats its operand.
+     *
+     * @throws IllegalStateException if {@code node} is of another type
+     * @see TreeNode#getMin()
+     */
+    public int min(int node) {
+        checkRepetition(node);
+        return RepetitionSyntax.min(bounds[node]);
+    }
+
+    /**
+     * Returns the greatest number of times a {@link TreeNode.Type#REPETITION} node repeats its operand, or
+     * {@link TreeNode#UNBOUNDED}.
+     *
+     * @throws IllegalStateException if {@code node} is of another type
+     * @see TreeNode#getMax()
+     */
+    public int max(int node) {
+        checkRepetition(node);
+        return RepetitionSyntax.max(bounds[node]);
+    }
+
+    private void checkRepetition(int node) {
+        if (kind[node] != OPERATOR || OPERATORS[operator[node]] != Operator.REPETITION) {
+            throw new IllegalStateException(type(node) + " node has no bounds");
+        }
+    }
+
+    Range range(int node) {
+        return new Range(start[node], end[node]);
+    }
+
+    /**
+     * Returns the index of the first token of the part of the pattern {@code node} stands for.
+     */
+    public int start(int node) {
+        return start[node];
+    }
+
+    /**
+     * Returns the index past the last token of the part of the pattern {@code node} stands for.
+     */
+    public int end(int node) {
+        return end[node];
+    }
+
+    public ParseTree toParseTree() {
+        TreeNode[] nodes = new TreeNode[kind.length];
+        for (int i = 0; i < nodes.length; i++) {
+            nodes[i] = expand(i, nodes);
+        }
+        return new ParseTree(nodes[nodes.length - 1]);
+    }
+
+    /**
+     * Returns the {@link TreeNode} of {@code node}, whose operands must already be in {@code nodes}.
+     */
+    TreeNode expand(int node, TreeNode[] nodes) {
+        switch (kind[node]) {
+            case CHAR:
+                return TreeNode.nodeFor(value[node], node + 1, new Range(start[node]));
+            case EPSILON:
+                return TreeNode.nodeFor(Epsilon.INSTANCE, node + 1, new Range(start[node]));
+            case CLASS:
+                return TreeNode.nodeFor(sets[node], node + 1, new Range(start[node]));
+            default:
+                TreeNode left = nodes[firstChild[node]];
+                Operator op = OPERATORS[operator[node]];
+                switch (op) {
+                    case KLEENE_STAR:
+                    case KLEENE_PLUS:
+                        return TreeNode.repeat(left, op, new Range(end[node] - 1), node + 1);
+                    case REPETITION:
+                        return TreeNode.repeat(left, bounds[node], new Range(end[node] - 1), node + 1);
+                    case CONCATENATION:
+                        return TreeNode.join(left, nodes[nextSibling[firstChild[node]]], node + 1);
+                    default:
+                        return TreeNode.or(left, nodes[nextSibling[firstChild[node]]], node + 1);
+                }
+        }
+    }
+
+    @Override
+    public String toString() {
+        return toParseTree().toString();
+    }
+
+}
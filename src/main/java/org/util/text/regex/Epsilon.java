@@ -5,7 +5,12 @@ package org.util.text.regex;
  */
 final class Epsilon extends AbstractToken {
 
-    private static final char SYMBOL = 'ε';
+    static final char SYMBOL = 'ε';
+
+    static final Epsilon INSTANCE = new Epsilon();
+
+    private Epsilon() {
+    }
 
     @Override
     public char value() {
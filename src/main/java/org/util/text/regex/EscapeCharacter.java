@@ -7,6 +7,11 @@ final class EscapeCharacter extends AbstractToken {
 
     static final char SYMBOL = '\\';
 
+    static final EscapeCharacter INSTANCE = new EscapeCharacter();
+
+    private EscapeCharacter() {
+    }
+
     @Override
     public char value() {
         return SYMBOL;
@@ -0,0 +1,678 @@
+package org.util.text.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Keeps the parse tree of a pattern up to date as the pattern is edited.
+ * <p>
+ * An edit is re-parsed as the content of the innermost group enclosing it, or of the next enclosing group if that one
+ * is left without an operator; the whole pattern is re-parsed when no group encloses the edit or the edit adds or
+ * removes groups.
+ * <p>
+ * Trees are immutable and share their structure. The parser keeps the nodes of the last parse, and re-parsing a group
+ * builds the nodes of the group, copies the nodes on the path from the root down to it and shares every other node
+ * with the previous tree. The nodes take their labels and token ranges from the number of nodes of each group and the
+ * tokens between consecutive parentheses, held in persistent segment trees that an edit updates by copying the paths
+ * to the counts it changes, and the nodes of a tree are built from them as they are read. Besides copying the pattern,
+ * an edit therefore costs time in proportion to the re-parsed group and its depth in the tree, times the logarithm of
+ * the number of parentheses. The result is the tree {@link Parser#parse(String)} returns for the edited pattern, and a
+ * tree returned earlier is left as it was.
+ * <p>
+ * Instances are not thread-safe.
+ *
+ * @author ahmad
+ */
+public final class IncrementalParser {
+
+    private static final int NONE = -1;
+
+    private static final Node[] NO_OPERANDS = {};
+
+    private String pattern;
+    private ParseTree tree;
+    /* null after an edit left the pattern invalid */
+    private Layout layout;
+    private Node top;
+    /* the characters from each parenthesis to the next, after those before the first */
+    private Lengths chars;
+
+    /* groups: 0 for the whole pattern, then its groups in the order they open */
+    private int[] parent;
+    private int[] open;
+    private int[] close;
+    private int[] slot;
+    /* the root of a group that has an operator */
+    private Node[] root;
+    /* parentheses, in the order they appear */
+    private int[] groupOf;
+    private boolean[] opening;
+
+    private IncrementalParser(String regex) {
+        this.pattern = regex;
+        parseFully();
+    }
+
+    /**
+     * Parses {@code regex} as the initial pattern.
+     *
+     * @throws PatternSyntaxException if the pattern is invalid
+     */
+    public static IncrementalParser of(String regex) {
+        return new IncrementalParser(regex);
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    /**
+     * Returns the tree of the current pattern, or {@code null} if the last edit left it invalid.
+     */
+    public ParseTree getTree() {
+        return tree;
+    }
+
+    /**
+     * Replaces the {@code deleted} characters at {@code offset} with {@code inserted} and returns the tree of the
+     * edited pattern. If the edited pattern is invalid it is kept nonetheless, so that later edits apply to it, and
+     * the next edit re-parses it whole.
+     *
+     * @throws PatternSyntaxException    if the edited pattern is invalid
+     * @throws IndexOutOfBoundsException if the edited characters are not in the pattern
+     */
+    public ParseTree edit(int offset, int deleted, String inserted) {
+        if (offset < 0 || deleted < 0 || offset > pattern.length() - deleted) {
+            throw new IndexOutOfBoundsException("offset = " + offset + ", deleted = " + deleted
+                    + ", length = " + pattern.length());
+        }
+        pattern = pattern.substring(0, offset) + inserted + pattern.substring(offset + deleted);
+        if (layout == null || !reparseGroup(offset, deleted, inserted.length())) {
+            layout = null;
+            tree = null;
+            top = null;
+            parseFully();
+        }
+        return tree;
+    }
+
+    private void parseFully() {
+        Outline outline = new Outline(pattern);
+        int[] order = new int[outline.groups];
+        int[] runs = new int[outline.groups];
+        CompactParseTree parsed = SinglePassParser.parseCompact(pattern, order, runs);
+        /* the last piece, after the last parenthesis, is left empty: it only needs a start */
+        int[] tokens = new int[outline.parens + 1];
+        chars = new Lengths(outline.parens + 1);
+        for (int paren = 0; paren < outline.parens; paren++) {
+            tokens[paren] = outline.index[paren] - (paren == 0 ? 0 : outline.index[paren - 1]);
+            chars.set(paren, outline.offset[paren] - (paren == 0 ? 0 : outline.offset[paren - 1]));
+        }
+        opening = Arrays.copyOf(outline.opening, outline.parens);
+        parent = Arrays.copyOf(outline.parent, outline.groups);
+        open = Arrays.copyOf(outline.open, outline.groups);
+        close = Arrays.copyOf(outline.close, outline.groups);
+        slot = new int[outline.groups];
+        root = new Node[outline.groups];
+        groupOf = Arrays.copyOf(outline.groupOf, outline.parens);
+        for (int k = 0; k < outline.groups; k++) {
+            slot[order[k]] = k;
+        }
+        layout = new Layout(Counts.of(runs, outline.groups), Counts.of(tokens, outline.parens + 1));
+        top = build(parsed, order, runs, 0, 0, 0);
+        tree = new ParseTree(view(top, layout));
+    }
+
+    /**
+     * Tries the groups that enclose the edit, innermost first.
+     *
+     * @return {@code false} if the whole pattern must be re-parsed
+     */
+    private boolean reparseGroup(int offset, int deleted, int inserted) {
+        if (offset == 0) {
+            return false;
+        }
+        /* the last parenthesis before the edit opens the innermost group or closes one of its children */
+        int piece = chars.find(offset - 1);
+        if (piece == 0) {
+            return false;
+        }
+        int group = groupOf[piece - 1];
+        if (!opening[piece - 1]) {
+            group = parent[group];
+        }
+        for (; group != 0; group = parent[group]) {
+            if (offset + deleted <= chars.start(close[group] + 1)) {
+                switch (reparse(group, inserted - deleted)) {
+                    case SPLICED:
+                        return true;
+                    case FAILED:
+                        return false;
+                }
+            }
+        }
+        return false;
+    }
+
+    private enum Outcome {
+        SPLICED, WIDEN, FAILED
+    }
+
+    /**
+     * Re-parses {@code group}, whose source has grown by {@code delta} characters, and makes the tree with its new
+     * nodes the current one.
+     */
+    private Outcome reparse(int group, int delta) {
+        int first = slot[group] - (close[group] - open[group] - 1) / 2;
+        if (layout.runs.length(slot[group]) == 0) {
+            return Outcome.WIDEN;
+        }
+        int from = chars.start(open[group] + 1);
+        String text = pattern.substring(from, chars.start(close[group] + 1) + 1 + delta);
+        int groups = slot[group] - first + 1;
+        Outline outline;
+        int[] order = new int[groups + 1];
+        int[] runs = new int[groups + 1];
+        CompactParseTree parsed;
+        try {
+            outline = new Outline(text);
+            if (outline.groups != groups + 1 || !outline.isOneGroup()) {
+                return Outcome.FAILED;
+            }
+            parsed = SinglePassParser.parseCompact(text, order, runs);
+        } catch (PatternSyntaxException e) {
+            return Outcome.FAILED;
+        }
+        /* the group is numbered last of its subtree, then the rest of the text, which is empty unless it has no
+           operator */
+        if (runs[groups - 1] == 0) {
+            return Outcome.WIDEN;
+        }
+        Node[] path = pathTo(root[group]);
+        int base = open[group];
+        int[] tokens = new int[outline.parens - 1];
+        for (int m = 0; m < outline.parens; m++) {
+            if (m < outline.parens - 1) {
+                tokens[m] = outline.index[m + 1] - outline.index[m];
+                chars.set(base + 1 + m, outline.offset[m + 1] - outline.offset[m]);
+            }
+            opening[base + m] = outline.opening[m];
+            groupOf[base + m] = group - 1 + outline.groupOf[m];
+        }
+        for (int k = 1; k <= groups; k++) {
+            if (k > 1) {
+                parent[group - 1 + k] = group - 1 + outline.parent[k];
+            }
+            open[group - 1 + k] = base + outline.open[k];
+            close[group - 1 + k] = base + outline.close[k];
+        }
+        for (int k = 0; k < groups; k++) {
+            slot[group - 1 + order[k]] = first + k;
+        }
+        layout = new Layout(layout.runs.with(first, runs, groups), layout.tokens.with(base + 1, tokens, tokens.length));
+        Node node = build(parsed, order, runs, first, group - 1, layout.tokens.start(base + 1) - 1);
+        for (int i = path.length - 2; i >= 0; i--) {
+            node = path[i].replace(path[i + 1], node);
+            if (node.group != NONE) {
+                root[node.group] = node;
+            }
+        }
+        top = node;
+        tree = new ParseTree(view(top, layout));
+        return Outcome.SPLICED;
+    }
+
+    /**
+     * Returns the nodes from the root of the tree down to {@code target}.
+     */
+    private Node[] pathTo(Node target) {
+        int index = layout.index(target.start);
+        List<Node> path = new ArrayList<>();
+        Node node = top;
+        path.add(node);
+        while (node != target) {
+            Node[] operands = node.operands;
+            node = operands.length > 1 && index >= layout.index(operands[1].start) ? operands[1] : operands[0];
+            path.add(node);
+        }
+        return path.toArray(NO_OPERANDS);
+    }
+
+    /**
+     * Builds the nodes of {@code parsed}, whose groups {@code order} lists in numbering order with the number of nodes
+     * of each in {@code runs}, as groups from {@code group + 1} numbered from {@code slot}, with token indices shifted
+     * by {@code shift}, and returns its root.
+     */
+    private Node build(CompactParseTree parsed, int[] order, int[] runs, int slot, int group, int shift) {
+        int size = parsed.size();
+        Node[] nodes = new Node[size];
+        for (int node = 0, k = 0, first = 0; node < size; node++) {
+            while (node - first >= runs[k]) {
+                first += runs[k++];
+            }
+            int owner = node == first + runs[k] - 1 ? group + order[k] : NONE;
+            long start = key(parsed.start(node) + shift);
+            long end = key(parsed.end(node) + shift);
+            Node result;
+            switch (parsed.kind(node)) {
+                case CompactParseTree.CHAR:
+                    result = new Node(TreeNode.Type.LITERAL, String.valueOf(parsed.value(node)), null,
+                            slot + k, node - first, start, end, NO_OPERANDS, owner);
+                    break;
+                case CompactParseTree.EPSILON:
+                    result = new Node(TreeNode.Type.EPSILON, String.valueOf(Epsilon.SYMBOL), null,
+                            slot + k, node - first, start, end, NO_OPERANDS, owner);
+                    break;
+                case CompactParseTree.CLASS:
+                    CharSet set = parsed.charSet(node);
+                    result = new Node(TreeNode.Type.CHAR_CLASS, set.toString(), set,
+                            slot + k, node - first, start, end, NO_OPERANDS, owner);
+                    break;
+                default:
+                    int child = parsed.firstChild(node);
+                    Operator op = parsed.operator(node);
+                    switch (op) {
+                        case KLEENE_STAR:
+                        case KLEENE_PLUS:
+                        case REPETITION:
+                            String symbol = op == Operator.REPETITION
+                                    ? RepetitionSyntax.toString(parsed.bounds(node)) : op.toString();
+                            result = new Node(parsed.type(node), symbol, null, slot + k, node - first, start, end,
+                                    new Node[]{nodes[child]}, owner);
+                            break;
+                        default:
+                            result = new Node(parsed.type(node), null, null, slot + k, node - first, start, end,
+                                    new Node[]{nodes[child], nodes[parsed.nextSibling(child)]}, owner);
+                    }
+            }
+            nodes[node] = result;
+            if (owner != NONE) {
+                root[owner] = result;
+            }
+        }
+        return nodes[size - 1];
+    }
+
+    /**
+     * Returns token index {@code index} as an offset from the last parenthesis at or before it, or from the one before
+     * that if {@code index} is an opening parenthesis, so it keeps its meaning through edits inside the groups that do
+     * not contain it.
+     */
+    private long key(int index) {
+        int piece = layout.tokens.find(index);
+        if (piece > 0 && opening[piece - 1] && layout.tokens.start(piece) == index) {
+            --piece;
+        }
+        return (long) piece << 32 | index - layout.tokens.start(piece);
+    }
+
+    /**
+     * Returns the tree node of {@code node} in the tree laid out by {@code layout}, whose children are built when they
+     * are first read.
+     */
+    private static TreeNode view(Node node, Layout layout) {
+        Range range = new Range(layout.index(node.start), layout.index(node.end));
+        if (node.type == TreeNode.Type.EPSILON) {
+            return TreeNode.lazy(node.type, node.symbol, range, null, null);
+        }
+        String label = "r" + (layout.runs.start(node.slot) + node.number + 1);
+        switch (node.type) {
+            case LITERAL:
+            case CHAR_CLASS:
+                return TreeNode.lazy(node.type, label, range, node.set, () -> new TreeNode[]{
+                        TreeNode.lazy(TreeNode.Type.SYMBOL, node.symbol, range, node.set, null)});
+            case CONCATENATION:
+                return TreeNode.lazy(node.type, label, range, null, () -> new TreeNode[]{
+                        view(node.operands[0], layout), view(node.operands[1], layout)});
+            case ALTERNATION:
+                return TreeNode.lazy(node.type, label, range, null, () -> {
+                    TreeNode left = view(node.operands[0], layout);
+                    Range bar = new Range(left.getRange().getEndExclusive());
+                    return new TreeNode[]{left, TreeNode.lazy(TreeNode.Type.SYMBOL, Operator.ALTERNATION.toString(),
+                            bar, null, null), view(node.operands[1], layout)};
+                });
+            default:
+                return TreeNode.lazy(node.type, label, range, null, () -> new TreeNode[]{
+                        view(node.operands[0], layout), TreeNode.lazy(TreeNode.Type.SYMBOL, node.symbol,
+                        new Range(range.getEndExclusive() - 1), null, null)});
+        }
+    }
+
+    /**
+     * A node of the trees, shared by every tree that contains it: its label is that of node {@code number} of the
+     * group numbered {@code slot}th, and its range runs between the token indices {@code start} and {@code end} are
+     * keys of.
+     */
+    private static final class Node {
+
+        final TreeNode.Type type;
+        /* the character, class or repetition symbol */
+        final String symbol;
+        final CharSet set;
+        final int slot;
+        final int number;
+        final long start;
+        final long end;
+        final Node[] operands;
+        /* the group this is the root of, or NONE */
+        final int group;
+
+        Node(TreeNode.Type type, String symbol, CharSet set, int slot, int number, long start, long end,
+             Node[] operands, int group) {
+            this.type = type;
+            this.symbol = symbol;
+            this.set = set;
+            this.slot = slot;
+            this.number = number;
+            this.start = start;
+            this.end = end;
+            this.operands = operands;
+            this.group = group;
+        }
+
+        /**
+         * Returns a copy of this node with {@code replacement} in place of its operand {@code operand}.
+         */
+        Node replace(Node operand, Node replacement) {
+            Node[] replaced = operands.clone();
+            replaced[operand == operands[0] ? 0 : 1] = replacement;
+            /* a postfix operator ends with its symbol, which is not part of the operand */
+            long last = replaced.length == 1 ? end : replaced[1].end;
+            return new Node(type, symbol, set, slot, number, replaced[0].start, last, replaced, group);
+        }
+
+    }
+
+    /**
+     * The counts the labels and token ranges of the nodes of a tree are computed from.
+     */
+    private static final class Layout {
+
+        /* the nodes numbered with each group, in numbering order */
+        final Counts runs;
+        /* the tokens from each parenthesis to the next, after those before the first */
+        final Counts tokens;
+
+        Layout(Counts runs, Counts tokens) {
+            this.runs = runs;
+            this.tokens = tokens;
+        }
+
+        int index(long key) {
+            return tokens.start((int) (key >>> 32)) + (int) key;
+        }
+
+    }
+
+    /**
+     * An immutable sequence of counts held in a segment tree, so summing those before one takes logarithmic time and
+     * replacing some shares all but the paths to them with the original.
+     */
+    private static final class Counts {
+
+        private final int size;
+        private final Sum root;
+
+        private Counts(int size, Sum root) {
+            this.size = size;
+            this.root = root;
+        }
+
+        static Counts of(int[] values, int size) {
+            return new Counts(size, Sum.of(values, 0, 0, size));
+        }
+
+        /**
+         * Returns these counts with the {@code count} from {@code from} replaced by those of {@code values}.
+         */
+        Counts with(int from, int[] values, int count) {
+            return count == 0 ? this : new Counts(size, root.with(values, from, from + count, 0, size));
+        }
+
+        /**
+         * Returns the sum of the counts before the {@code i}th.
+         */
+        int start(int i) {
+            if (i >= size) {
+                return root.total;
+            }
+            int sum = 0;
+            Sum node = root;
+            for (int lo = 0, hi = size; hi - lo > 1; ) {
+                int mid = (lo + hi) >>> 1;
+                if (i < mid) {
+                    node = node.left;
+                    hi = mid;
+                } else {
+                    sum += node.left.total;
+                    node = node.right;
+                    lo = mid;
+                }
+            }
+            return sum;
+        }
+
+        int length(int i) {
+            return start(i + 1) - start(i);
+        }
+
+        /**
+         * Returns the last element that starts at or before {@code position}.
+         */
+        int find(int position) {
+            Sum node = root;
+            int lo = 0;
+            for (int hi = size; hi - lo > 1; ) {
+                int mid = (lo + hi) >>> 1;
+                if (node.left.total <= position) {
+                    position -= node.left.total;
+                    node = node.right;
+                    lo = mid;
+                } else {
+                    node = node.left;
+                    hi = mid;
+                }
+            }
+            return lo;
+        }
+
+    }
+
+    private static final class Sum {
+
+        final int total;
+        /* null for a single count */
+        final Sum left;
+        final Sum right;
+
+        private Sum(int total, Sum left, Sum right) {
+            this.total = total;
+            this.left = left;
+            this.right = right;
+        }
+
+        /**
+         * Returns the tree of the counts {@code lo} to {@code hi} of {@code values} from {@code offset}.
+         */
+        static Sum of(int[] values, int offset, int lo, int hi) {
+            if (hi - lo == 1) {
+                return new Sum(values[lo - offset], null, null);
+            }
+            int mid = (lo + hi) >>> 1;
+            Sum left = of(values, offset, lo, mid), right = of(values, offset, mid, hi);
+            return new Sum(left.total + right.total, left, right);
+        }
+
+        /**
+         * Returns this tree, which holds the counts {@code lo} to {@code hi}, with those {@code from} to {@code to}
+         * replaced by {@code values}.
+         */
+        Sum with(int[] values, int from, int to, int lo, int hi) {
+            if (to <= lo || hi <= from) {
+                return this;
+            }
+            if (from <= lo && hi <= to) {
+                return of(values, from, lo, hi);
+            }
+            int mid = (lo + hi) >>> 1;
+            Sum l = left.with(values, from, to, lo, mid), r = right.with(values, from, to, mid, hi);
+            return new Sum(l.total + r.total, l, r);
+        }
+
+    }
+
+    /**
+     * A sequence of lengths held in a Fenwick tree, so setting one and summing those before one take logarithmic
+     * time.
+     */
+    private static final class Lengths {
+
+        private final int[] tree;
+
+        Lengths(int size) {
+            tree = new int[size + 1];
+        }
+
+        /**
+         * Returns the sum of the lengths before the {@code i}th.
+         */
+        int start(int i) {
+            int sum = 0;
+            for (; i > 0; i -= i & -i) {
+                sum += tree[i];
+            }
+            return sum;
+        }
+
+        int length(int i) {
+            return start(i + 1) - start(i);
+        }
+
+        void set(int i, int length) {
+            int delta = length - length(i);
+            for (++i; i < tree.length; i += i & -i) {
+                tree[i] += delta;
+            }
+        }
+
+        /**
+         * Returns the last element that starts at or before {@code position}.
+         */
+        int find(int position) {
+            int i = 0;
+            for (int bit = Integer.highestOneBit(tree.length - 1); bit > 0; bit >>= 1) {
+                if (i + bit < tree.length && tree[i + bit] <= position) {
+                    i += bit;
+                    position -= tree[i];
+                }
+            }
+            return Math.min(i, tree.length - 2);
+        }
+
+    }
+
+    /**
+     * The parentheses and groups of a pattern: the token index and offset of each parenthesis and the group it opens
+     * or closes, and the parent and parentheses of each group, numbered as in the parser.
+     */
+    private static final class Outline {
+
+        final int parens;
+        final int groups;
+        final int[] index;
+        final int[] offset;
+        final boolean[] opening;
+        final int[] groupOf;
+        final int[] parent;
+        final int[] open;
+        final int[] close;
+        private final int tokenCount;
+        private final int lastToken;
+
+        Outline(String regex) {
+            long[] tokens = new long[regex.length()];
+            tokenCount = Lexer.lex(regex, tokens, new ArrayList<>());
+            int[] indices = indices(tokens, tokenCount);
+            int count = 0, lefts = 0;
+            for (int token = 0; token < tokenCount; token++) {
+                int kind = Lexer.kind(tokens[token]);
+                if (kind == Lexer.LEFT || kind == Lexer.RIGHT) {
+                    ++count;
+                    lefts += kind == Lexer.LEFT ? 1 : 0;
+                }
+            }
+            parens = count;
+            groups = lefts + 1;
+            index = new int[parens];
+            offset = new int[parens];
+            opening = new boolean[parens];
+            groupOf = new int[parens];
+            parent = new int[groups];
+            open = new int[groups];
+            close = new int[groups];
+            parent[0] = open[0] = close[0] = NONE;
+            int[] stack = new int[groups];
+            int depth = 0, paren = 0, group = 0, last = NONE;
+            for (int token = 0; token < tokenCount; token++) {
+                int kind = Lexer.kind(tokens[token]);
+                if (kind != Lexer.LEFT && (kind != Lexer.RIGHT || depth == 0)) {
+                    continue;
+                }
+                index[paren] = indices[token];
+                offset[paren] = Lexer.offset(tokens[token]);
+                if (kind == Lexer.LEFT) {
+                    opening[paren] = true;
+                    parent[++group] = depth == 0 ? 0 : stack[depth - 1];
+                    open[group] = paren;
+                    stack[depth++] = group;
+                    groupOf[paren] = group;
+                } else {
+                    int closed = stack[--depth];
+                    close[closed] = paren;
+                    groupOf[paren] = closed;
+                    if (closed == 1) {
+                        last = token;
+                    }
+                }
+                ++paren;
+            }
+            lastToken = last;
+        }
+
+        /**
+         * Returns whether the first token opens a group that the last token closes.
+         */
+        boolean isOneGroup() {
+            return groups > 1 && open[1] == 0 && index[0] == 1 && lastToken == tokenCount - 1;
+        }
+
+    }
+
+    /**
+     * Returns the token index of each token of a valid pattern, counting the epsilons and concatenations the
+     * single-pass parser inserts before it.
+     */
+    private static int[] indices(long[] tokens, int count) {
+        int[] indices = new int[count];
+        int prev = NONE, index = 1;
+        for (int token = 0; token < count; token++) {
+            int next = Lexer.kind(tokens[token]);
+            if (next == Lexer.CLASS) {
+                next = Lexer.CHAR;
+            }
+            if ((prev == NONE || prev == Lexer.LEFT || prev == Lexer.ALT)
+                    && (next == Lexer.ALT || next == Lexer.RIGHT)) {
+                ++index;
+            } else if ((prev == Lexer.CHAR || prev == Lexer.RIGHT || prev == Lexer.STAR || prev == Lexer.PLUS
+                    || prev == Lexer.REPEAT) && (next == Lexer.CHAR || next == Lexer.LEFT)) {
+                ++index;
+            }
+            indices[token] = index++;
+            prev = next;
+        }
+        return indices;
+    }
+
+}
@@ -5,7 +5,9 @@ package org.util.text.regex;
  */
 final class LeftParenthesis extends ParenthesisToken {
 
-    LeftParenthesis() {
+    static final LeftParenthesis INSTANCE = new LeftParenthesis();
+
+    private LeftParenthesis() {
         super(Parenthesis.LEFT);
     }
 
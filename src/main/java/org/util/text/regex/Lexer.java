@@ -0,0 +1,110 @@
+package org.util.text.regex;
+
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Splits a pattern into tokens encoded as {@code long}s, without allocating a {@link Token} per character.
+ * <p>
+ * A token packs its kind in bits 48 to 55, its character in bits 32 to 47 and the offset of its first source
+ * character in the low 32 bits. Escape sequences are resolved into {@link #CHAR} tokens whose offset is that of the
+ * escape character. A character class, {@code .} or bracketed, is one {@link #CLASS} token whose characters are kept
+ * apart, the k-th class token's in the k-th element of the list passed to {@link #lex(CharSequence, long[], List)}. A
+ * repetition is one {@link #REPEAT} token, whose bounds are read back from the pattern at its offset. Kinds are looked
+ * up in a constant table for ASCII characters.
+ *
+ * @author ahmad
+ */
+final class Lexer {
+
+    static final int CHAR = 0;
+    static final int STAR = 2;
+    static final int PLUS = 3;
+    static final int ALT = 5;
+    static final int LEFT = 6;
+    static final int RIGHT = 7;
+    static final int CLASS = 9;
+    static final int REPEAT = 10;
+
+    private static final byte[] KINDS = new byte[128];
+
+    static {
+        KINDS[Operator.KLEENE_STAR.value()] = STAR;
+        KINDS[Operator.KLEENE_PLUS.value()] = PLUS;
+        KINDS[Operator.ALTERNATION.value()] = ALT;
+        KINDS[Parenthesis.LEFT.value()] = LEFT;
+        KINDS[Parenthesis.RIGHT.value()] = RIGHT;
+        KINDS[CharClassSyntax.ANY] = CLASS;
+        KINDS[CharClassSyntax.OPEN] = CLASS;
+        KINDS[RepetitionSyntax.OPEN] = REPEAT;
+    }
+
+    private Lexer() {
+    }
+
+    /**
+     * Writes the tokens of {@code regex} into {@code tokens}, which must hold at least {@code regex.length()}
+     * elements, and appends the characters of its classes to {@code classes}.
+     *
+     * @return the number of tokens
+     * @throws PatternSyntaxException if {@code regex} ends with an unescaped escape character or has an invalid class
+     *                                or repetition
+     */
+    static int lex(CharSequence regex, long[] tokens, List<CharSet> classes) {
+        int count = 0;
+        for (int i = 0, n = regex.length(); i < n; i++) {
+            char ch = regex.charAt(i);
+            int kind = ch < KINDS.length ? KINDS[ch] : CHAR;
+            if (kind == CLASS) {
+                int end = ch == CharClassSyntax.OPEN ? CharClassSyntax.end(regex, i) : i;
+                classes.add(end > i ? CharClassSyntax.parse(regex, i, end) : CharSet.any());
+                tokens[count++] = token(CLASS, ch, i);
+                i = end;
+            } else if (kind == REPEAT) {
+                int end = RepetitionSyntax.end(regex, i);
+                tokens[count++] = token(REPEAT, ch, i);
+                i = end;
+            } else if (ch != EscapeCharacter.SYMBOL) {
+                tokens[count++] = token(kind, ch, i);
+            } else if (i + 1 < n) {
+                tokens[count++] = token(CHAR, regex.charAt(i + 1), i++);
+            } else {
+                String pattern = stripEscapes(regex.subSequence(0, i)) + EscapeCharacter.SYMBOL;
+                throw SourceSequence.syntaxError("Illegal/Unsupported escape sequence", pattern, count + 1, regex, i);
+            }
+        }
+        return count;
+    }
+
+    static long token(int kind, char value, int offset) {
+        return (long) kind << 48 | (long) value << 32 | offset & 0xFFFFFFFFL;
+    }
+
+    static int kind(long token) {
+        return (int) (token >>> 48) & 0xFF;
+    }
+
+    static char value(long token) {
+        return (char) (token >>> 32);
+    }
+
+    static int offset(long token) {
+        return (int) token;
+    }
+
+    /**
+     * Returns {@code regex} with its escape characters removed, as the multi-pass pipeline reports it.
+     */
+    static String stripEscapes(CharSequence regex) {
+        StringBuilder sb = new StringBuilder(regex.length());
+        for (int i = 0, n = regex.length(); i < n; i++) {
+            char ch = regex.charAt(i);
+            if (ch == EscapeCharacter.SYMBOL && i + 1 < n) {
+                ch = regex.charAt(++i);
+            }
+            sb.append(ch);
+        }
+        return sb.toString();
+    }
+
+}
@@ -7,9 +7,20 @@ enum Operator {
 
     KLEENE_STAR('*', 1),
     KLEENE_PLUS('+', 1),
+    REPETITION(RepetitionSyntax.OPEN, 1),
     CONCATENATION('\u0000', 2),
     ALTERNATION('|', 3);
 
+    private static final Operator[] ASCII = new Operator[128];
+
+    static {
+        for (Operator operator : values()) {
+            if (operator != CONCATENATION) {
+                ASCII[operator.value] = operator;
+            }
+        }
+    }
+
     private final char value;
     private final int precedence;
 
@@ -27,12 +38,7 @@ enum Operator {
     }
 
     static Operator find(char ch) {
-        for (Operator operator : values()) {
-            if (operator != CONCATENATION && operator.value == ch) {
-                return operator;
-            }
-        }
-        return null;
+        return ch < ASCII.length ? ASCII[ch] : null;
     }
 
     static boolean isOperator(char ch) {
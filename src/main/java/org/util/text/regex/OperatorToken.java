@@ -3,7 +3,17 @@ package org.util.text.regex;
 /**
  * @author ahmad
  */
-final class OperatorToken extends AbstractToken {
+class OperatorToken extends AbstractToken {
+
+    private static final OperatorToken[] INSTANCES;
+
+    static {
+        Operator[] operators = Operator.values();
+        INSTANCES = new OperatorToken[operators.length];
+        for (Operator operator : operators) {
+            INSTANCES[operator.ordinal()] = new OperatorToken(operator);
+        }
+    }
 
     private final Operator operator;
 
@@ -11,6 +21,10 @@ final class OperatorToken extends AbstractToken {
         this.operator = operator;
     }
 
+    static OperatorToken of(Operator operator) {
+        return INSTANCES[operator.ordinal()];
+    }
+
     Operator getOperator() {
         return operator;
     }
@@ -0,0 +1,193 @@
+package org.util.text.regex;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A bounded cache of parse trees keyed by pattern, safe for concurrent use.
+ * <p>
+ * Patterns are spread over lock-striped segments, each evicting its least recently used trees once the segment is
+ * over its share of the bound. The bound is either a number of trees or an estimate of the bytes they retain.
+ * Parse trees are immutable, so a cached tree is shared by every caller that asks for the same pattern; patterns
+ * that fail to parse are not cached.
+ *
+ * @author ahmad
+ */
+public final class ParseCache {
+
+    private static final int MAX_SEGMENTS = 16;
+    private static final int MIN_SEGMENT_ENTRIES = 64;
+
+    private static final long NODE_BYTES = 160;
+    private static final long ENTRY_BYTES = 128;
+
+    private final Segment[] segments;
+    private final boolean weighBytes;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private ParseCache(long maximumWeight, long minSegmentWeight, boolean weighBytes) {
+        if (maximumWeight <= 0) {
+            throw new IllegalArgumentException("maximumWeight = " + maximumWeight);
+        }
+        int n = 1;
+        while (n < MAX_SEGMENTS && maximumWeight / (n * 2) >= minSegmentWeight) {
+            n *= 2;
+        }
+        segments = new Segment[n];
+        for (int i = 0; i < n; i++) {
+            segments[i] = new Segment(maximumWeight / n + (i < maximumWeight % n ? 1 : 0));
+        }
+        this.weighBytes = weighBytes;
+    }
+
+    /**
+     * Creates a cache holding at most {@code maximumSize} parse trees.
+     */
+    public static ParseCache ofMaximumSize(int maximumSize) {
+        return new ParseCache(maximumSize, MIN_SEGMENT_ENTRIES, false);
+    }
+
+    /**
+     * Creates a cache whose trees retain at most about {@code maximumBytes} bytes, estimated from their node count.
+     */
+    public static ParseCache ofMaximumBytes(long maximumBytes) {
+        return new ParseCache(maximumBytes, MIN_SEGMENT_ENTRIES * 64 * NODE_BYTES, true);
+    }
+
+    public ParseTree parse(String regex) {
+        Segment segment = segmentFor(regex);
+        ParseTree tree = segment.get(regex);
+        if (tree != null) {
+            hits.increment();
+            return tree;
+        }
+        misses.increment();
+        tree = Parser.parse(regex);
+        return segment.put(regex, tree, weighBytes ? estimateBytes(regex, tree) : 1);
+    }
+
+    public long hitCount() {
+        return hits.sum();
+    }
+
+    public long missCount() {
+        return misses.sum();
+    }
+
+    public long evictionCount() {
+        return evictions.sum();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    /**
+     * Returns the number of cached trees, or the estimated bytes they retain for a cache bounded by bytes.
+     */
+    public long weight() {
+        long weight = 0;
+        for (Segment segment : segments) {
+            weight += segment.weight();
+        }
+        return weight;
+    }
+
+    public void clear() {
+        for (Segment segment : segments) {
+            segment.clear();
+        }
+    }
+
+    private Segment segmentFor(String regex) {
+        int h = regex.hashCode();
+        h ^= h >>> 16;
+        return segments[(h * 0x9E3779B9 >>> 16) & (segments.length - 1)];
+    }
+
+    private static long estimateBytes(String regex, ParseTree tree) {
+        long nodes = 0;
+        Deque<TreeNode> pending = new ArrayDeque<>();
+        pending.push(tree.getRoot());
+        while (!pending.isEmpty()) {
+            ++nodes;
+            for (TreeNode child : pending.pop().getChildren()) {
+                pending.push(child);
+            }
+        }
+        return ENTRY_BYTES + 2L * regex.length() + nodes * NODE_BYTES;
+    }
+
+    private static final class Entry {
+
+        private final ParseTree tree;
+        private final long weight;
+
+        private Entry(ParseTree tree, long weight) {
+            this.tree = tree;
+            this.weight = weight;
+        }
+
+    }
+
+    private final class Segment {
+
+        private final long maximumWeight;
+        private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+        private long weight;
+
+        private Segment(long maximumWeight) {
+            this.maximumWeight = maximumWeight;
+        }
+
+        private synchronized ParseTree get(String regex) {
+            Entry entry = entries.get(regex);
+            return entry == null ? null : entry.tree;
+        }
+
+        private synchronized ParseTree put(String regex, ParseTree tree, long w) {
+            Entry existing = entries.get(regex);
+            if (existing != null) {
+                return existing.tree;
+            }
+            if (w > maximumWeight) {
+                return tree;
+            }
+            entries.put(regex, new Entry(tree, w));
+            weight += w;
+            Iterator<Map.Entry<String, Entry>> it = entries.entrySet().iterator();
+            while (weight > maximumWeight) {
+                weight -= it.next().getValue().weight;
+                it.remove();
+                evictions.increment();
+            }
+            return tree;
+        }
+
+        private synchronized int size() {
+            return entries.size();
+        }
+
+        private synchronized long weight() {
+            return weight;
+        }
+
+        private synchronized void clear() {
+            entries.clear();
+            weight = 0;
+        }
+
+    }
+
+}
@@ -0,0 +1,23 @@
+package org.util.text.regex;
+
+/**
+ * Receives the timings and counts of each {@link Parser.Phase} of every parse, while registered with
+ * {@link Parser#addListener(ParseListener)} or listed in {@code META-INF/services/org.util.text.regex.ParseListener}.
+ * <p>
+ * Listeners are called on the parsing thread, right after each phase completes, and must be thread-safe. While no
+ * listener is registered, parsing is not instrumented at all.
+ *
+ * @author ahmad
+ */
+public interface ParseListener {
+
+    /**
+     * @param regex  the pattern being parsed
+     * @param phase  the phase that completed
+     * @param nanos  the wall time the phase took, in nanoseconds
+     * @param tokens the number of tokens after the phase
+     * @param count  the phase-specific count described by {@code phase}
+     */
+    void phaseCompleted(String regex, Parser.Phase phase, long nanos, int tokens, int count);
+
+}
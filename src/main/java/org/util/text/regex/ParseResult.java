@@ -0,0 +1,57 @@
+package org.util.text.regex;
+
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The outcome of parsing one pattern of a batch: either its tree or its syntax error.
+ *
+ * @author ahmad
+ */
+public final class ParseResult {
+
+    private final String pattern;
+    private final ParseTree tree;
+    private final PatternSyntaxException error;
+
+    private ParseResult(String pattern, ParseTree tree, PatternSyntaxException error) {
+        this.pattern = pattern;
+        this.tree = tree;
+        this.error = error;
+    }
+
+    static ParseResult of(String pattern) {
+        try {
+            return new ParseResult(pattern, Parser.parse(pattern), null);
+        } catch (PatternSyntaxException e) {
+            return new ParseResult(pattern, null, e);
+        }
+    }
+
+    public String getPattern() {
+        return pattern;
+    }
+
+    public boolean isValid() {
+        return error == null;
+    }
+
+    /**
+     * Returns the parse tree, or {@code null} if the pattern is invalid.
+     */
+    public ParseTree getTree() {
+        return tree;
+    }
+
+    /**
+     * Returns the syntax error, or {@code null} if the pattern is valid.
+     */
+    public PatternSyntaxException getError() {
+        return error;
+    }
+
+    @Override
+    public String toString() {
+        return isValid() ? tree.toString() : error.getMessage();
+    }
+
+}
@@ -1,6 +1,6 @@
 package org.util.text.regex;
 
-import java.util.List;
+import java.io.IOException;
 
 /**
  * @author ahmad
@@ -17,23 +17,16 @@ public final class ParseTree {
         return root;
     }
 
-    @Override
-    public String toString() {
-        StringBuilder sb = new StringBuilder();
-        prettyPrint(sb, root, "", true, true);
-        return sb.toString();
+    /**
+     * Writes the tree to {@code out} in the given format, without recursion.
+     */
+    public void print(TreePrinter.Format format, Appendable out) throws IOException {
+        TreePrinter.print(this, format, out);
     }
 
-    private static void prettyPrint(StringBuilder sb, TreeNode node, String indent, boolean root, boolean lastChild) {
-        if (!root) {
-            sb.append(indent).append("|\n");
-        }
-        sb.append(indent).append("+-: ").append(node.getLabel()).append('\n');
-        indent += lastChild ? "    " : "|   ";
-        List<TreeNode> children = node.getChildren();
-        for (int i = children.size() - 1; i >= 0; i--) {
-            prettyPrint(sb, children.get(i), indent, false, i == 0);
-        }
+    @Override
+    public String toString() {
+        return TreePrinter.toString(this, TreePrinter.Format.TREE);
     }
 
 }
@@ -0,0 +1,551 @@
+package org.util.text.regex;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reads and writes parse trees in a compact binary format, so trees parsed once can be shipped and loaded without
+ * parsing their patterns again.
+ * <p>
+ * A tree is a header followed by its nodes in pre-order, each the {@link TreeNode.Type} of an {@code r}-node or
+ * {@link TreeNode.Type#EPSILON} leaf and, unless the tree has no positions (as an interned tree), its number and its
+ * token range. The {@link TreeNode.Type#SYMBOL} nodes are implied by their parents, and the number of operands by the
+ * type. Multi-byte values are big-endian; varints are unsigned LEB128:
+ * <pre>
+ * offset  size     field
+ * 0       4        magic "RXPT"
+ * 4       2        format version
+ * 6       1        flags: 1 if the nodes have numbers and token ranges
+ * 7       1        reserved
+ * 8       4        node count
+ * 12      4        length of the nodes in bytes
+ * 16      ...      the nodes:
+ *                    1 byte  type
+ *                    varint  number, {@code 0} for an epsilon (with positions)
+ *                    varint  start of the token range, less the start of the parent (with positions)
+ *                    varint  length of the token range (with positions)
+ *                    varint  character of a literal
+ *                    varint  number of ranges of a class, then for each range:
+ *                      varint  its first character
+ *                      varint  its last character, less the first
+ *                    varint  least count of a repetition
+ *                    varint  greatest count of a repetition plus one, {@code 0} if it has no upper bound
+ * </pre>
+ * Any number of trees can be written one after another; {@link #load(Path)} reads them all from a memory-mapped
+ * file. A {@link Cursor} walks an encoded tree in place, without creating any node.
+ *
+ * @author ahmad
+ */
+public final class ParseTreeCodec {
+
+    static final int MAGIC = 0x52585054;
+    static final short VERSION = 1;
+
+    static final int FLAGS_OFFSET = 6;
+    static final int NODE_COUNT_OFFSET = 8;
+    static final int LENGTH_OFFSET = 12;
+    static final int HEADER_SIZE = 16;
+
+    static final int POSITIONS = 1;
+
+    private static final TreeNode.Type[] TYPES = TreeNode.Type.values();
+    private static final String EPSILON_LABEL = String.valueOf(Epsilon.SYMBOL);
+    private static final String R_LABEL = "r";
+
+    private ParseTreeCodec() {
+    }
+
+    /**
+     * Returns the encoding of {@code tree} in a new buffer, ready to be read.
+     */
+    public static ByteBuffer encode(ParseTree tree) {
+        Encoder encoder = new Encoder(tree.getRoot().getRange() != null);
+        encoder.encode(tree.getRoot());
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + encoder.length);
+        buffer.putInt(MAGIC).putShort(VERSION).put((byte) (encoder.positions ? POSITIONS : 0)).put((byte) 0)
+                .putInt(encoder.nodeCount).putInt(encoder.length).put(encoder.bytes, 0, encoder.length);
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * Writes the encoding of {@code tree} into {@code buffer} at its position, advancing it.
+     *
+     * @throws java.nio.BufferOverflowException if the buffer has not enough room
+     */
+    public static void write(ParseTree tree, ByteBuffer buffer) {
+        buffer.put(encode(tree));
+    }
+
+    public static void write(ParseTree tree, WritableByteChannel channel) throws IOException {
+        ByteBuffer encoded = encode(tree);
+        while (encoded.hasRemaining()) {
+            channel.write(encoded);
+        }
+    }
+
+    /**
+     * Reads the tree encoded at the position of {@code buffer}, advancing it past the tree.
+     *
+     * @throws IllegalArgumentException if the buffer does not hold a valid encoding
+     */
+    public static ParseTree read(ByteBuffer buffer) {
+        Cursor cursor = new Cursor(buffer);
+        TreeNode[] nodes = new TreeNode[cursor.nodeCount];
+        int[] starts = new int[cursor.nodeCount];
+        int[] ends = new int[cursor.nodeCount];
+        byte[] types = new byte[cursor.nodeCount];
+        int[] numbers = new int[cursor.nodeCount];
+        char[] values = new char[cursor.nodeCount];
+        CharSet[] sets = new CharSet[cursor.nodeCount];
+        long[] bounds = new long[cursor.nodeCount];
+        for (int i = 0; cursor.next(); i++) {
+            types[i] = (byte) cursor.type.ordinal();
+            numbers[i] = cursor.number;
+            values[i] = cursor.value;
+            sets[i] = cursor.charSet;
+            bounds[i] = RepetitionSyntax.bounds(cursor.min, cursor.max);
+            starts[i] = cursor.start;
+            ends[i] = cursor.end;
+        }
+        /* in reverse pre-order, each node finds its operands on top of the stack, the first one topmost */
+        int top = 0;
+        for (int i = nodes.length - 1; i >= 0; i--) {
+            TreeNode.Type type = TYPES[types[i]];
+            int arity = arity(type);
+            if (top < arity) {
+                throw corrupt();
+            }
+            TreeNode node = cursor.positions
+                    ? positioned(type, numbers[i], values[i], sets[i], bounds[i], starts[i], ends[i], nodes, top)
+                    : unpositioned(type, values[i], sets[i], bounds[i], nodes, top);
+            top -= arity;
+            nodes[top++] = node;
+        }
+        if (top != 1) {
+            throw corrupt();
+        }
+        return new ParseTree(nodes[0]);
+    }
+
+    private static TreeNode positioned(TreeNode.Type type, int n, char value, CharSet set, long bounds, int start,
+                                       int end, TreeNode[] stack, int top) {
+        switch (type) {
+            case LITERAL:
+                return TreeNode.nodeFor(value, n, new Range(start, end));
+            case CHAR_CLASS:
+                return TreeNode.nodeFor(set, n, new Range(start, end));
+            case EPSILON:
+                return TreeNode.nodeFor(Epsilon.INSTANCE, n, new Range(start, end));
+            case KLEENE_STAR:
+                return TreeNode.repeat(stack[top - 1], Operator.KLEENE_STAR, new Range(end - 1), n);
+            case KLEENE_PLUS:
+                return TreeNode.repeat(stack[top - 1], Operator.KLEENE_PLUS, new Range(end - 1), n);
+            case REPETITION:
+                return TreeNode.repeat(stack[top - 1], bounds, new Range(end - 1), n);
+            case CONCATENATION:
+                return TreeNode.join(stack[top - 1], stack[top - 2], n);
+            default:
+                return TreeNode.or(stack[top - 1], stack[top - 2], n);
+        }
+    }
+
+    private static TreeNode unpositioned(TreeNode.Type type, char value, CharSet set, long bounds, TreeNode[] stack,
+                                         int top) {
+        switch (type) {
+            case LITERAL:
+                return TreeNode.shared(type, R_LABEL, new TreeNode[]{symbol(String.valueOf(value))});
+            case CHAR_CLASS:
+                return TreeNode.shared(type, R_LABEL, new TreeNode[]{
+                        TreeNode.shared(TreeNode.Type.SYMBOL, set.toString(), new TreeNode[0], set)
+                }, set);
+            case EPSILON:
+                return TreeNode.shared(type, EPSILON_LABEL, new TreeNode[0]);
+            case KLEENE_STAR:
+                return TreeNode.shared(type, R_LABEL, new TreeNode[]{
+                        stack[top - 1], symbol(Operator.KLEENE_STAR.toString())
+                });
+            case KLEENE_PLUS:
+                return TreeNode.shared(type, R_LABEL, new TreeNode[]{
+                        stack[top - 1], symbol(Operator.KLEENE_PLUS.toString())
+                });
+            case REPETITION:
+                return TreeNode.shared(type, R_LABEL, new TreeNode[]{
+                        stack[top - 1], symbol(RepetitionSyntax.toString(bounds))
+                });
+            case CONCATENATION:
+                return TreeNode.shared(type, R_LABEL, new TreeNode[]{stack[top - 1], stack[top - 2]});
+            default:
+                return TreeNode.shared(type, R_LABEL, new TreeNode[]{
+                        stack[top - 1], symbol(Operator.ALTERNATION.toString()), stack[top - 2]
+                });
+        }
+    }
+
+    private static TreeNode symbol(String label) {
+        return TreeNode.shared(TreeNode.Type.SYMBOL, label, new TreeNode[0]);
+    }
+
+    /**
+     * Writes {@code trees} to {@code path} one after another, replacing any existing file.
+     */
+    public static void save(Path path, Collection<ParseTree> trees) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            for (ParseTree tree : trees) {
+                write(tree, channel);
+            }
+        }
+    }
+
+    /**
+     * Maps {@code path} into memory and reads all the trees it holds, in order.
+     *
+     * @throws IllegalArgumentException if the file does not hold valid encodings
+     */
+    public static List<ParseTree> load(Path path) throws IOException {
+        ByteBuffer buffer;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        }
+        List<ParseTree> trees = new ArrayList<>();
+        while (buffer.hasRemaining()) {
+            trees.add(read(buffer));
+        }
+        return trees;
+    }
+
+    /**
+     * Returns a cursor over the tree encoded at the position of {@code buffer}; the buffer is advanced past the tree
+     * once the cursor has visited all its nodes.
+     *
+     * @throws IllegalArgumentException if the buffer does not hold a valid header
+     */
+    public static Cursor cursor(ByteBuffer buffer) {
+        return new Cursor(buffer);
+    }
+
+    private static int arity(TreeNode.Type type) {
+        switch (type) {
+            case KLEENE_STAR:
+            case KLEENE_PLUS:
+            case REPETITION:
+                return 1;
+            case CONCATENATION:
+            case ALTERNATION:
+                return 2;
+            default:
+                return 0;
+        }
+    }
+
+    private static IllegalArgumentException corrupt() {
+        return new IllegalArgumentException("Corrupt parse tree encoding");
+    }
+
+    /**
+     * Visits the nodes of an encoded tree in pre-order, decoding each in place.
+     */
+    public static final class Cursor {
+
+        private final ByteBuffer buffer;
+        private final boolean positions;
+        private final int nodeCount;
+        private final int limit;
+        private int position;
+        private int visited;
+
+        /* operands still to visit and start of each node on the path from the root */
+        private int[] pending = new int[16];
+        private int[] starts = new int[16];
+        private int path;
+
+        private TreeNode.Type type;
+        private int depth;
+        private int number;
+        private char value;
+        private CharSet charSet;
+        private int min;
+        private int max;
+        private int start;
+        private int end;
+
+        private Cursor(ByteBuffer buffer) {
+            int offset = buffer.position();
+            if (buffer.limit() - offset < HEADER_SIZE || buffer.getInt(offset) != MAGIC) {
+                throw new IllegalArgumentException("Not a parse tree encoding");
+            }
+            if (buffer.getShort(offset + 4) != VERSION) {
+                throw new IllegalArgumentException("Unsupported parse tree encoding version "
+                        + buffer.getShort(offset + 4));
+            }
+            this.buffer = buffer;
+            this.positions = (buffer.get(offset + FLAGS_OFFSET) & POSITIONS) != 0;
+            this.nodeCount = buffer.getInt(offset + NODE_COUNT_OFFSET);
+            int length = buffer.getInt(offset + LENGTH_OFFSET);
+            if (nodeCount < 1 || length < nodeCount || length > buffer.limit() - offset - HEADER_SIZE) {
+                throw corrupt();
+            }
+            this.position = offset + HEADER_SIZE;
+            this.limit = position + length;
+        }
+
+        /**
+         * Moves to the next node.
+         *
+         * @return {@code false} if all the nodes have been visited
+         */
+        public boolean next() {
+            if (visited == nodeCount) {
+                return false;
+            }
+            while (path > 0 && pending[path - 1] == 0) {
+                --path;
+            }
+            if (visited > 0 && path == 0) {
+                throw corrupt();
+            }
+            depth = path;
+            int parentStart = path > 0 ? starts[path - 1] : 0;
+            if (path > 0) {
+                --pending[path - 1];
+            }
+            int t = get();
+            if (t >= TYPES.length || t == TreeNode.Type.SYMBOL.ordinal()) {
+                throw corrupt();
+            }
+            type = TYPES[t];
+            if (positions) {
+                number = varint();
+                start = parentStart + varint();
+                end = start + varint();
+                if (number < 0 || start < parentStart || end <= start) {
+                    throw corrupt();
+                }
+            }
+            value = type == TreeNode.Type.LITERAL ? (char) varint()
+                    : type == TreeNode.Type.EPSILON ? Epsilon.SYMBOL : 0;
+            charSet = type == TreeNode.Type.CHAR_CLASS ? ranges() : null;
+            min = max = 0;
+            if (type == TreeNode.Type.REPETITION) {
+                min = varint();
+                max = varint() - 1;
+                if (min < 0 || min > RepetitionSyntax.MAX_BOUND || max > RepetitionSyntax.MAX_BOUND
+                        || max != TreeNode.UNBOUNDED && max < min) {
+                    throw corrupt();
+                }
+            }
+            int arity = arity(type);
+            if (arity > 0) {
+                if (path == pending.length) {
+                    pending = Arrays.copyOf(pending, 2 * path);
+                    starts = Arrays.copyOf(starts, 2 * path);
+                }
+                pending[path] = arity;
+                starts[path++] = start;
+            }
+            if (++visited == nodeCount) {
+                for (int i = 0; i < path; i++) {
+                    if (pending[i] > 0) {
+                        throw corrupt();
+                    }
+                }
+                if (position != limit) {
+                    throw corrupt();
+                }
+                buffer.position(limit);
+            }
+            return true;
+        }
+
+        public int nodeCount() {
+            return nodeCount;
+        }
+
+        /**
+         * Returns whether the nodes have numbers and token ranges.
+         */
+        public boolean hasPositions() {
+            return positions;
+        }
+
+        public TreeNode.Type type() {
+            return type;
+        }
+
+        /**
+         * Returns the depth of the node, {@code 0} for the root.
+         */
+        public int depth() {
+            return depth;
+        }
+
+        /**
+         * Returns {@code n} for a node labelled {@code "r" + n}, or {@code 0}.
+         */
+        public int number() {
+            return number;
+        }
+
+        /**
+         * Returns the character of a literal, or {@link Epsilon#SYMBOL} for an epsilon.
+         */
+        public char value() {
+            return value;
+        }
+
+        /**
+         * Returns the characters of a class, or {@code null} for other nodes.
+         */
+        public CharSet charSet() {
+            return charSet;
+        }
+
+        /**
+         * Returns the least count of a repetition, or {@code 0} for other nodes.
+         */
+        public int min() {
+            return min;
+        }
+
+        /**
+         * Returns the greatest count of a repetition, or {@link TreeNode#UNBOUNDED}; {@code 0} for other nodes.
+         */
+        public int max() {
+            return max;
+        }
+
+        public int start() {
+            return start;
+        }
+
+        public int end() {
+            return end;
+        }
+
+        private int get() {
+            if (position >= limit) {
+                throw corrupt();
+            }
+            return buffer.get(position++) & 0xFF;
+        }
+
+        private CharSet ranges() {
+            int count = varint();
+            if (count < 1 || count > limit - position) {
+                throw corrupt();
+            }
+            long[] ranges = new long[count];
+            for (int i = 0; i < count; i++) {
+                int lo = varint(), hi = lo + varint();
+                if (lo < 0 || hi < lo || hi > Character.MAX_VALUE) {
+                    throw corrupt();
+                }
+                ranges[i] = (long) lo << 16 | hi;
+            }
+            return CharSet.of(ranges, count);
+        }
+
+        private int varint() {
+            int result = 0;
+            for (int shift = 0; shift < 32; shift += 7) {
+                int b = get();
+                result |= (b & 0x7F) << shift;
+                if (b < 0x80) {
+                    return result;
+                }
+            }
+            throw corrupt();
+        }
+
+    }
+
+    private static final class Encoder {
+
+        private final boolean positions;
+        private byte[] bytes = new byte[64];
+        private int length;
+        private int nodeCount;
+
+        private Encoder(boolean positions) {
+            this.positions = positions;
+        }
+
+        /**
+         * Writes the nodes under {@code root} in pre-order, without recursion.
+         */
+        private void encode(TreeNode root) {
+            TreeNode[] stack = new TreeNode[16];
+            int[] parentStarts = new int[16];
+            int top = 0;
+            stack[top++] = root;
+            while (top > 0) {
+                TreeNode node = stack[--top];
+                int parentStart = parentStarts[top];
+                TreeNode.Type type = node.getType();
+                ++nodeCount;
+                put(type.ordinal());
+                int start = 0;
+                if (positions) {
+                    Range range = node.getRange();
+                    start = range.getStartInclusive();
+                    putVarint(type == TreeNode.Type.EPSILON ? 0 : Integer.parseInt(node.getLabel().substring(1)));
+                    putVarint(start - parentStart);
+                    putVarint(range.getEndExclusive() - start);
+                }
+                if (type == TreeNode.Type.LITERAL) {
+                    putVarint(node.getValue());
+                } else if (type == TreeNode.Type.CHAR_CLASS) {
+                    CharSet set = node.getCharSet();
+                    putVarint(set.rangeCount());
+                    for (int i = 0; i < set.rangeCount(); i++) {
+                        putVarint(set.rangeStart(i));
+                        putVarint(set.rangeEnd(i) - set.rangeStart(i));
+                    }
+                } else if (type == TreeNode.Type.REPETITION) {
+                    putVarint(node.getMin());
+                    putVarint(node.getMax() + 1);
+                }
+                int arity = arity(type);
+                if (top + arity > stack.length) {
+                    stack = Arrays.copyOf(stack, 2 * stack.length);
+                    parentStarts = Arrays.copyOf(parentStarts, stack.length);
+                }
+                /* the last operand is pushed first so that the first one is written next */
+                if (arity == 2) {
+                    parentStarts[top] = start;
+                    stack[top++] = node.getChild(node.childCount() - 1);
+                }
+                if (arity > 0) {
+                    parentStarts[top] = start;
+                    stack[top++] = node.getChild(0);
+                }
+            }
+        }
+
+        private void put(int b) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, 2 * length);
+            }
+            bytes[length++] = (byte) b;
+        }
+
+        private void putVarint(int v) {
+            while ((v & ~0x7F) != 0) {
+                put(v & 0x7F | 0x80);
+                v >>>= 7;
+            }
+            put(v);
+        }
+
+    }
+
+}
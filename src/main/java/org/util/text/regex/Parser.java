@@ -1,18 +1,216 @@
 package org.util.text.regex;
 
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
 import java.util.*;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.regex.PatternSyntaxException;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 /**
  * @author ahmad
  */
 public final class Parser {
 
+    /**
+     * The parsing engines. {@link #SINGLE_PASS} is the reference; {@link #MULTI_PASS} keeps the behaviour of the
+     * original pipeline, known bugs included: for some patterns, such as {@code ab}, {@code a*b} and {@code (b)}, it
+     * drops the trailing token or yields the empty string, so the engines agree only where that pipeline is correct.
+     */
+    public enum Engine {
+
+        /**
+         * Tokenizes the pattern, then escapes, validates, normalizes, groups and indexes the token list in separate
+         * passes before building the tree. Quadratic in the pattern length. Kept as the original pipeline, with its
+         * bugs.
+         */
+        MULTI_PASS,
+
+        /**
+         * Parses the pattern with an operator-precedence parser in a single pass. Linear in the pattern length. The
+         * reference engine, used by default.
+         */
+        SINGLE_PASS
+
+    }
+
+    /**
+     * The phases reported to a {@link ParseListener}, with the meaning of their count.
+     */
+    public enum Phase {
+
+        /**
+         * Multi-pass: splits the pattern into tokens. Counts the tokens.
+         */
+        TOKENIZE,
+
+        /**
+         * Multi-pass: applies the escape characters. Counts the escape sequences.
+         */
+        ESCAPE,
+
+        /**
+         * Multi-pass: checks the parentheses and operators. Counts nothing.
+         */
+        VALIDATE,
+
+        /**
+         * Multi-pass: inserts the implicit concatenations and empty strings, and wraps the pattern in a group. Counts
+         * the inserted tokens.
+         */
+        NORMALIZE,
+
+        /**
+         * Multi-pass: builds the tree of groups. Counts the groups.
+         */
+        GROUP,
+
+        /**
+         * Multi-pass: orders the operators for building the tree. Counts the operators.
+         */
+        INDEX_OPERATORS,
+
+        /**
+         * Single-pass: splits the pattern into primitive tokens. Counts the tokens.
+         */
+        LEX,
+
+        /**
+         * Single-pass: validates, normalizes and groups the tokens into a tree of operators. Counts the operators,
+         * including the inserted concatenations.
+         */
+        PARSE,
+
+        /**
+         * Single-pass: numbers the nodes and lays them out as a {@link CompactParseTree}. Counts the nodes.
+         */
+        MATERIALIZE,
+
+        /**
+         * Both engines: builds the {@link TreeNode} graph. Counts the {@code r}-nodes and empty strings.
+         */
+        BUILD_TREE
+
+    }
+
+    private static final ParseListener[] NO_LISTENERS = new ParseListener[0];
+
+    private static volatile ParseListener[] listeners = NO_LISTENERS;
+
+    static {
+        for (ParseListener listener : ServiceLoader.load(ParseListener.class)) {
+            addListener(listener);
+        }
+    }
+
     private Parser() {
     }
 
+    public static synchronized void addListener(ParseListener listener) {
+        ParseListener[] current = listeners;
+        ParseListener[] updated = Arrays.copyOf(current, current.length + 1);
+        updated[current.length] = Objects.requireNonNull(listener);
+        listeners = updated;
+    }
+
+    public static synchronized void removeListener(ParseListener listener) {
+        ParseListener[] current = listeners;
+        for (int i = 0; i < current.length; i++) {
+            if (current[i] == listener) {
+                ParseListener[] updated = new ParseListener[current.length - 1];
+                System.arraycopy(current, 0, updated, 0, i);
+                System.arraycopy(current, i + 1, updated, i, updated.length - i);
+                listeners = updated;
+                return;
+            }
+        }
+    }
+
+    static ParseListener[] listeners() {
+        return listeners;
+    }
+
+    static void publish(ParseListener[] listeners, String regex, Phase phase, long start, int tokens, int count) {
+        long nanos = System.nanoTime() - start;
+        for (ParseListener listener : listeners) {
+            listener.phaseCompleted(regex, phase, nanos, tokens, count);
+        }
+    }
+
     public static ParseTree parse(String regex) {
+        return parse(regex, Engine.SINGLE_PASS);
+    }
+
+    public static ParseTree parse(String regex, Engine engine) {
+        switch (engine) {
+            case MULTI_PASS:
+                return parseMultiPass(regex);
+            case SINGLE_PASS:
+                return SinglePassParser.parse(regex);
+            default:
+                throw new IllegalArgumentException("engine = " + engine);
+        }
+    }
+
+    /**
+     * Parses the characters of {@code regex} from {@code start} to {@code end} in place with the single-pass engine.
+     * Syntax errors are {@link SourcePatternSyntaxException}s, located in {@code regex} by their source offset.
+     */
+    public static ParseTree parse(CharSequence regex, int start, int end) {
+        return SinglePassParser.parse(SourceSequence.slice(regex, start, end));
+    }
+
+    /**
+     * Parses {@code length} characters of {@code regex} from {@code offset} in place with the single-pass engine.
+     * Syntax errors are {@link SourcePatternSyntaxException}s, located in {@code regex} by their source offset.
+     */
+    public static ParseTree parse(char[] regex, int offset, int length) {
+        return parse(CharBuffer.wrap(regex), offset, offset + length);
+    }
+
+    /**
+     * Parses the UTF-8 bytes of {@code regex} from its position to its limit with the single-pass engine, decoding
+     * them as they are read, and leaves its position unchanged. A supplementary character is parsed as its two
+     * surrogates. Syntax errors and malformed UTF-8 are {@link SourcePatternSyntaxException}s, located in
+     * {@code regex} by their source offset.
+     */
+    public static ParseTree parse(ByteBuffer regex) {
+        return SinglePassParser.parse(SourceSequence.utf8(regex));
+    }
+
+    /**
+     * Parses {@code regex} with the single-pass engine into a {@link CompactParseTree}, without building the
+     * {@link TreeNode} graph.
+     */
+    public static CompactParseTree parseCompact(String regex) {
+        return SinglePassParser.parseCompact(regex);
+    }
+
+    /**
+     * Parses {@code patterns} in parallel with the single-pass engine, each worker reusing its scratch arrays between
+     * patterns. The results are in the iteration order of {@code patterns}; an invalid pattern yields a result holding
+     * its error instead of failing the batch. Runs on the fork-join pool of the calling task, or the common pool.
+     */
+    public static List<ParseResult> parseAll(Collection<String> patterns) {
+        return parseAll(patterns.stream()).collect(Collectors.toList());
+    }
+
+    /**
+     * Returns a parallel stream of the results of parsing {@code patterns}, lazily, in encounter order if
+     * {@code patterns} is ordered.
+     *
+     * @see #parseAll(Collection)
+     */
+    public static Stream<ParseResult> parseAll(Stream<String> patterns) {
+        return patterns.parallel().map(ParseResult::of);
+    }
+
+    private static ParseTree parseMultiPass(String regex) {
+        ParseListener[] listeners = Parser.listeners;
+        if (listeners.length > 0) {
+            return parseMultiPass(regex, listeners);
+        }
         List<Token> tokens = tokenize(regex);
         applyEscapeCharacters(tokens);
         validate(tokens);
@@ -20,7 +218,63 @@ public final class Parser {
         return buildTree(tokens, indexOperators(tokens, group(tokens)));
     }
 
-    private static List<Token> tokenize(String regex) {
+    private static ParseTree parseMultiPass(String regex, ParseListener[] listeners) {
+        long start = System.nanoTime();
+        List<Token> tokens = tokenize(regex);
+        publish(listeners, regex, Phase.TOKENIZE, start, tokens.size(), tokens.size());
+        int before = tokens.size();
+        start = System.nanoTime();
+        applyEscapeCharacters(tokens);
+        publish(listeners, regex, Phase.ESCAPE, start, tokens.size(), before - tokens.size());
+        start = System.nanoTime();
+        validate(tokens);
+        publish(listeners, regex, Phase.VALIDATE, start, tokens.size(), 0);
+        before = tokens.size();
+        start = System.nanoTime();
+        normalize(tokens);
+        publish(listeners, regex, Phase.NORMALIZE, start, tokens.size(), tokens.size() - before);
+        start = System.nanoTime();
+        Group root = group(tokens);
+        publish(listeners, regex, Phase.GROUP, start, tokens.size(), countGroups(root));
+        start = System.nanoTime();
+        List<OpIndex> opIndices = indexOperators(tokens, root);
+        publish(listeners, regex, Phase.INDEX_OPERATORS, start, tokens.size(), opIndices.size());
+        start = System.nanoTime();
+        ParseTree tree = buildTree(tokens, opIndices);
+        publish(listeners, regex, Phase.BUILD_TREE, start, tokens.size(), countNodes(tree.getRoot()));
+        return tree;
+    }
+
+    private static int countGroups(Group root) {
+        int count = 0;
+        Deque<Group> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            ++count;
+            for (Group child : pending.pop().getChildren()) {
+                pending.push(child);
+            }
+        }
+        return count;
+    }
+
+    static int countNodes(TreeNode root) {
+        int count = 0;
+        Deque<TreeNode> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            TreeNode node = pending.pop();
+            if (node.getType() != TreeNode.Type.SYMBOL) {
+                ++count;
+            }
+            for (int i = 0; i < node.childCount(); i++) {
+                pending.push(node.getChild(i));
+            }
+        }
+        return count;
+    }
+
+    static List<Token> tokenize(String regex) {
         List<Token> tokens = new ArrayList<>();
         char nextChar;
         Operator op;
@@ -28,19 +282,33 @@ public final class Parser {
         for (int i = 0, n = regex.length(); i < n; i++) {
             nextChar = regex.charAt(i);
             if (nextChar == EscapeCharacter.SYMBOL) {
-                tokens.add(new EscapeCharacter());
+                tokens.add(EscapeCharacter.INSTANCE);
+                if (i + 1 < n) {
+                    tokens.add(CharToken.of(regex.charAt(++i)));
+                }
+            } else if (nextChar == CharClassSyntax.OPEN) {
+                int end = CharClassSyntax.end(regex, i);
+                tokens.add(new CharClassToken(CharClassSyntax.parse(regex, i, end),
+                        Lexer.stripEscapes(regex.substring(i, end + 1))));
+                i = end;
+            } else if (nextChar == CharClassSyntax.ANY) {
+                tokens.add(new CharClassToken(CharSet.any(), String.valueOf(CharClassSyntax.ANY)));
+            } else if (nextChar == RepetitionSyntax.OPEN) {
+                int end = RepetitionSyntax.end(regex, i);
+                tokens.add(new RepetitionToken(RepetitionSyntax.parse(regex, i, end), regex.substring(i, end + 1)));
+                i = end;
             } else if ((op = Operator.find(nextChar)) != null) {
-                tokens.add(new OperatorToken(op));
+                tokens.add(OperatorToken.of(op));
             } else if ((p = Parenthesis.find(nextChar)) != null) {
-                tokens.add(p == Parenthesis.LEFT ? new LeftParenthesis() : new RightParenthesis());
+                tokens.add(p == Parenthesis.LEFT ? LeftParenthesis.INSTANCE : RightParenthesis.INSTANCE);
             } else {
-                tokens.add(new CharToken(nextChar));
+                tokens.add(CharToken.of(nextChar));
             }
         }
         return tokens;
     }
 
-    private static void applyEscapeCharacters(List<Token> tokens) {
+    static void applyEscapeCharacters(List<Token> tokens) {
         int index;
         do {
             index = -1;
@@ -54,12 +322,12 @@ public final class Parser {
                     syntaxException("Illegal/Unsupported escape sequence", tokens, index + 1);
                 }
                 tokens.remove(index);
-                tokens.set(index, new CharToken(tokens.get(index).value()));
+                tokens.set(index, CharToken.of(tokens.get(index).value()));
             }
         } while (index != -1);
     }
 
-    private static void validate(List<Token> tokens) {
+    static void validate(List<Token> tokens) {
         { /* check parentheses */
             int level = 0;
             for (int i = 0, n = tokens.size(); i < n; i++) {
@@ -85,15 +353,17 @@ public final class Parser {
                     Operator op = ((OperatorToken) next).getOperator();
                     switch (op) {
                         case KLEENE_STAR:
-                            if (i == 0 || !((prev = tokens.get(i - 1)) instanceof CharToken) && !(prev instanceof RightParenthesis)) {
-                                syntaxException("Dangling meta-character \'*\'", tokens, i);
+                        case REPETITION:
+                            if (i == 0 || !isOperand(prev = tokens.get(i - 1)) && !(prev instanceof RightParenthesis)) {
+                                syntaxException("Dangling meta-character \'" + op.value() + '\'', tokens, i);
                             }
                             break;
                         case KLEENE_PLUS:
-                            if (i == 0 || !((prev = tokens.get(i - 1)) instanceof CharToken)
+                            if (i == 0 || !isOperand(prev = tokens.get(i - 1))
                                     && !(prev instanceof RightParenthesis)
                                     && !(OperatorToken.test(prev, Operator.KLEENE_STAR))
-                                    && !(OperatorToken.test(prev, Operator.KLEENE_PLUS))) {
+                                    && !(OperatorToken.test(prev, Operator.KLEENE_PLUS))
+                                    && !(OperatorToken.test(prev, Operator.REPETITION))) {
                                 syntaxException("Dangling meta-character \'+\'", tokens, i);
                             }
                             break;
@@ -103,15 +373,19 @@ public final class Parser {
         }
     }
 
+    private static boolean isOperand(Token token) {
+        return token instanceof CharToken || token instanceof CharClassToken;
+    }
+
     private static void syntaxException(String message, List<Token> tokens, int index) {
         StringBuilder sb = new StringBuilder();
         for (Token token : tokens) {
-            sb.append(token.value());
+            sb.append(token);
         }
         throw new PatternSyntaxException(message, sb.toString(), index);
     }
 
-    private static void normalize(List<Token> tokens) {
+    static void normalize(List<Token> tokens) {
         int index;
         Token toBeAdded;
         Token next, prev;
@@ -124,27 +398,29 @@ public final class Parser {
                 if (i == 0) {
                     if (OperatorToken.test(next, Operator.ALTERNATION)) {
                         index = i;
-                        toBeAdded = new Epsilon();
+                        toBeAdded = Epsilon.INSTANCE;
                     }
                 } else if (i == n - 1) {
                     if (OperatorToken.test(next, Operator.ALTERNATION)) {
                         index = i + 1;
-                        toBeAdded = new Epsilon();
+                        toBeAdded = Epsilon.INSTANCE;
                     } else if (next instanceof RightParenthesis
                             && (prev instanceof LeftParenthesis || OperatorToken.test(prev, Operator.ALTERNATION))) {
                         index = i;
-                        toBeAdded = new Epsilon();
+                        toBeAdded = Epsilon.INSTANCE;
                     }
                 } else if (prev instanceof LeftParenthesis || OperatorToken.test(prev, Operator.ALTERNATION)) {
                     if (OperatorToken.test(next, Operator.ALTERNATION) || next instanceof RightParenthesis) {
                         index = i;
-                        toBeAdded = new Epsilon();
+                        toBeAdded = Epsilon.INSTANCE;
                     }
                 } else if (!(next instanceof OperatorToken) && !(next instanceof RightParenthesis)
-                        && (prev instanceof CharToken || prev instanceof RightParenthesis
-                        || OperatorToken.test(prev, Operator.KLEENE_STAR) || OperatorToken.test(prev, Operator.KLEENE_PLUS))) {
+                        && (isOperand(prev) || prev instanceof RightParenthesis
+                        || OperatorToken.test(prev, Operator.KLEENE_STAR)
+                        || OperatorToken.test(prev, Operator.KLEENE_PLUS)
+                        || OperatorToken.test(prev, Operator.REPETITION))) {
                     index = i;
-                    toBeAdded = new OperatorToken(Operator.CONCATENATION);
+                    toBeAdded = OperatorToken.of(Operator.CONCATENATION);
                 }
                 prev = next;
             }
@@ -152,8 +428,8 @@ public final class Parser {
                 tokens.add(index, toBeAdded);
             }
         } while (index != -1);
-        tokens.add(0, new LeftParenthesis());
-        tokens.add(new RightParenthesis());
+        tokens.add(0, LeftParenthesis.INSTANCE);
+        tokens.add(RightParenthesis.INSTANCE);
     }
 
     private static final class Cursor {
@@ -168,7 +444,7 @@ public final class Parser {
 
     }
 
-    private static Group group(List<Token> tokens) {
+    static Group group(List<Token> tokens) {
         Deque<Cursor> cursors = new ArrayDeque<>();
         Map<Integer, Deque<Group>> groups = new HashMap<>();
         int level = 0;
@@ -202,7 +478,7 @@ public final class Parser {
         return groups.get(1).pop();
     }
 
-    private static final class OpIndex {
+    static final class OpIndex {
 
         private final int index;
         private final Operator op;
@@ -214,7 +490,7 @@ public final class Parser {
 
     }
 
-    private static List<OpIndex> indexOperators(List<Token> tokens, Group rootGroup) {
+    static List<OpIndex> indexOperators(List<Token> tokens, Group rootGroup) {
         Deque<Group> groups = new ArrayDeque<>();
         groups.push(rootGroup);
         while (true) {
@@ -255,7 +531,7 @@ public final class Parser {
         return opIndices;
     }
 
-    private static ParseTree buildTree(List<Token> tokens, List<OpIndex> opIndices) {
+    static ParseTree buildTree(List<Token> tokens, List<OpIndex> opIndices) {
         Map<Range, TreeNode> nodes = new HashMap<>();
         AtomicInteger c = new AtomicInteger();
         for (OpIndex opIndex : opIndices) {
@@ -264,7 +540,11 @@ public final class Parser {
             switch (opIndex.op) {
                 case KLEENE_STAR:
                 case KLEENE_PLUS:
-                    next = TreeNode.join(left, TreeNode.nodeFor(opIndex.op, new Range(opIndex.index)), c.incrementAndGet());
+                    next = TreeNode.repeat(left, opIndex.op, new Range(opIndex.index), c.incrementAndGet());
+                    break;
+                case REPETITION:
+                    long bounds = ((RepetitionToken) tokens.get(opIndex.index)).getBounds();
+                    next = TreeNode.repeat(left, bounds, new Range(opIndex.index), c.incrementAndGet());
                     break;
                 case CONCATENATION:
                     next = TreeNode.join(left, rightNode(tokens, nodes, opIndex.index, c), c.incrementAndGet());
@@ -277,7 +557,7 @@ public final class Parser {
         }
         return new ParseTree(
                 nodes.isEmpty()
-                        ? TreeNode.nodeFor(new Epsilon(), 0, new Range(0))
+                        ? TreeNode.nodeFor(Epsilon.INSTANCE, 0, new Range(0))
                         : nodes.values().iterator().next()
         );
     }
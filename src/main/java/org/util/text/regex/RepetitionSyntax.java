@@ -0,0 +1,104 @@
+package org.util.text.regex;
+
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * The syntax of counted repetition, shared by both parsing engines: {@code {n}} repeats its operand exactly {@code n}
+ * times, {@code {m,}} at least {@code m} times and {@code {m,n}} from {@code m} to {@code n} times, with bounds of at
+ * most {@value #MAX_BOUND}. A {@code }} outside a repetition is a literal.
+ * <p>
+ * Bounds are packed in a {@code long}, the minimum in the high 32 bits and the maximum, or
+ * {@link TreeNode#UNBOUNDED}, in the low ones. Errors are reported with the pattern as written and the offset of the
+ * offending character in it, or in the buffer it was read from.
+ *
+ * @author ahmad
+ */
+final class RepetitionSyntax {
+
+    static final char OPEN = '{';
+    static final char CLOSE = '}';
+    static final char SEPARATOR = ',';
+
+    static final int MAX_BOUND = 1000;
+
+    private RepetitionSyntax() {
+    }
+
+    /**
+     * Returns the offset of the {@code }} closing the repetition opened at {@code start}.
+     *
+     * @throws PatternSyntaxException if the repetition is malformed, or its bounds are out of order or too large
+     */
+    static int end(CharSequence regex, int start) {
+        int i = start + 1, n = regex.length();
+        int min = 0, max, digits = 0;
+        for (; i < n && isDigit(regex.charAt(i)); i++, digits++) {
+            min = Math.min(10 * min + regex.charAt(i) - '0', MAX_BOUND + 1);
+        }
+        if (digits == 0) {
+            throw SourceSequence.syntaxError("Illegal repetition", regex, start);
+        }
+        max = min;
+        if (i < n && regex.charAt(i) == SEPARATOR) {
+            max = TreeNode.UNBOUNDED;
+            for (++i; i < n && isDigit(regex.charAt(i)); i++) {
+                max = Math.min(10 * Math.max(max, 0) + regex.charAt(i) - '0', MAX_BOUND + 1);
+            }
+        }
+        if (i == n || regex.charAt(i) != CLOSE) {
+            throw SourceSequence.syntaxError("Illegal repetition", regex, start);
+        }
+        if (min > MAX_BOUND || max > MAX_BOUND || max != TreeNode.UNBOUNDED && max < min) {
+            throw SourceSequence.syntaxError("Illegal repetition range", regex, i);
+        }
+        return i;
+    }
+
+    /**
+     * Returns the bounds of the repetition between the {@code {} at {@code start} and the {@code }} at {@code end},
+     * which {@link #end(CharSequence, int)} has checked.
+     */
+    static long parse(CharSequence regex, int start, int end) {
+        int min = 0, i = start + 1;
+        for (; i < end && regex.charAt(i) != SEPARATOR; i++) {
+            min = 10 * min + regex.charAt(i) - '0';
+        }
+        if (i == end) {
+            return bounds(min, min);
+        }
+        if (i + 1 == end) {
+            return bounds(min, TreeNode.UNBOUNDED);
+        }
+        int max = 0;
+        for (++i; i < end; i++) {
+            max = 10 * max + regex.charAt(i) - '0';
+        }
+        return bounds(min, max);
+    }
+
+    private static boolean isDigit(char ch) {
+        return ch >= '0' && ch <= '9';
+    }
+
+    static long bounds(int min, int max) {
+        return (long) min << 32 | max & 0xFFFFFFFFL;
+    }
+
+    static int min(long bounds) {
+        return (int) (bounds >>> 32);
+    }
+
+    static int max(long bounds) {
+        return (int) bounds;
+    }
+
+    /**
+     * Returns the canonical syntax of {@code bounds}, so equal bounds are written alike.
+     */
+    static String toString(long bounds) {
+        int min = min(bounds), max = max(bounds);
+        return OPEN + (min == max ? String.valueOf(min) : max == TreeNode.UNBOUNDED ? min + "," : min + "," + max)
+                + CLOSE;
+    }
+
+}
@@ -0,0 +1,30 @@
+package org.util.text.regex;
+
+/**
+ * @author ahmad
+ */
+final class RepetitionToken extends OperatorToken {
+
+    private final long bounds;
+    private final String text;
+
+    /**
+     * @param bounds the bounds, packed as by {@link RepetitionSyntax}
+     * @param text   the source of the repetition
+     */
+    RepetitionToken(long bounds, String text) {
+        super(Operator.REPETITION);
+        this.bounds = bounds;
+        this.text = text;
+    }
+
+    long getBounds() {
+        return bounds;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+
+}
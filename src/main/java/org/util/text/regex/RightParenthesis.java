@@ -5,7 +5,9 @@ package org.util.text.regex;
  */
 final class RightParenthesis extends ParenthesisToken {
 
-    RightParenthesis() {
+    static final RightParenthesis INSTANCE = new RightParenthesis();
+
+    private RightParenthesis() {
         super(Parenthesis.RIGHT);
     }
 
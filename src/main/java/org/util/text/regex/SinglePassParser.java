@@ -0,0 +1,548 @@
+package org.util.text.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * Operator-precedence parser that validates, normalizes and groups the {@link Lexer} tokens of the pattern in a single
+ * left-to-right pass.
+ * <p>
+ * The tree is first built into flat {@code int} arrays, then laid out as a {@link CompactParseTree}, numbering the
+ * {@code r}-nodes in the order the multi-pass pipeline processes its groups and operators, so both engines print
+ * the same tree wherever that pipeline is correct. Token indices (node ranges and {@link PatternSyntaxException}
+ * indices) are the ones the multi-pass pipeline reports.
+ * <p>
+ * A parser keeps its work arrays between patterns, growing them as needed; each thread reuses its own instance for
+ * patterns of up to {@value #SCRATCH_LIMIT} characters, unless a {@link ParseListener} parses while that instance is
+ * in use, in which case the nested parse gets a new one.
+ * <p>
+ * The pattern is read through {@link CharSequence#charAt(int)} only, so a {@link SourceSequence} view of a buffer is
+ * parsed without being copied.
+ *
+ * @author ahmad
+ */
+final class SinglePassParser {
+
+    /* node and token kinds; binary operators bind tighter the lower their kind */
+    private static final int CHAR = Lexer.CHAR;
+    private static final int EPSILON = 1;
+    private static final int STAR = Lexer.STAR;
+    private static final int PLUS = Lexer.PLUS;
+    private static final int CONCAT = 4;
+    private static final int ALT = Lexer.ALT;
+    private static final int LEFT = Lexer.LEFT;
+    private static final int RIGHT = Lexer.RIGHT;
+    private static final int START = 8;
+    private static final int CLASS = Lexer.CLASS;
+    private static final int REPEAT = Lexer.REPEAT;
+
+    private static final int POSTFIX_OPS = 0;
+    private static final int CONCAT_OPS = 1;
+    private static final int ALT_OPS = 2;
+
+    private static final int MARKER = -1;
+    private static final int NONE = -1;
+
+    static final int SCRATCH_LIMIT = 1 << 16;
+
+    private static final ThreadLocal<SinglePassParser> SCRATCH = ThreadLocal.withInitial(SinglePassParser::new);
+
+    /* whether this is the thread's scratch instance and a parse is using it */
+    private boolean busy;
+    private CharSequence regex;
+
+    /* tokens */
+    private long[] tokens = new long[0];
+    private int tokenCount;
+    private final List<CharSet> classes = new ArrayList<>();
+
+    /* nodes */
+    private int[] kind = new int[0];
+    private char[] value;
+    private CharSet[] set;
+    private long[] bounds;
+    private int[] left;
+    private int[] right;
+    private int[] start;
+    private int[] end;
+    private int[] nextInGroup;
+    private int nodeCount;
+
+    /* groups */
+    private int[] parent;
+    private int[] firstChild;
+    private int[] lastChild;
+    private int[] nextSibling;
+    private int[] weight;
+    private int[] opHead;
+    private int[] opTail;
+    private int groupCount;
+
+    /* parse stacks */
+    private int[] operands;
+    private int operandCount;
+    private int[] operators;
+    private int operatorCount;
+
+    /* materialize */
+    private int[] pending = new int[0];
+    private int[] order = new int[0];
+    private int[] runEnd = new int[0];
+    private int[] sequence = new int[0];
+    private int[] number = new int[0];
+    private long[] keys = new long[0];
+
+    private SinglePassParser() {
+        int groups = 8;
+        parent = new int[groups];
+        firstChild = new int[groups];
+        lastChild = new int[groups];
+        nextSibling = new int[groups];
+        weight = new int[groups];
+        opHead = new int[3 * groups];
+        opTail = new int[3 * groups];
+    }
+
+    static ParseTree parse(CharSequence regex) {
+        ParseListener[] listeners = Parser.listeners();
+        SinglePassParser parser = acquire(regex);
+        try {
+            CompactParseTree compact = parser.compact(regex, listeners);
+            if (listeners.length == 0) {
+                return compact.toParseTree();
+            }
+            long start = System.nanoTime();
+            ParseTree tree = compact.toParseTree();
+            Parser.publish(listeners, regex.toString(), Parser.Phase.BUILD_TREE, start, parser.tokenCount,
+                    compact.size());
+            return tree;
+        } finally {
+            parser.busy = false;
+        }
+    }
+
+    static CompactParseTree parseCompact(CharSequence regex) {
+        SinglePassParser parser = acquire(regex);
+        try {
+            return parser.compact(regex, Parser.listeners());
+        } finally {
+            parser.busy = false;
+        }
+    }
+
+    /**
+     * Parses {@code regex} like {@link #parseCompact(CharSequence)} and stores, for each group in the order its nodes
+     * are numbered, the group in {@code groups} ({@code 0} for the whole pattern, then its groups in the order they
+     * open) and the number of nodes numbered with it in {@code runs}. Both arrays must have room for every group.
+     */
+    static CompactParseTree parseCompact(CharSequence regex, int[] groups, int[] runs) {
+        SinglePassParser parser = acquire(regex);
+        try {
+            CompactParseTree tree = parser.compact(regex, Parser.listeners());
+            if (parser.tokenCount == 0) {
+                groups[0] = 0;
+                runs[0] = tree.size();
+                return tree;
+            }
+            for (int g = 0, n = 0; g < parser.groupCount; g++) {
+                groups[g] = parser.order[g];
+                runs[g] = parser.runEnd[g] - n;
+                n = parser.runEnd[g];
+            }
+            return tree;
+        } finally {
+            parser.busy = false;
+        }
+    }
+
+    /**
+     * Returns the thread's scratch instance, marked busy until the caller clears {@link #busy}, or a new instance if
+     * the pattern is too long or a listener called back while the scratch instance is in use.
+     */
+    private static SinglePassParser acquire(CharSequence regex) {
+        if (regex.length() <= SCRATCH_LIMIT) {
+            SinglePassParser scratch = SCRATCH.get();
+            if (!scratch.busy) {
+                scratch.busy = true;
+                return scratch;
+            }
+        }
+        return new SinglePassParser();
+    }
+
+    private CompactParseTree compact(CharSequence regex, ParseListener[] listeners) {
+        try {
+            if (listeners.length == 0) {
+                reset(regex);
+                return tokenCount == 0 ? emptyTree() : materialize(build());
+            }
+            String pattern = regex.toString();
+            long start = System.nanoTime();
+            reset(regex);
+            Parser.publish(listeners, pattern, Parser.Phase.LEX, start, tokenCount, tokenCount);
+            if (tokenCount == 0) {
+                return emptyTree();
+            }
+            start = System.nanoTime();
+            int root = build();
+            Parser.publish(listeners, pattern, Parser.Phase.PARSE, start, tokenCount, operatorCount());
+            start = System.nanoTime();
+            CompactParseTree tree = materialize(root);
+            Parser.publish(listeners, pattern, Parser.Phase.MATERIALIZE, start, tokenCount, tree.size());
+            return tree;
+        } finally {
+            this.regex = null;
+            classes.clear();
+        }
+    }
+
+    private static CompactParseTree emptyTree() {
+        return new CompactParseTree(
+                new byte[]{CompactParseTree.EPSILON}, new byte[1], new char[]{Epsilon.SYMBOL}, null, null,
+                new int[]{NONE}, new int[]{NONE}, new int[]{0}, new int[]{1}
+        );
+    }
+
+    private int operatorCount() {
+        int count = 0;
+        for (int node = 0; node < nodeCount; node++) {
+            if (kind[node] != CHAR && kind[node] != CLASS && kind[node] != EPSILON) {
+                ++count;
+            }
+        }
+        return count;
+    }
+
+    private void reset(CharSequence regex) {
+        this.regex = regex;
+        if (regex.length() > tokens.length) {
+            tokens = new long[regex.length()];
+        }
+        tokenCount = Lexer.lex(regex, tokens, classes);
+        int maxNodes = 2 * tokenCount + 2;
+        if (maxNodes > kind.length) {
+            kind = new int[maxNodes];
+            value = new char[maxNodes];
+            set = new CharSet[maxNodes];
+            bounds = new long[maxNodes];
+            left = new int[maxNodes];
+            right = new int[maxNodes];
+            start = new int[maxNodes];
+            end = new int[maxNodes];
+            nextInGroup = new int[maxNodes];
+            operands = new int[maxNodes];
+            operators = new int[maxNodes];
+        }
+        nodeCount = groupCount = operandCount = operatorCount = 0;
+    }
+
+    /**
+     * Throws a syntax error at token index {@code index}, whose character is at offset {@code at} in the pattern.
+     */
+    private void syntaxException(String message, int index, int at) {
+        throw SourceSequence.syntaxError(message, Lexer.stripEscapes(regex), index, regex, at);
+    }
+
+    private int build() {
+        int cur = newGroup(NONE);
+        int prev = START, level = 0, token, index = 1, dangling = -1, classIndex = 0;
+        char danglingChar = 0;
+        for (token = 0; token < tokenCount; token++) {
+            int next = Lexer.kind(tokens[token]);
+            char ch = Lexer.value(tokens[token]);
+            /* a class is an operand like a character */
+            boolean isClass = next == CLASS;
+            if (isClass) {
+                next = CHAR;
+            }
+            switch (next) {
+                case LEFT:
+                    ++level;
+                    break;
+                case RIGHT:
+                    if (--level < 0) {
+                        syntaxException("Unmatched closing \')\'", token - 1, Lexer.offset(tokens[token]));
+                    }
+                    break;
+                case STAR:
+                case REPEAT:
+                    if (dangling == -1 && prev != CHAR && prev != RIGHT) {
+                        dangling = token;
+                        danglingChar = ch;
+                    }
+                    break;
+                case PLUS:
+                    if (dangling == -1 && prev != CHAR && prev != RIGHT && prev != STAR && prev != PLUS
+                            && prev != REPEAT) {
+                        dangling = token;
+                        danglingChar = ch;
+                    }
+                    break;
+            }
+            if (dangling == -1) {
+                if ((prev == START || prev == LEFT || prev == ALT) && (next == ALT || next == RIGHT)) {
+                    pushOperand(newLeaf(EPSILON, Epsilon.SYMBOL, index++));
+                } else if ((prev == CHAR || prev == RIGHT || prev == STAR || prev == PLUS || prev == REPEAT)
+                        && (next == CHAR || next == LEFT)) {
+                    pushOperator(cur, CONCAT, index++);
+                }
+                switch (next) {
+                    case CHAR:
+                        int leaf = newLeaf(isClass ? CLASS : CHAR, ch, index);
+                        if (isClass) {
+                            set[leaf] = classes.get(classIndex++);
+                        }
+                        pushOperand(leaf);
+                        break;
+                    case STAR:
+                    case PLUS:
+                    case REPEAT:
+                        int op = newOperator(cur, next, POSTFIX_OPS, index);
+                        if (next == REPEAT) {
+                            int offset = Lexer.offset(tokens[token]);
+                            bounds[op] = RepetitionSyntax.parse(regex, offset, RepetitionSyntax.end(regex, offset));
+                        }
+                        int operand = operands[--operandCount];
+                        left[op] = operand;
+                        start[op] = start[operand];
+                        pushOperand(op);
+                        break;
+                    case ALT:
+                        pushOperator(cur, ALT, index);
+                        break;
+                    case LEFT:
+                        operators[operatorCount++] = MARKER;
+                        cur = newGroup(cur);
+                        break;
+                    case RIGHT:
+                        reduceGroup();
+                        weight[parent[cur]] += weight[cur];
+                        cur = parent[cur];
+                        break;
+                }
+                ++index;
+            }
+            prev = next;
+        }
+        if (level != 0) {
+            syntaxException("Unclosed group", token, regex.length());
+        }
+        if (dangling != -1) {
+            syntaxException("Dangling meta-character \'" + danglingChar + '\'', dangling,
+                    Lexer.offset(tokens[dangling]));
+        }
+        if (prev == LEFT || prev == ALT) {
+            pushOperand(newLeaf(EPSILON, Epsilon.SYMBOL, index));
+        }
+        reduceGroup();
+        return operands[0];
+    }
+
+    private int newLeaf(int k, char ch, int index) {
+        int node = nodeCount++;
+        kind[node] = k;
+        value[node] = ch;
+        left[node] = right[node] = NONE;
+        start[node] = index;
+        end[node] = index + 1;
+        return node;
+    }
+
+    private int newOperator(int group, int k, int list, int index) {
+        int node = nodeCount++;
+        kind[node] = k;
+        left[node] = right[node] = NONE;
+        end[node] = index + 1;
+        nextInGroup[node] = NONE;
+        int slot = 3 * group + list;
+        if (opHead[slot] == NONE) {
+            opHead[slot] = node;
+        } else {
+            nextInGroup[opTail[slot]] = node;
+        }
+        opTail[slot] = node;
+        return node;
+    }
+
+    private void pushOperand(int node) {
+        operands[operandCount++] = node;
+    }
+
+    private void pushOperator(int group, int k, int index) {
+        while (operatorCount > 0 && operators[operatorCount - 1] != MARKER && kind[operators[operatorCount - 1]] <= k) {
+            reduce(operators[--operatorCount]);
+        }
+        operators[operatorCount++] = newOperator(group, k, k == CONCAT ? CONCAT_OPS : ALT_OPS, index);
+    }
+
+    private void reduceGroup() {
+        while (operatorCount > 0) {
+            int op = operators[--operatorCount];
+            if (op == MARKER) {
+                return;
+            }
+            reduce(op);
+        }
+    }
+
+    private void reduce(int op) {
+        int r = operands[--operandCount];
+        int l = operands[--operandCount];
+        left[op] = l;
+        right[op] = r;
+        start[op] = start[l];
+        end[op] = end[r];
+        pushOperand(op);
+    }
+
+    private int newGroup(int p) {
+        int group = groupCount++;
+        if (group == parent.length) {
+            int length = group * 2;
+            parent = Arrays.copyOf(parent, length);
+            firstChild = Arrays.copyOf(firstChild, length);
+            lastChild = Arrays.copyOf(lastChild, length);
+            nextSibling = Arrays.copyOf(nextSibling, length);
+            weight = Arrays.copyOf(weight, length);
+            opHead = Arrays.copyOf(opHead, 3 * length);
+            opTail = Arrays.copyOf(opTail, 3 * length);
+        }
+        parent[group] = p;
+        firstChild[group] = lastChild[group] = nextSibling[group] = NONE;
+        weight[group] = 1;
+        opHead[3 * group] = opHead[3 * group + 1] = opHead[3 * group + 2] = NONE;
+        if (p != NONE) {
+            if (firstChild[p] == NONE) {
+                firstChild[p] = group;
+            } else {
+                nextSibling[lastChild[p]] = group;
+            }
+            lastChild[p] = group;
+        }
+        return group;
+    }
+
+    /**
+     * Visits the groups children first, heaviest child first (leftmost on ties), and within each group numbers the
+     * postfix operators, then the concatenations, then the alternations, each from left to right. Each operator is
+     * numbered after its leaf operands, and the compact tree stores the nodes in numbering order.
+     */
+    private CompactParseTree materialize(int root) {
+        if (groupCount > pending.length) {
+            pending = new int[groupCount];
+            order = new int[groupCount];
+            runEnd = new int[groupCount];
+        }
+        if (nodeCount > sequence.length) {
+            sequence = new int[nodeCount];
+            number = new int[nodeCount];
+        }
+        int pendingCount = 0, orderCount = groupCount;
+        pending[pendingCount++] = 0;
+        while (pendingCount > 0) {
+            int group = pending[--pendingCount];
+            order[--orderCount] = group;
+            int children = 0;
+            for (int child = firstChild[group]; child != NONE; child = nextSibling[child]) {
+                ++children;
+            }
+            if (children > keys.length) {
+                keys = new long[Math.max(children, 2 * keys.length)];
+            }
+            int k = 0;
+            for (int child = firstChild[group]; child != NONE; child = nextSibling[child]) {
+                keys[k++] = (long) (Integer.MAX_VALUE - weight[child]) << 32 | child;
+            }
+            Arrays.sort(keys, 0, children);
+            for (int i = 0; i < children; i++) {
+                pending[pendingCount++] = (int) keys[i];
+            }
+        }
+        Arrays.fill(number, 0, nodeCount, NONE);
+        int n = 0;
+        for (int g = 0; g < groupCount; g++) {
+            int group = order[g];
+            for (int list = 0; list < 3; list++) {
+                for (int op = opHead[3 * group + list]; op != NONE; op = nextInGroup[op]) {
+                    int l = left[op], r = right[op];
+                    if (number[l] == NONE) {
+                        sequence[number[l] = n++] = l;
+                    }
+                    if (r != NONE && number[r] == NONE) {
+                        sequence[number[r] = n++] = r;
+                    }
+                    sequence[number[op] = n++] = op;
+                }
+            }
+            runEnd[g] = n;
+        }
+        if (number[root] == NONE) {
+            sequence[number[root] = n++] = root;
+            runEnd[groupCount - 1] = n;
+        }
+        byte[] compactKind = new byte[n];
+        byte[] compactOperator = new byte[n];
+        char[] compactValue = new char[n];
+        CharSet[] compactSets = classes.isEmpty() ? null : new CharSet[n];
+        long[] compactBounds = null;
+        int[] compactFirstChild = new int[n];
+        int[] compactNextSibling = new int[n];
+        int[] compactStart = new int[n];
+        int[] compactEnd = new int[n];
+        Arrays.fill(compactNextSibling, NONE);
+        for (int i = 0; i < n; i++) {
+            int node = sequence[i];
+            compactStart[i] = start[node];
+            compactEnd[i] = end[node];
+            compactFirstChild[i] = NONE;
+            switch (kind[node]) {
+                case CHAR:
+                    compactKind[i] = CompactParseTree.CHAR;
+                    compactValue[i] = value[node];
+                    break;
+                case EPSILON:
+                    compactKind[i] = CompactParseTree.EPSILON;
+                    compactValue[i] = Epsilon.SYMBOL;
+                    break;
+                case CLASS:
+                    compactKind[i] = CompactParseTree.CLASS;
+                    compactSets[i] = set[node];
+                    set[node] = null;
+                    break;
+                default:
+                    compactKind[i] = CompactParseTree.OPERATOR;
+                    compactOperator[i] = (byte) toOperator(kind[node]).ordinal();
+                    if (kind[node] == REPEAT) {
+                        if (compactBounds == null) {
+                            compactBounds = new long[n];
+                        }
+                        compactBounds[i] = bounds[node];
+                    }
+                    compactFirstChild[i] = number[left[node]];
+                    if (right[node] != NONE) {
+                        compactNextSibling[number[left[node]]] = number[right[node]];
+                    }
+            }
+        }
+        return new CompactParseTree(compactKind, compactOperator, compactValue, compactSets, compactBounds,
+                compactFirstChild, compactNextSibling, compactStart, compactEnd);
+    }
+
+    private static Operator toOperator(int k) {
+        switch (k) {
+            case STAR:
+                return Operator.KLEENE_STAR;
+            case PLUS:
+                return Operator.KLEENE_PLUS;
+            case REPEAT:
+                return Operator.REPETITION;
+            case CONCAT:
+                return Operator.CONCATENATION;
+            default:
+                return Operator.ALTERNATION;
+        }
+    }
+
+}
@@ -0,0 +1,34 @@
+package org.util.text.regex;
+
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A syntax error in a pattern parsed in place from a larger buffer.
+ * <p>
+ * {@link #getPattern()} and {@link #getIndex()} are what parsing the pattern as a {@code String} reports, so
+ * {@link #getMessage()} points at the right character; {@link #getSourceOffset()} locates that character in the
+ * buffer.
+ *
+ * @author ahmad
+ */
+public final class SourcePatternSyntaxException extends PatternSyntaxException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int sourceOffset;
+
+    SourcePatternSyntaxException(String description, String pattern, int index, int sourceOffset) {
+        super(description, pattern, index);
+        this.sourceOffset = sourceOffset;
+    }
+
+    /**
+     * Returns the offset in the buffer of the character the error was found at, or of the end of the pattern if it
+     * was found there: a {@code char} index for a {@code CharSequence} or {@code char[]}, a byte index for a
+     * {@code ByteBuffer}.
+     */
+    public int getSourceOffset() {
+        return sourceOffset;
+    }
+
+}
@@ -0,0 +1,229 @@
+package org.util.text.regex;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.regex.PatternSyntaxException;
+
+/**
+ * A pattern read in place from a larger buffer, which maps the offset of each of its characters back to an offset in
+ * that buffer, so its syntax errors, as {@link SourcePatternSyntaxException}s, also locate the error in the buffer.
+ *
+ * @author ahmad
+ */
+abstract class SourceSequence implements CharSequence {
+
+    /**
+     * Returns the characters of {@code source} from {@code start} to {@code end}, at the offsets they have there.
+     */
+    static SourceSequence slice(CharSequence source, int start, int end) {
+        if (start < 0 || start > end || end > source.length()) {
+            throw new IndexOutOfBoundsException("start = " + start + ", end = " + end
+                    + ", length = " + source.length());
+        }
+        return new Slice(source, start, end);
+    }
+
+    /**
+     * Returns the characters encoded in UTF-8 in {@code source} from its position to its limit, at the buffer
+     * indices of their encodings; a supplementary character is two characters at the same index. Leaves the position
+     * of {@code source} unchanged.
+     *
+     * @throws SourcePatternSyntaxException if the bytes are not well-formed UTF-8
+     */
+    static SourceSequence utf8(ByteBuffer source) {
+        return new Utf8(source);
+    }
+
+    /**
+     * Returns the offset in the buffer of the character at {@code index}, or of the end of the pattern if
+     * {@code index} is its length.
+     */
+    abstract int sourceOffset(int index);
+
+    /**
+     * Returns a syntax error reporting {@code regex} as written and the offset of the character at {@code index}.
+     */
+    static PatternSyntaxException syntaxError(String description, CharSequence regex, int index) {
+        return syntaxError(description, regex.toString(), index, regex, index);
+    }
+
+    /**
+     * Returns a syntax error reporting {@code index} in {@code pattern}, and the buffer offset of the character at
+     * {@code at} in {@code regex} if {@code regex} was read from a buffer.
+     */
+    static PatternSyntaxException syntaxError(String description, String pattern, int index, CharSequence regex,
+                                              int at) {
+        if (regex instanceof SourceSequence) {
+            return new SourcePatternSyntaxException(description, pattern, index,
+                    ((SourceSequence) regex).sourceOffset(at));
+        }
+        return new PatternSyntaxException(description, pattern, index);
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        StringBuilder sb = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            sb.append(charAt(i));
+        }
+        return sb.toString();
+    }
+
+    @Override
+    public String toString() {
+        return subSequence(0, length()).toString();
+    }
+
+    private static final class Slice extends SourceSequence {
+
+        private final CharSequence source;
+        private final int start;
+        private final int end;
+
+        Slice(CharSequence source, int start, int end) {
+            this.source = source;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        int sourceOffset(int index) {
+            return start + index;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return source.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return source.subSequence(this.start + start, this.start + end);
+        }
+
+    }
+
+    /**
+     * Decodes the buffer as it is read, through a cursor on one code point that steps forward or, as UTF-8 marks its
+     * continuation bytes, backward, so reading the pattern in order or rescanning a few characters costs one
+     * decoding per character. The bytes are validated once, up front.
+     */
+    private static final class Utf8 extends SourceSequence {
+
+        private final ByteBuffer source;
+        private final int start;
+        private final int end;
+        private final int length;
+        /* the code point the cursor is on: the index of its first byte, and that of its first character */
+        private int position;
+        private int index;
+
+        Utf8(ByteBuffer source) {
+            this.source = source;
+            start = source.position();
+            end = source.limit();
+            int chars = 0;
+            for (int i = start; i < end; ) {
+                int n = byteCount(source.get(i));
+                int codePoint = n == 0 || i + n > end ? -1 : decode(i, n);
+                if (codePoint < 0) {
+                    ByteBuffer view = source.duplicate();
+                    view.position(start);
+                    throw new SourcePatternSyntaxException("Malformed UTF-8 input",
+                            StandardCharsets.UTF_8.decode(view).toString(), chars, i);
+                }
+                chars += Character.charCount(codePoint);
+                i += n;
+            }
+            length = chars;
+            position = start;
+        }
+
+        /**
+         * Returns the length of the encoding a byte starts, or {@code 0} if no encoding starts with it.
+         */
+        private static int byteCount(byte lead) {
+            int b = lead & 0xFF;
+            return b < 0x80 ? 1 : b < 0xC2 ? 0 : b < 0xE0 ? 2 : b < 0xF0 ? 3 : b < 0xF5 ? 4 : 0;
+        }
+
+        /**
+         * Returns the code point of the {@code n} bytes at {@code i}, or {@code -1} if they are not its shortest
+         * encoding or encode a surrogate or a value past {@link Character#MAX_CODE_POINT}.
+         */
+        private int decode(int i, int n) {
+            int codePoint = n == 1 ? source.get(i) : source.get(i) & (0x7F >> n);
+            for (int k = 1; k < n; k++) {
+                int b = source.get(i + k);
+                if ((b & 0xC0) != 0x80) {
+                    return -1;
+                }
+                codePoint = codePoint << 6 | b & 0x3F;
+            }
+            if (n == 3 && (codePoint < 0x800 || Character.isSurrogate((char) codePoint))
+                    || n == 4 && (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT
+                    || codePoint > Character.MAX_CODE_POINT)) {
+                return -1;
+            }
+            return codePoint;
+        }
+
+        private int charCount(int position) {
+            return (source.get(position) & 0xFF) >= 0xF0 ? 2 : 1;
+        }
+
+        /**
+         * Moves the cursor to the code point holding the character at {@code i}, from the start if that is closer.
+         */
+        private void seek(int i) {
+            if (i < index - i) {
+                position = start;
+                index = 0;
+            }
+            while (i < index) {
+                do {
+                    --position;
+                } while ((source.get(position) & 0xC0) == 0x80);
+                index -= charCount(position);
+            }
+            while (i >= index + charCount(position)) {
+                index += charCount(position);
+                position += byteCount(source.get(position));
+            }
+        }
+
+        @Override
+        int sourceOffset(int index) {
+            if (index == length) {
+                return end;
+            }
+            seek(index);
+            return position;
+        }
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index = " + index);
+            }
+            seek(index);
+            int codePoint = decode(position, byteCount(source.get(position)));
+            if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+                return (char) codePoint;
+            }
+            return index == this.index ? Character.highSurrogate(codePoint) : Character.lowSurrogate(codePoint);
+        }
+
+    }
+
+}
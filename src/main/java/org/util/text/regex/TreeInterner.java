@@ -0,0 +1,249 @@
+package org.util.text.regex;
+
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.Arrays;
+
+/**
+ * Builds parse trees whose structurally identical subtrees, within and across patterns, are one shared node.
+ * <p>
+ * Nodes are hash-consed: a node is looked up by its type, label and the identities of its already interned children
+ * in a table of weak references, and created only if absent, so two interned subtrees are equal exactly when they are
+ * the same object. A shared node may stand at several positions of several patterns, so interned trees carry no
+ * position: their {@code r}-nodes are all labelled {@code "r"} and their nodes have no token range. Nodes stay in the
+ * table as long as some tree refers to them.
+ * <p>
+ * The table is split into lock-striped segments and is safe for concurrent use.
+ *
+ * @author ahmad
+ */
+public final class TreeInterner {
+
+    private static final String R_LABEL = "r";
+
+    private static final int SEGMENTS = 16;
+
+    private static final TreeNode[] NO_CHILDREN = new TreeNode[0];
+    private static final String EPSILON_LABEL = String.valueOf(Epsilon.SYMBOL);
+
+    private final Segment[] segments = new Segment[SEGMENTS];
+
+    private TreeInterner() {
+        for (int i = 0; i < SEGMENTS; i++) {
+            segments[i] = new Segment();
+        }
+    }
+
+    public static TreeInterner create() {
+        return new TreeInterner();
+    }
+
+    /**
+     * Parses {@code regex} with the single-pass engine into an interned tree, without building its unshared nodes.
+     *
+     * @throws java.util.regex.PatternSyntaxException if the pattern is invalid
+     */
+    public ParseTree parse(String regex) {
+        CompactParseTree compact = Parser.parseCompact(regex);
+        TreeNode[] nodes = new TreeNode[compact.size()];
+        for (int i = 0; i < nodes.length; i++) {
+            switch (compact.kind(i)) {
+                case CompactParseTree.CHAR:
+                    nodes[i] = literal(compact.value(i));
+                    break;
+                case CompactParseTree.EPSILON:
+                    nodes[i] = intern(TreeNode.Type.EPSILON, EPSILON_LABEL, NO_CHILDREN);
+                    break;
+                case CompactParseTree.CLASS:
+                    nodes[i] = charClass(compact.charSet(i));
+                    break;
+                default:
+                    TreeNode left = nodes[compact.firstChild(i)];
+                    Operator op = compact.operator(i);
+                    switch (op) {
+                        case KLEENE_STAR:
+                        case KLEENE_PLUS:
+                            nodes[i] = intern(op == Operator.KLEENE_STAR ? TreeNode.Type.KLEENE_STAR
+                                    : TreeNode.Type.KLEENE_PLUS, R_LABEL, new TreeNode[]{left, symbol(op.toString())});
+                            break;
+                        case REPETITION:
+                            nodes[i] = intern(TreeNode.Type.REPETITION, R_LABEL, new TreeNode[]{
+                                    left, symbol(RepetitionSyntax.toString(compact.bounds(i)))
+                            });
+                            break;
+                        case CONCATENATION:
+                            nodes[i] = intern(TreeNode.Type.CONCATENATION, R_LABEL,
+                                    new TreeNode[]{left, nodes[compact.nextSibling(compact.firstChild(i))]});
+                            break;
+                        default:
+                            nodes[i] = intern(TreeNode.Type.ALTERNATION, R_LABEL, new TreeNode[]{
+                                    left, symbol(op.toString()), nodes[compact.nextSibling(compact.firstChild(i))]
+                            });
+                    }
+            }
+        }
+        return new ParseTree(nodes[nodes.length - 1]);
+    }
+
+    /**
+     * Returns the interned copy of {@code tree}, walked without recursion.
+     */
+    public ParseTree intern(ParseTree tree) {
+        TreeNode[] path = new TreeNode[16];
+        int[] next = new int[16];
+        TreeNode[] done = new TreeNode[16];
+        int depth = 0, doneCount = 0;
+        path[depth++] = tree.getRoot();
+        while (depth > 0) {
+            TreeNode node = path[depth - 1];
+            if (next[depth - 1] < node.childCount()) {
+                TreeNode child = node.getChild(next[depth - 1]++);
+                if (depth == path.length) {
+                    path = Arrays.copyOf(path, 2 * depth);
+                    next = Arrays.copyOf(next, 2 * depth);
+                }
+                path[depth] = child;
+                next[depth++] = 0;
+                continue;
+            }
+            int count = node.childCount();
+            TreeNode[] children = count == 0 ? NO_CHILDREN : Arrays.copyOfRange(done, doneCount - count, doneCount);
+            doneCount -= count;
+            if (doneCount == done.length) {
+                done = Arrays.copyOf(done, 2 * doneCount);
+            }
+            done[doneCount++] = intern(node.getType(), labelOf(node), children, node.heldCharSet());
+            --depth;
+        }
+        return new ParseTree(done[0]);
+    }
+
+    /**
+     * Returns the number of distinct nodes currently interned.
+     */
+    public int size() {
+        int size = 0;
+        for (Segment segment : segments) {
+            size += segment.size();
+        }
+        return size;
+    }
+
+    private static String labelOf(TreeNode node) {
+        switch (node.getType()) {
+            case SYMBOL:
+            case EPSILON:
+                return node.getLabel();
+            default:
+                return R_LABEL;
+        }
+    }
+
+    private TreeNode literal(char value) {
+        return intern(TreeNode.Type.LITERAL, R_LABEL, new TreeNode[]{symbol(String.valueOf(value))});
+    }
+
+    private TreeNode charClass(CharSet charSet) {
+        TreeNode symbol = intern(TreeNode.Type.SYMBOL, charSet.toString(), NO_CHILDREN, charSet);
+        return intern(TreeNode.Type.CHAR_CLASS, R_LABEL, new TreeNode[]{symbol}, charSet);
+    }
+
+    private TreeNode symbol(String label) {
+        return intern(TreeNode.Type.SYMBOL, label, NO_CHILDREN);
+    }
+
+    private TreeNode intern(TreeNode.Type type, String label, TreeNode[] children) {
+        return intern(type, label, children, null);
+    }
+
+    private TreeNode intern(TreeNode.Type type, String label, TreeNode[] children, CharSet charSet) {
+        int h = type.ordinal() * 31 + label.hashCode();
+        for (TreeNode child : children) {
+            h = h * 31 + System.identityHashCode(child);
+        }
+        h ^= h >>> 16;
+        h *= 0x9E3779B9;
+        return segments[h >>> 28].intern(type, label, children, charSet, h);
+    }
+
+    private static final class Entry extends WeakReference<TreeNode> {
+
+        private final int hash;
+        private Entry next;
+
+        private Entry(TreeNode node, int hash, Entry next, ReferenceQueue<TreeNode> queue) {
+            super(node, queue);
+            this.hash = hash;
+            this.next = next;
+        }
+
+    }
+
+    private static final class Segment {
+
+        private final ReferenceQueue<TreeNode> queue = new ReferenceQueue<>();
+        private Entry[] table = new Entry[16];
+        private int count;
+
+        private synchronized TreeNode intern(TreeNode.Type type, String label, TreeNode[] children, CharSet charSet,
+                                             int hash) {
+            expunge();
+            int i = hash & (table.length - 1);
+            for (Entry e = table[i]; e != null; e = e.next) {
+                if (e.hash == hash) {
+                    TreeNode node = e.get();
+                    if (node != null && node.hasShape(type, label, children, charSet)) {
+                        return node;
+                    }
+                }
+            }
+            TreeNode node = TreeNode.shared(type, label, children, charSet);
+            table[i] = new Entry(node, hash, table[i], queue);
+            if (++count > table.length - (table.length >>> 2)) {
+                resize();
+            }
+            return node;
+        }
+
+        private synchronized int size() {
+            expunge();
+            return count;
+        }
+
+        private void resize() {
+            Entry[] resized = new Entry[2 * table.length];
+            for (Entry head : table) {
+                for (Entry e = head, next; e != null; e = next) {
+                    next = e.next;
+                    int i = e.hash & (resized.length - 1);
+                    e.next = resized[i];
+                    resized[i] = e;
+                }
+            }
+            table = resized;
+        }
+
+        /**
+         * Unlinks the entries whose nodes have been collected.
+         */
+        private void expunge() {
+            for (Object ref; (ref = queue.poll()) != null; ) {
+                Entry stale = (Entry) ref;
+                int i = stale.hash & (table.length - 1);
+                for (Entry e = table[i], prev = null; e != null; prev = e, e = e.next) {
+                    if (e == stale) {
+                        if (prev == null) {
+                            table[i] = e.next;
+                        } else {
+                            prev.next = e.next;
+                        }
+                        --count;
+                        break;
+                    }
+                }
+            }
+        }
+
+    }
+
+}
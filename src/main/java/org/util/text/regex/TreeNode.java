@@ -3,25 +3,165 @@ package org.util.text.regex;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.Objects;
+import java.util.function.Supplier;
 
 /**
  * @author ahmad
  */
 public final class TreeNode {
 
+    /**
+     * What a node stands for in the pattern.
+     */
+    public enum Type {
+
+        /**
+         * An {@code r}-node matching one character; its only child is the {@link #SYMBOL} of the character.
+         */
+        LITERAL,
+
+        /**
+         * A leaf matching the empty string.
+         */
+        EPSILON,
+
+        /**
+         * An {@code r}-node whose children are the operand and the {@code *} symbol.
+         */
+        KLEENE_STAR,
+
+        /**
+         * An {@code r}-node whose children are the operand and the {@code +} symbol.
+         */
+        KLEENE_PLUS,
+
+        /**
+         * An {@code r}-node whose children are the left and the right operand.
+         */
+        CONCATENATION,
+
+        /**
+         * An {@code r}-node whose children are the left operand, the {@code |} symbol and the right operand.
+         */
+        ALTERNATION,
+
+        /**
+         * A leaf holding a character of a {@link #LITERAL}, the class of a {@link #CHAR_CLASS} or an operator symbol.
+         */
+        SYMBOL,
+
+        /**
+         * An {@code r}-node matching one character of a {@link CharSet}; its only child is the {@link #SYMBOL} of the
+         * class, labelled with the canonical syntax of the set.
+         */
+        CHAR_CLASS,
+
+        /**
+         * An {@code r}-node whose children are the operand and the symbol of its bounds, as in {@code {2,5}}; the
+         * operand is kept once, however many times it repeats.
+         */
+        REPETITION
+
+    }
+
+    /**
+     * The maximum of a {@link Type#REPETITION} without an upper bound.
+     */
+    public static final int UNBOUNDED = -1;
+
+    private final Type type;
     private final String label;
     private final Range range;
+    private final CharSet charSet;
     private final List<TreeNode> children = new ArrayList<>();
+    /* builds the children on first read; null once they are built, or for a node built with them */
+    private volatile Supplier<TreeNode[]> expansion;
+
+    private TreeNode(Type type, String label, Range range) {
+        this(type, label, range, null);
+    }
 
-    private TreeNode(String label, Range range) {
+    private TreeNode(Type type, String label, Range range, CharSet charSet) {
+        this.type = type;
         this.label = label;
         this.range = range;
+        this.charSet = charSet;
+    }
+
+    public Type getType() {
+        return type;
     }
 
     public String getLabel() {
         return label;
     }
 
+    /**
+     * Returns the character of a {@link Type#LITERAL} or {@link Type#SYMBOL} node.
+     *
+     * @throws IllegalStateException if this node is of another type
+     */
+    public char getValue() {
+        switch (type) {
+            case LITERAL:
+                return children().get(0).label.charAt(0);
+            case SYMBOL:
+                return label.charAt(0);
+            default:
+                throw new IllegalStateException(type + " node has no value");
+        }
+    }
+
+    /**
+     * Returns the characters a {@link Type#LITERAL} or {@link Type#CHAR_CLASS} node matches.
+     *
+     * @throws IllegalStateException if this node is of another type
+     */
+    public CharSet getCharSet() {
+        switch (type) {
+            case LITERAL:
+                return CharSet.of(getValue());
+            case CHAR_CLASS:
+                return charSet;
+            default:
+                throw new IllegalStateException(type + " node has no characters");
+        }
+    }
+
+    /**
+     * Returns the least number of times a {@link Type#REPETITION} node repeats its operand.
+     *
+     * @throws IllegalStateException if this node is of another type
+     */
+    public int getMin() {
+        return RepetitionSyntax.min(getBounds());
+    }
+
+    /**
+     * Returns the greatest number of times a {@link Type#REPETITION} node repeats its operand, or {@link #UNBOUNDED}.
+     *
+     * @throws IllegalStateException if this node is of another type
+     */
+    public int getMax() {
+        return RepetitionSyntax.max(getBounds());
+    }
+
+    /**
+     * Returns the bounds of a {@link Type#REPETITION} node, packed as by {@link RepetitionSyntax}.
+     */
+    long getBounds() {
+        if (type != Type.REPETITION) {
+            throw new IllegalStateException(type + " node has no bounds");
+        }
+        String symbol = children().get(1).label;
+        return RepetitionSyntax.parse(symbol, 0, symbol.length() - 1);
+    }
+
+    /**
+     * Returns the token range of this node, or {@code null} for a node built by a {@link TreeInterner} or a
+     * {@link TreeSimplifier}.
+     */
     Range getRange() {
         return range;
     }
@@ -32,34 +172,137 @@ public final class TreeNode {
     }
 
     public List<TreeNode> getChildren() {
-        return Collections.unmodifiableList(children);
+        return Collections.unmodifiableList(children());
+    }
+
+    int childCount() {
+        return children().size();
+    }
+
+    TreeNode getChild(int index) {
+        return children().get(index);
+    }
+
+    private List<TreeNode> children() {
+        if (expansion != null) {
+            synchronized (this) {
+                Supplier<TreeNode[]> pending = expansion;
+                if (pending != null) {
+                    Collections.addAll(children, pending.get());
+                    expansion = null;
+                }
+            }
+        }
+        return children;
+    }
+
+    /**
+     * Returns a new node with the given children and no token range.
+     */
+    static TreeNode shared(Type type, String label, TreeNode[] children) {
+        return shared(type, label, children, null);
+    }
+
+    /**
+     * Returns a new node with the given children and no token range, holding {@code charSet} if it is a
+     * {@link Type#CHAR_CLASS} node or the symbol of one.
+     */
+    static TreeNode shared(Type type, String label, TreeNode[] children, CharSet charSet) {
+        TreeNode node = new TreeNode(type, label, null, charSet);
+        Collections.addAll(node.children, children);
+        return node;
+    }
+
+    /**
+     * Returns a new node whose children, if it has any, {@code children} builds when they are first read, for trees
+     * that share their structure with other trees, as those of an {@link IncrementalParser} do.
+     */
+    static TreeNode lazy(Type type, String label, Range range, CharSet charSet, Supplier<TreeNode[]> children) {
+        TreeNode node = new TreeNode(type, label, range, charSet);
+        node.expansion = children;
+        return node;
+    }
+
+    /**
+     * Returns the set held by a {@link Type#CHAR_CLASS} node or the symbol of one, or {@code null}.
+     */
+    CharSet heldCharSet() {
+        return charSet;
+    }
+
+    /**
+     * Returns whether this node has the given type, label and set and the very same children.
+     */
+    boolean hasShape(Type type, String label, TreeNode[] children, CharSet charSet) {
+        if (this.type != type || !this.label.equals(label) || this.children().size() != children.length
+                || !Objects.equals(this.charSet, charSet)) {
+            return false;
+        }
+        for (int i = 0; i < children.length; i++) {
+            if (this.children().get(i) != children[i]) {
+                return false;
+            }
+        }
+        return true;
     }
 
     static TreeNode nodeFor(Token token, int n, Range range) {
-        TreeNode node = new TreeNode(token.toString(), range);
+        if (token instanceof CharClassToken) {
+            return nodeFor(((CharClassToken) token).getChars(), n, range);
+        }
+        TreeNode node = new TreeNode(token instanceof Epsilon ? Type.EPSILON : Type.SYMBOL, token.toString(), range);
         if (token instanceof CharToken) {
-            TreeNode parent = new TreeNode("r" + n, range);
+            TreeNode parent = new TreeNode(Type.LITERAL, "r" + n, range);
             parent.children.add(node);
             return parent;
         }
         return node;
     }
 
+    static TreeNode nodeFor(char value, int n, Range range) {
+        TreeNode parent = new TreeNode(Type.LITERAL, "r" + n, range);
+        parent.children.add(new TreeNode(Type.SYMBOL, String.valueOf(value), range));
+        return parent;
+    }
+
+    static TreeNode nodeFor(CharSet charSet, int n, Range range) {
+        TreeNode parent = new TreeNode(Type.CHAR_CLASS, "r" + n, range, charSet);
+        parent.children.add(new TreeNode(Type.SYMBOL, charSet.toString(), range, charSet));
+        return parent;
+    }
+
     static TreeNode nodeFor(Operator op, Range range) {
-        return new TreeNode(op.toString(), range);
+        return new TreeNode(Type.SYMBOL, op.toString(), range);
+    }
+
+    static TreeNode repeat(TreeNode operand, Operator op, Range range, int n) {
+        TreeNode symbol = nodeFor(op, range);
+        TreeNode parent = new TreeNode(op == Operator.KLEENE_STAR ? Type.KLEENE_STAR : Type.KLEENE_PLUS, "r" + n,
+                Range.join(operand.getRange(), range));
+        parent.children.add(operand);
+        parent.children.add(symbol);
+        return parent;
+    }
+
+    static TreeNode repeat(TreeNode operand, long bounds, Range range, int n) {
+        TreeNode parent = new TreeNode(Type.REPETITION, "r" + n, Range.join(operand.getRange(), range));
+        parent.children.add(operand);
+        parent.children.add(new TreeNode(Type.SYMBOL, RepetitionSyntax.toString(bounds), range));
+        return parent;
     }
 
     static TreeNode join(TreeNode left, TreeNode right, int n) {
-        TreeNode parent = new TreeNode("r" + n, Range.join(left.getRange(), right.getRange()));
+        TreeNode parent = new TreeNode(Type.CONCATENATION, "r" + n, Range.join(left.getRange(), right.getRange()));
         parent.children.add(left);
         parent.children.add(right);
         return parent;
     }
 
     static TreeNode or(TreeNode left, TreeNode right, int n) {
-        TreeNode parent = new TreeNode("r" + n, Range.join(left.getRange(), right.getRange()));
+        TreeNode parent = new TreeNode(Type.ALTERNATION, "r" + n, Range.join(left.getRange(), right.getRange()));
         parent.children.add(left);
-        parent.children.add(new TreeNode(Operator.ALTERNATION.toString(), new Range(left.getRange().getEndExclusive())));
+        Range bar = new Range(left.getRange().getEndExclusive());
+        parent.children.add(new TreeNode(Type.SYMBOL, Operator.ALTERNATION.toString(), bar));
         parent.children.add(right);
         return parent;
     }
@@ -0,0 +1,205 @@
+package org.util.text.regex;
+
+import java.io.IOException;
+import java.util.Arrays;
+
+/**
+ * Writes a {@link ParseTree} to an {@link Appendable} in one of several {@link Format}s.
+ * <p>
+ * The tree is walked with an explicit stack, so printing a tree of any depth needs no recursion, and nothing is
+ * buffered: each line or token is appended as soon as it is known. The only extra memory is the stack and, for
+ * {@link Format#TREE}, one indent buffer shared by all lines, both proportional to the depth of the tree.
+ *
+ * @author ahmad
+ */
+public final class TreePrinter {
+
+    /**
+     * The output formats.
+     */
+    public enum Format {
+
+        /**
+         * The multi-line drawing of {@link ParseTree#toString()}, children from last to first.
+         */
+        TREE,
+
+        /**
+         * One line, each inner node followed by its children in parentheses: {@code r3(r1(a) | r2(b))}.
+         */
+        COMPACT,
+
+        /**
+         * A Graphviz {@code digraph}, children from first to last.
+         */
+        DOT,
+
+        /**
+         * One JSON object per node with its {@code label}, {@code type}, {@code start} and {@code end} token indices
+         * (except for the nodes of an interned tree, which have none) and, for inner nodes, its {@code children}.
+         */
+        JSON
+
+    }
+
+    private static final String LAST_CHILD_INDENT = "    ";
+    private static final String CHILD_INDENT = "|   ";
+
+    private final Appendable out;
+    private final Format format;
+
+    /* stack of the nodes being visited and the index of their next child */
+    private TreeNode[] nodes = new TreeNode[16];
+    private int[] next = new int[16];
+    private int[] ids = new int[16];
+    private int depth;
+
+    private final StringBuilder indent = new StringBuilder();
+    private int nodeCount;
+
+    private TreePrinter(Appendable out, Format format) {
+        this.out = out;
+        this.format = format;
+    }
+
+    public static void print(ParseTree tree, Format format, Appendable out) throws IOException {
+        new TreePrinter(out, format).print(tree.getRoot());
+    }
+
+    /**
+     * Returns {@code tree} printed in {@code format}.
+     */
+    public static String toString(ParseTree tree, Format format) {
+        StringBuilder sb = new StringBuilder();
+        try {
+            print(tree, format, sb);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return sb.toString();
+    }
+
+    private void print(TreeNode root) throws IOException {
+        if (format == Format.DOT) {
+            out.append("digraph ParseTree {\n");
+        }
+        enter(root, true);
+        while (depth > 0) {
+            int top = depth - 1;
+            TreeNode node = nodes[top];
+            int count = node.childCount();
+            if (next[top] == count) {
+                exit(node);
+                --depth;
+                continue;
+            }
+            int i = next[top]++;
+            int child = format == Format.TREE ? count - 1 - i : i;
+            if (i > 0) {
+                separate();
+            }
+            enter(node.getChild(child), i == count - 1);
+        }
+        if (format == Format.DOT) {
+            out.append("}\n");
+        }
+    }
+
+    private void enter(TreeNode node, boolean lastChild) throws IOException {
+        int id = nodeCount++;
+        switch (format) {
+            case TREE:
+                if (depth > 0) {
+                    out.append(indent).append("|\n");
+                }
+                out.append(indent).append("+-: ").append(node.getLabel()).append('\n');
+                indent.append(lastChild ? LAST_CHILD_INDENT : CHILD_INDENT);
+                break;
+            case COMPACT:
+                out.append(node.getLabel());
+                if (node.childCount() > 0) {
+                    out.append('(');
+                }
+                break;
+            case DOT:
+                out.append("  n").append(Integer.toString(id)).append(" [label=");
+                quote(node.getLabel());
+                out.append("];\n");
+                if (depth > 0) {
+                    out.append("  n").append(Integer.toString(ids[depth - 1]))
+                            .append(" -> n").append(Integer.toString(id)).append(";\n");
+                }
+                break;
+            case JSON:
+                out.append("{\"label\":");
+                quote(node.getLabel());
+                out.append(",\"type\":\"").append(node.getType().name()).append('"');
+                if (node.getRange() != null) {
+                    out.append(",\"start\":").append(Integer.toString(node.getRange().getStartInclusive()))
+                            .append(",\"end\":").append(Integer.toString(node.getRange().getEndExclusive()));
+                }
+                if (node.childCount() > 0) {
+                    out.append(",\"children\":[");
+                }
+                break;
+        }
+        push(node, id);
+    }
+
+    private void separate() throws IOException {
+        switch (format) {
+            case COMPACT:
+                out.append(' ');
+                break;
+            case JSON:
+                out.append(',');
+                break;
+        }
+    }
+
+    private void exit(TreeNode node) throws IOException {
+        switch (format) {
+            case TREE:
+                indent.setLength(indent.length() - LAST_CHILD_INDENT.length());
+                break;
+            case COMPACT:
+                if (node.childCount() > 0) {
+                    out.append(')');
+                }
+                break;
+            case JSON:
+                out.append(node.childCount() > 0 ? "]}" : "}");
+                break;
+        }
+    }
+
+    private void push(TreeNode node, int id) {
+        if (depth == nodes.length) {
+            nodes = Arrays.copyOf(nodes, 2 * depth);
+            next = Arrays.copyOf(next, 2 * depth);
+            ids = Arrays.copyOf(ids, 2 * depth);
+        }
+        nodes[depth] = node;
+        next[depth] = 0;
+        ids[depth++] = id;
+    }
+
+    /**
+     * Appends {@code s} as a quoted string, valid in both DOT and JSON.
+     */
+    private void quote(String s) throws IOException {
+        out.append('"');
+        for (int i = 0; i < s.length(); i++) {
+            char ch = s.charAt(i);
+            if (ch == '"' || ch == '\\') {
+                out.append('\\').append(ch);
+            } else if (ch < 0x20) {
+                out.append(String.format("\\u%04x", (int) ch));
+            } else {
+                out.append(ch);
+            }
+        }
+        out.append('"');
+    }
+
+}
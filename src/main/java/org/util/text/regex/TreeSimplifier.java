@@ -0,0 +1,591 @@
+package org.util.text.regex;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+/**
+ * Rewrites a parse tree into a smaller tree matching the same strings.
+ * <p>
+ * The tree is read into n-ary concatenations and alternations, hash-consed so equal subexpressions are one object,
+ * and rewritten bottom-up:
+ * <ul>
+ * <li>concatenations are flattened and drop their epsilons; {@code xx*} and {@code x*x} become {@code x+}, and
+ * {@code x*x*} becomes {@code x*};</li>
+ * <li>alternations are flattened and drop duplicates, and their epsilon if another alternative is nullable
+ * ({@code x+|ε} becomes {@code x*}); their single-character alternatives, literals or classes, are united into one
+ * class, so {@code a|[b-d]|e} becomes {@code [a-e]}; alternatives starting with the same terms are factored into
+ * their longest common prefix followed by an alternation of the rest;</li>
+ * <li>{@code x**}, {@code x+*}, {@code x*+} and {@code x++} collapse to one operator, a nullable {@code x+} becomes
+ * {@code x*}, and a star drops the epsilons and inner stars of the alternation or nullable concatenation under it,
+ * so {@code (ε|a*|b)*} becomes {@code (a|b)*};</li>
+ * <li>a counted repetition keeps one copy of its operand, and becomes a star, a plus or an optional where its bounds
+ * allow: {@code x{0,}} becomes {@code x*}, {@code x{1,}} becomes {@code x+} and {@code x{0,1}} becomes
+ * {@code x|ε}.</li>
+ * </ul>
+ * The result is written back as binary, left-deep operator nodes. Its nodes have no token range, as they need not
+ * stand for any part of the pattern, and its {@code r}-nodes are numbered in post-order. Trees are walked without
+ * recursion.
+ *
+ * @author ahmad
+ */
+public final class TreeSimplifier {
+
+    private static final String EPSILON_LABEL = String.valueOf(Epsilon.SYMBOL);
+    private static final TreeNode[] NO_CHILDREN = new TreeNode[0];
+
+    private final Map<Expr, Expr> canonical = new HashMap<>();
+    private final Expr epsilon = canonical(new Expr(Expr.EPSILON, '\u0000', Expr.NO_ITEMS));
+
+    private TreeSimplifier() {
+    }
+
+    public static Result simplify(ParseTree tree) {
+        TreeSimplifier simplifier = new TreeSimplifier();
+        TreeNode root = toTree(simplifier.read(tree.getRoot()));
+        return new Result(new ParseTree(root), Parser.countNodes(tree.getRoot()), Parser.countNodes(root));
+    }
+
+    /**
+     * Reads the subtree of {@code root} bottom-up, taking a chain of concatenations or of alternations as one node.
+     */
+    private Expr read(TreeNode root) {
+        List<TreeNode> path = new ArrayList<>();
+        List<List<TreeNode>> operands = new ArrayList<>();
+        int[] next = new int[16];
+        List<Expr> done = new ArrayList<>();
+        path.add(root);
+        operands.add(operands(root));
+        while (!path.isEmpty()) {
+            int depth = path.size() - 1;
+            TreeNode node = path.get(depth);
+            List<TreeNode> children = operands.get(depth);
+            if (next[depth] < children.size()) {
+                TreeNode child = children.get(next[depth]++);
+                if (depth + 1 == next.length) {
+                    next = Arrays.copyOf(next, 2 * next.length);
+                }
+                path.add(child);
+                operands.add(operands(child));
+                next[depth + 1] = 0;
+                continue;
+            }
+            List<Expr> items = done.subList(done.size() - children.size(), done.size());
+            Expr expr;
+            switch (node.getType()) {
+                case LITERAL:
+                    expr = canonical(new Expr(Expr.CHAR, node.getValue(), Expr.NO_ITEMS));
+                    break;
+                case CHAR_CLASS:
+                    expr = charClass(node.getCharSet());
+                    break;
+                case EPSILON:
+                    expr = epsilon;
+                    break;
+                case KLEENE_STAR:
+                    expr = star(items.get(0));
+                    break;
+                case KLEENE_PLUS:
+                    expr = plus(items.get(0));
+                    break;
+                case REPETITION:
+                    expr = repeat(items.get(0), node.getMin(), node.getMax());
+                    break;
+                case CONCATENATION:
+                    expr = cat(items);
+                    break;
+                case ALTERNATION:
+                    expr = alt(items);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unexpected " + node.getType() + " node " + node);
+            }
+            items.clear();
+            done.add(expr);
+            path.remove(depth);
+            operands.remove(depth);
+        }
+        return done.get(0);
+    }
+
+    /**
+     * Lists the operands of {@code node}, those of a chain of nodes of its type being the operands of the chain.
+     */
+    private static List<TreeNode> operands(TreeNode node) {
+        List<TreeNode> operands = new ArrayList<>();
+        switch (node.getType()) {
+            case KLEENE_STAR:
+            case KLEENE_PLUS:
+            case REPETITION:
+                operands.add(node.getChild(0));
+                break;
+            case CONCATENATION:
+            case ALTERNATION:
+                List<TreeNode> pending = new ArrayList<>();
+                pending.add(node);
+                while (!pending.isEmpty()) {
+                    TreeNode top = pending.remove(pending.size() - 1);
+                    if (top.getType() == node.getType()) {
+                        pending.add(top.getChild(top.childCount() - 1));
+                        pending.add(top.getChild(0));
+                    } else {
+                        operands.add(top);
+                    }
+                }
+                break;
+        }
+        return operands;
+    }
+
+    private Expr canonical(Expr expr) {
+        Expr existing = canonical.putIfAbsent(expr, expr);
+        return existing != null ? existing : expr;
+    }
+
+    private Expr charClass(CharSet set) {
+        if (set.size() == 1) {
+            return canonical(new Expr(Expr.CHAR, set.rangeStart(0), Expr.NO_ITEMS));
+        }
+        return canonical(new Expr(set));
+    }
+
+    private Expr star(Expr operand) {
+        switch (operand.kind) {
+            case Expr.EPSILON:
+            case Expr.STAR:
+                return operand;
+            case Expr.PLUS:
+                return star(operand.items[0]);
+            case Expr.ALTERNATION:
+                List<Expr> unwrapped = new ArrayList<>();
+                boolean changed = false;
+                for (Expr item : operand.items) {
+                    Expr inner = item.isRepetition() ? item.items[0] : item;
+                    changed |= inner != item;
+                    if (inner != epsilon) {
+                        unwrapped.add(inner);
+                    } else {
+                        changed = true;
+                    }
+                }
+                if (changed) {
+                    return star(alt(unwrapped));
+                }
+                break;
+            case Expr.CONCATENATION:
+                if (operand.nullable) {
+                    return star(alt(Arrays.asList(operand.items)));
+                }
+                break;
+        }
+        return canonical(new Expr(Expr.STAR, '\u0000', new Expr[]{operand}));
+    }
+
+    private Expr plus(Expr operand) {
+        switch (operand.kind) {
+            case Expr.EPSILON:
+            case Expr.STAR:
+            case Expr.PLUS:
+                return operand;
+        }
+        return operand.nullable ? star(operand) : canonical(new Expr(Expr.PLUS, '\u0000', new Expr[]{operand}));
+    }
+
+    /**
+     * Returns {@code operand} repeated {@code min} to {@code max} times, as a star, a plus or an optional where the
+     * bounds allow.
+     */
+    private Expr repeat(Expr operand, int min, int max) {
+        if (max == 0 || operand == epsilon) {
+            return epsilon;
+        }
+        if (operand.kind == Expr.STAR) {
+            return operand;
+        }
+        if (max == TreeNode.UNBOUNDED && min <= 1) {
+            return min == 0 ? star(operand) : plus(operand);
+        }
+        if (max == 1) {
+            return min == 1 ? operand : alt(Arrays.asList(epsilon, operand));
+        }
+        return canonical(new Expr(operand, RepetitionSyntax.bounds(min, max)));
+    }
+
+    private Expr cat(List<Expr> operands) {
+        List<Expr> items = new ArrayList<>(operands.size());
+        for (Expr operand : operands) {
+            if (operand.kind == Expr.CONCATENATION) {
+                for (Expr item : operand.items) {
+                    append(items, item);
+                }
+            } else if (operand != epsilon) {
+                append(items, operand);
+            }
+        }
+        switch (items.size()) {
+            case 0:
+                return epsilon;
+            case 1:
+                return items.get(0);
+            default:
+                return canonical(new Expr(Expr.CONCATENATION, '\u0000', items.toArray(Expr.NO_ITEMS)));
+        }
+    }
+
+    /**
+     * Appends {@code item} to a concatenation, merging it with the last item where one of them repeats the other.
+     */
+    private void append(List<Expr> items, Expr item) {
+        if (!items.isEmpty()) {
+            int last = items.size() - 1;
+            Expr previous = items.get(last);
+            if (previous.kind == Expr.STAR && item == previous) {
+                return;
+            }
+            if (item.kind == Expr.STAR && item.items[0] == previous) {
+                items.set(last, plus(previous));
+                return;
+            }
+            if (previous.kind == Expr.STAR && previous.items[0] == item) {
+                items.set(last, plus(item));
+                return;
+            }
+            /* x*x+ and x+x* */
+            if (previous.kind != item.kind && previous.isRepetition() && item.isRepetition()
+                    && previous.items[0] == item.items[0]) {
+                items.set(last, plus(item.items[0]));
+                return;
+            }
+        }
+        items.add(item);
+    }
+
+    private Expr alt(List<Expr> operands) {
+        Set<Expr> distinct = new LinkedHashSet<>();
+        for (Expr operand : operands) {
+            if (operand.kind == Expr.ALTERNATION) {
+                distinct.addAll(Arrays.asList(operand.items));
+            } else {
+                distinct.add(operand);
+            }
+        }
+        boolean epsilonKept = distinct.remove(epsilon);
+        if (distinct.isEmpty()) {
+            return epsilon;
+        }
+        List<Expr> alternatives = unite(distinct);
+        for (int i = 0; epsilonKept && i < alternatives.size(); i++) {
+            epsilonKept = !alternatives.get(i).nullable;
+        }
+        for (int i = 0; epsilonKept && i < alternatives.size(); i++) {
+            if (alternatives.get(i).kind == Expr.PLUS) {
+                alternatives.set(i, star(alternatives.get(i).items[0]));
+                epsilonKept = false;
+            }
+        }
+        Map<Expr, List<Expr>> groups = new LinkedHashMap<>();
+        if (epsilonKept) {
+            groups.put(epsilon, new ArrayList<>(Arrays.asList(epsilon)));
+        }
+        for (Expr alternative : alternatives) {
+            groups.computeIfAbsent(alternative.head(), head -> new ArrayList<>()).add(alternative);
+        }
+        List<Expr> items = new ArrayList<>(groups.size());
+        for (List<Expr> group : groups.values()) {
+            items.add(group.size() == 1 ? group.get(0) : factor(group));
+        }
+        if (items.size() == 1) {
+            return items.get(0);
+        }
+        return canonical(new Expr(Expr.ALTERNATION, '\u0000', items.toArray(Expr.NO_ITEMS)));
+    }
+
+    /**
+     * Returns {@code alternatives} with those matching a single character replaced by their union, at the place of
+     * the first of them.
+     */
+    private List<Expr> unite(Set<Expr> alternatives) {
+        List<Expr> united = new ArrayList<>(alternatives.size());
+        CharSet chars = null;
+        int at = -1, count = 0;
+        for (Expr alternative : alternatives) {
+            if (alternative.kind == Expr.CHAR || alternative.kind == Expr.CLASS) {
+                CharSet set = alternative.kind == Expr.CHAR ? CharSet.of(alternative.value) : alternative.set;
+                chars = chars == null ? set : chars.union(set);
+                if (count++ == 0) {
+                    at = united.size();
+                    united.add(alternative);
+                }
+            } else {
+                united.add(alternative);
+            }
+        }
+        if (count > 1) {
+            united.set(at, charClass(chars));
+        }
+        return united;
+    }
+
+    /**
+     * Returns the alternation of {@code group}, whose alternatives all start with the same term, as their longest
+     * common prefix followed by the alternation of their remainders.
+     */
+    private Expr factor(List<Expr> group) {
+        Expr[] first = group.get(0).terms();
+        int prefix = first.length;
+        for (Expr alternative : group) {
+            Expr[] terms = alternative.terms();
+            int k = 0;
+            while (k < prefix && k < terms.length && terms[k] == first[k]) {
+                ++k;
+            }
+            prefix = k;
+        }
+        List<Expr> rests = new ArrayList<>(group.size());
+        for (Expr alternative : group) {
+            Expr[] terms = alternative.terms();
+            rests.add(cat(Arrays.asList(terms).subList(prefix, terms.length)));
+        }
+        List<Expr> items = new ArrayList<>(Arrays.asList(first).subList(0, prefix));
+        items.add(alt(rests));
+        return cat(items);
+    }
+
+    /**
+     * Writes {@code root} back as a tree of binary operator nodes.
+     */
+    private static TreeNode toTree(Expr root) {
+        List<Expr> path = new ArrayList<>();
+        int[] next = new int[16];
+        List<TreeNode> done = new ArrayList<>();
+        int number = 0;
+        path.add(root);
+        while (!path.isEmpty()) {
+            int depth = path.size() - 1;
+            Expr expr = path.get(depth);
+            if (next[depth] < expr.items.length) {
+                if (depth + 1 == next.length) {
+                    next = Arrays.copyOf(next, 2 * next.length);
+                }
+                path.add(expr.items[next[depth]++]);
+                next[depth + 1] = 0;
+                continue;
+            }
+            List<TreeNode> items = done.subList(done.size() - expr.items.length, done.size());
+            TreeNode node;
+            switch (expr.kind) {
+                case Expr.CHAR:
+                    node = TreeNode.shared(TreeNode.Type.LITERAL, "r" + ++number, new TreeNode[]{
+                            symbol(String.valueOf(expr.value))
+                    });
+                    break;
+                case Expr.CLASS:
+                    node = TreeNode.shared(TreeNode.Type.CHAR_CLASS, "r" + ++number, new TreeNode[]{
+                            TreeNode.shared(TreeNode.Type.SYMBOL, expr.set.toString(), NO_CHILDREN, expr.set)
+                    }, expr.set);
+                    break;
+                case Expr.EPSILON:
+                    node = TreeNode.shared(TreeNode.Type.EPSILON, EPSILON_LABEL, NO_CHILDREN);
+                    break;
+                case Expr.STAR:
+                case Expr.PLUS:
+                    node = TreeNode.shared(expr.kind == Expr.STAR ? TreeNode.Type.KLEENE_STAR
+                            : TreeNode.Type.KLEENE_PLUS, "r" + ++number, new TreeNode[]{
+                            items.get(0), symbol((expr.kind == Expr.STAR ? Operator.KLEENE_STAR
+                                    : Operator.KLEENE_PLUS).toString())
+                    });
+                    break;
+                case Expr.REPEAT:
+                    node = TreeNode.shared(TreeNode.Type.REPETITION, "r" + ++number, new TreeNode[]{
+                            items.get(0), symbol(RepetitionSyntax.toString(expr.bounds))
+                    });
+                    break;
+                case Expr.CONCATENATION:
+                    node = items.get(0);
+                    for (int i = 1; i < items.size(); i++) {
+                        node = TreeNode.shared(TreeNode.Type.CONCATENATION, "r" + ++number, new TreeNode[]{
+                                node, items.get(i)
+                        });
+                    }
+                    break;
+                default:
+                    node = items.get(0);
+                    for (int i = 1; i < items.size(); i++) {
+                        node = TreeNode.shared(TreeNode.Type.ALTERNATION, "r" + ++number, new TreeNode[]{
+                                node, symbol(Operator.ALTERNATION.toString()), items.get(i)
+                        });
+                    }
+            }
+            items.clear();
+            done.add(node);
+            path.remove(depth);
+        }
+        return done.get(0);
+    }
+
+    private static TreeNode symbol(String label) {
+        return TreeNode.shared(TreeNode.Type.SYMBOL, label, NO_CHILDREN);
+    }
+
+    /**
+     * The simplified tree and the number of nodes eliminated, {@link TreeNode.Type#SYMBOL} nodes not counted.
+     */
+    public static final class Result {
+
+        private final ParseTree tree;
+        private final int originalNodeCount;
+        private final int nodeCount;
+
+        private Result(ParseTree tree, int originalNodeCount, int nodeCount) {
+            this.tree = tree;
+            this.originalNodeCount = originalNodeCount;
+            this.nodeCount = nodeCount;
+        }
+
+        public ParseTree getTree() {
+            return tree;
+        }
+
+        public int getOriginalNodeCount() {
+            return originalNodeCount;
+        }
+
+        public int getNodeCount() {
+            return nodeCount;
+        }
+
+        public int getEliminatedNodeCount() {
+            return originalNodeCount - nodeCount;
+        }
+
+    }
+
+    /**
+     * A hash-consed expression; equal expressions are the same object, so children compare by identity.
+     */
+    private static final class Expr {
+
+        static final int CHAR = 0;
+        static final int EPSILON = 1;
+        static final int STAR = 2;
+        static final int PLUS = 3;
+        static final int CONCATENATION = 4;
+        static final int ALTERNATION = 5;
+        static final int CLASS = 6;
+        static final int REPEAT = 7;
+
+        static final Expr[] NO_ITEMS = new Expr[0];
+
+        final int kind;
+        final char value;
+        /* the characters of a class, or null */
+        final CharSet set;
+        /* the packed bounds of a counted repetition, or 0 */
+        final long bounds;
+        final Expr[] items;
+        final boolean nullable;
+        final int hash;
+
+        Expr(int kind, char value, Expr[] items) {
+            this(kind, value, null, 0, items);
+        }
+
+        Expr(CharSet set) {
+            this(CLASS, '\u0000', set, 0, NO_ITEMS);
+        }
+
+        Expr(Expr operand, long bounds) {
+            this(REPEAT, '\u0000', null, bounds, new Expr[]{operand});
+        }
+
+        private Expr(int kind, char value, CharSet set, long bounds, Expr[] items) {
+            this.kind = kind;
+            this.value = value;
+            this.set = set;
+            this.bounds = bounds;
+            this.items = items;
+            boolean nullable;
+            switch (kind) {
+                case CHAR:
+                case CLASS:
+                    nullable = false;
+                    break;
+                case PLUS:
+                    nullable = items[0].nullable;
+                    break;
+                case REPEAT:
+                    nullable = RepetitionSyntax.min(bounds) == 0 || items[0].nullable;
+                    break;
+                case CONCATENATION:
+                    nullable = true;
+                    for (Expr item : items) {
+                        nullable &= item.nullable;
+                    }
+                    break;
+                case ALTERNATION:
+                    nullable = false;
+                    for (Expr item : items) {
+                        nullable |= item.nullable;
+                    }
+                    break;
+                default:
+                    nullable = true;
+            }
+            this.nullable = nullable;
+            int h = 31 * (31 * (31 * kind + value) + (set == null ? 0 : set.hashCode())) + Long.hashCode(bounds);
+            for (Expr item : items) {
+                h = 31 * h + System.identityHashCode(item);
+            }
+            hash = h;
+        }
+
+        /**
+         * Returns the terms of a concatenation, or this expression as the only term.
+         */
+        Expr[] terms() {
+            return kind == CONCATENATION ? items : new Expr[]{this};
+        }
+
+        boolean isRepetition() {
+            return kind == STAR || kind == PLUS;
+        }
+
+        Expr head() {
+            return kind == CONCATENATION ? items[0] : this;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Expr)) {
+                return false;
+            }
+            Expr other = (Expr) o;
+            if (kind != other.kind || value != other.value || !Objects.equals(set, other.set) || bounds != other.bounds
+                    || items.length != other.items.length) {
+                return false;
+            }
+            for (int i = 0; i < items.length; i++) {
+                if (items[i] != other.items[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+    }
+
+}
@@ -0,0 +1,352 @@
+package org.util.text.regex.grep;
+
+import org.util.text.regex.ParseTree;
+import org.util.text.regex.Parser;
+import org.util.text.regex.TreeNode;
+import org.util.text.regex.nfa.LazyDfa;
+import org.util.text.regex.nfa.Nfa;
+import org.util.text.regex.nfa.Prefilter;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharacterCodingException;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.Consumer;
+
+/**
+ * Finds the lines of a file that contain a match of a pattern.
+ * <p>
+ * The file is memory-mapped in chunks of about {@value #CHUNK_SIZE} bytes, each ending at a line break, and the
+ * chunks are scanned in parallel on a {@link ForkJoinPool}, each with its own {@link LazyDfa}, so no cache outlives
+ * the scan. Matching lines are delivered in file order; at most a few chunks per worker are in flight, so memory does
+ * not grow with the size of the file.
+ * <p>
+ * Lines end at {@code '\n'}, with a trailing {@code '\r'} removed, so the charset must encode {@code '\n'} as that
+ * single byte. When it is also ASCII-compatible and the pattern matches only ASCII characters, lines are matched
+ * byte by byte without decoding them.
+ * <p>
+ * Lines that lack the literals every match requires are skipped without running the automaton; when lines are matched
+ * byte by byte, the {@link Prefilter} searches the whole chunk, so lines between two occurrences are only split.
+ *
+ * @author ahmad
+ */
+public final class Grep {
+
+    static final int CHUNK_SIZE = 32 << 20;
+
+    private static final int CHUNKS_PER_WORKER = 2;
+
+    private final Nfa nfa;
+    private final Prefilter prefilter;
+    private final Charset charset;
+    private final boolean decode;
+    private final ForkJoinPool pool;
+
+    private Grep(String regex, Charset charset, ForkJoinPool pool) {
+        if (!Arrays.equals("\n".getBytes(charset), new byte[]{'\n'})) {
+            throw new IllegalArgumentException("Unsupported charset " + charset);
+        }
+        ParseTree tree = Parser.parse(regex);
+        this.nfa = Nfa.compile(tree);
+        this.prefilter = Prefilter.compile(tree);
+        this.charset = charset;
+        this.decode = !isAscii(tree) || !(charset.equals(StandardCharsets.UTF_8)
+                || charset.equals(StandardCharsets.ISO_8859_1) || charset.equals(StandardCharsets.US_ASCII));
+        this.pool = pool;
+    }
+
+    /**
+     * Compiles {@code regex} for UTF-8 files, scanned on the common pool.
+     *
+     * @throws java.util.regex.PatternSyntaxException if the pattern is invalid
+     */
+    public static Grep compile(String regex) {
+        return compile(regex, StandardCharsets.UTF_8, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Compiles {@code regex} for files in {@code charset}, scanned on {@code pool}.
+     *
+     * @throws java.util.regex.PatternSyntaxException if the pattern is invalid
+     * @throws IllegalArgumentException               if {@code charset} does not encode {@code '\n'} as one byte
+     */
+    public static Grep compile(String regex, Charset charset, ForkJoinPool pool) {
+        return new Grep(regex, charset, pool);
+    }
+
+    /**
+     * Tells whether every character the pattern matches is ASCII, so that no match can start or end within the bytes
+     * of a multi-byte character.
+     */
+    private static boolean isAscii(ParseTree tree) {
+        Deque<TreeNode> stack = new ArrayDeque<>();
+        stack.push(tree.getRoot());
+        while (!stack.isEmpty()) {
+            TreeNode node = stack.pop();
+            if (node.getType() == TreeNode.Type.LITERAL && node.getValue() >= 0x80
+                    || node.getType() == TreeNode.Type.CHAR_CLASS
+                    && node.getCharSet().rangeEnd(node.getCharSet().rangeCount() - 1) >= 0x80) {
+                return false;
+            }
+            for (TreeNode child : node.getChildren()) {
+                stack.push(child);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the matching lines of {@code file}, in file order.
+     */
+    public List<Match> scan(Path file) throws IOException {
+        List<Match> matches = new ArrayList<>();
+        scan(file, matches::add);
+        return matches;
+    }
+
+    /**
+     * Passes the matching lines of {@code file} to {@code consumer}, in file order, on the calling thread.
+     */
+    public void scan(Path file, Consumer<? super Match> consumer) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            int window = CHUNKS_PER_WORKER * pool.getParallelism();
+            Deque<ForkJoinTask<Chunk>> pending = new ArrayDeque<>();
+            long start = 0, line = 1;
+            try {
+                while (start < size || !pending.isEmpty()) {
+                    while (start < size && pending.size() < window) {
+                        long end = chunkEnd(channel, start, size);
+                        pending.add(pool.submit(new ScanTask(channel, start, end)));
+                        start = end;
+                    }
+                    Chunk chunk = join(pending.poll());
+                    for (Match match : chunk.matches) {
+                        consumer.accept(new Match(line + match.line, match.offset, match.text));
+                    }
+                    line += chunk.lines;
+                }
+            } finally {
+                /* left over if a chunk or the consumer failed */
+                for (ForkJoinTask<Chunk> task : pending) {
+                    task.cancel(false);
+                }
+            }
+        }
+    }
+
+    private static Chunk join(ForkJoinTask<Chunk> task) throws IOException {
+        try {
+            return task.join();
+        } catch (RuntimeException e) {
+            for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+                if (cause instanceof IOException) {
+                    throw (IOException) cause;
+                }
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Returns the end of the chunk starting at {@code start}: just past the first line break at or after
+     * {@code start + CHUNK_SIZE - 1}, or the end of the file.
+     */
+    private static long chunkEnd(FileChannel channel, long start, long size) throws IOException {
+        long position = start + CHUNK_SIZE - 1;
+        ByteBuffer buffer = ByteBuffer.allocate(8192);
+        while (position < size) {
+            buffer.clear();
+            int read = channel.read(buffer, position);
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return checkLength(start, position + i + 1);
+                }
+            }
+            position += read;
+        }
+        return checkLength(start, size);
+    }
+
+    private static long checkLength(long start, long end) throws IOException {
+        if (end - start > Integer.MAX_VALUE) {
+            throw new IOException("Line at " + start + " is too long to map");
+        }
+        return end;
+    }
+
+    private final class ScanTask implements Callable<Chunk> {
+
+        private final FileChannel channel;
+        private final long start;
+        private final long end;
+
+        private ScanTask(FileChannel channel, long start, long end) {
+            this.channel = channel;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public Chunk call() throws IOException {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+            LazyDfa dfa = nfa.lazyDfa();
+            Latin1Sequence bytes = new Latin1Sequence();
+            CharsetDecoder decoder = decode ? charset.newDecoder()
+                    .onMalformedInput(CodingErrorAction.REPLACE)
+                    .onUnmappableCharacter(CodingErrorAction.REPLACE) : null;
+            Latin1Sequence chunk = decode ? null : new Latin1Sequence().set(buffer, 0, buffer.limit());
+            List<Match> matches = new ArrayList<>();
+            int lines = 0;
+            /* start of the next required literal in the chunk */
+            int next = -1;
+            for (int from = 0, limit = buffer.limit(); from < limit; ++lines) {
+                if (!decode && next < from) {
+                    next = prefilter.indexOf(chunk, from);
+                    next = next < 0 ? limit : next;
+                }
+                int to = from;
+                while (to < limit && buffer.get(to) != '\n') {
+                    ++to;
+                }
+                if (!decode && next >= to) {
+                    from = to + 1;
+                    continue;
+                }
+                int length = to > from && buffer.get(to - 1) == '\r' ? to - from - 1 : to - from;
+                CharSequence text = decode ? decode(decoder, buffer, from, length) : bytes.set(buffer, from, length);
+                if ((!decode || prefilter.mayFind(text)) && dfa.find(text)) {
+                    String line = decode ? text.toString() : string(buffer, from, length);
+                    matches.add(new Match(lines, start + from, line));
+                }
+                from = to + 1;
+            }
+            return new Chunk(lines, matches);
+        }
+
+        private CharSequence decode(CharsetDecoder decoder, ByteBuffer buffer, int from, int length) {
+            ByteBuffer line = buffer.duplicate();
+            line.limit(from + length).position(from);
+            try {
+                return decoder.decode(line);
+            } catch (CharacterCodingException e) {
+                throw new IllegalStateException(e);
+            }
+        }
+
+        private String string(ByteBuffer buffer, int from, int length) {
+            byte[] line = new byte[length];
+            ByteBuffer view = buffer.duplicate();
+            view.position(from);
+            view.get(line);
+            return new String(line, charset);
+        }
+
+    }
+
+    private static final class Chunk {
+
+        private final int lines;
+        private final List<Match> matches;
+
+        private Chunk(int lines, List<Match> matches) {
+            this.lines = lines;
+            this.matches = matches;
+        }
+
+    }
+
+    /**
+     * A line containing a match.
+     */
+    public static final class Match {
+
+        private final long line;
+        private final long offset;
+        private final String text;
+
+        private Match(long line, long offset, String text) {
+            this.line = line;
+            this.offset = offset;
+            this.text = text;
+        }
+
+        /**
+         * Returns the number of the line, counting from {@code 1}.
+         */
+        public long getLine() {
+            return line;
+        }
+
+        /**
+         * Returns the byte offset of the start of the line in the file.
+         */
+        public long getOffset() {
+            return offset;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        @Override
+        public String toString() {
+            return line + ":" + text;
+        }
+
+    }
+
+    /**
+     * Prints the matching lines of each file as {@code line:text}, prefixed with the file name when there are several
+     * files.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 2) {
+            System.err.println("usage: Grep <pattern> <file>...");
+            System.exit(2);
+        }
+        Grep grep = compile(args[0]);
+        Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8), 1 << 16);
+        long[] found = {0};
+        for (int i = 1; i < args.length; i++) {
+            String prefix = args.length > 2 ? args[i] + ":" : "";
+            grep.scan(Paths.get(args[i]), match -> {
+                ++found[0];
+                print(out, prefix, match);
+            });
+        }
+        out.flush();
+        System.exit(found[0] > 0 ? 0 : 1);
+    }
+
+    private static void print(Writer out, String prefix, Match match) {
+        try {
+            out.write(prefix);
+            out.write(match.toString());
+            out.write('\n');
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+}
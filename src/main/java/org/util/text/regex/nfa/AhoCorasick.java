@@ -0,0 +1,114 @@
+package org.util.text.regex.nfa;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Aho-Corasick search for a set of literals, with the failure links folded into a full transition table so each
+ * input character costs one lookup. Characters of the literals get their own class, numbered from {@code 1}, and
+ * every other character falls into class {@code 0}, which leads back to the root.
+ *
+ * @author ahmad
+ */
+final class AhoCorasick implements LiteralSearcher {
+
+    private static final int LATIN1 = 256;
+
+    private final int[] latin1 = new int[LATIN1];
+    private final char[] others;
+    private final int othersOffset;
+    private final int classCount;
+    private final int[] delta;
+    /* length of a literal ending in each state, or 0 */
+    private final int[] found;
+
+    AhoCorasick(Collection<String> literals) {
+        int total = 0;
+        for (String literal : literals) {
+            total += literal.length();
+        }
+        char[] chars = new char[total];
+        int n = 0;
+        for (String literal : literals) {
+            literal.getChars(0, literal.length(), chars, n);
+            n += literal.length();
+        }
+        Arrays.sort(chars);
+        int distinct = 0;
+        for (int i = 0; i < n; i++) {
+            if (distinct == 0 || chars[i] != chars[distinct - 1]) {
+                chars[distinct++] = chars[i];
+            }
+        }
+        int i = 0;
+        for (; i < distinct && chars[i] < LATIN1; i++) {
+            latin1[chars[i]] = i + 1;
+        }
+        others = Arrays.copyOfRange(chars, i, distinct);
+        othersOffset = i + 1;
+        classCount = distinct + 1;
+
+        /* the trie, then its states in breadth-first order to resolve failure links */
+        int[] trie = new int[(total + 1) * classCount];
+        int[] found = new int[total + 1];
+        int states = 1;
+        for (String literal : literals) {
+            int state = 0;
+            for (int k = 0; k < literal.length(); k++) {
+                int index = state * classCount + classOf(literal.charAt(k));
+                if (trie[index] == 0) {
+                    trie[index] = states++;
+                }
+                state = trie[index];
+            }
+            found[state] = literal.length();
+        }
+        int[] fail = new int[states];
+        int[] queue = new int[states];
+        int head = 0, tail = 0;
+        for (int cls = 0; cls < classCount; cls++) {
+            if (trie[cls] != 0) {
+                queue[tail++] = trie[cls];
+            }
+        }
+        while (head < tail) {
+            int state = queue[head++];
+            if (found[state] == 0) {
+                found[state] = found[fail[state]];
+            }
+            for (int cls = 0; cls < classCount; cls++) {
+                int index = state * classCount + cls;
+                int child = trie[index];
+                if (child != 0) {
+                    fail[child] = trie[fail[state] * classCount + cls];
+                    queue[tail++] = child;
+                } else {
+                    trie[index] = trie[fail[state] * classCount + cls];
+                }
+            }
+        }
+        delta = Arrays.copyOf(trie, states * classCount);
+        this.found = Arrays.copyOf(found, states);
+    }
+
+    private int classOf(char c) {
+        if (c < LATIN1) {
+            return latin1[c];
+        }
+        int index = Arrays.binarySearch(others, c);
+        return index >= 0 ? othersOffset + index : 0;
+    }
+
+    @Override
+    public int indexOf(CharSequence text, int from) {
+        int state = 0;
+        for (int i = Math.max(from, 0), n = text.length(); i < n; i++) {
+            state = delta[state * classCount + classOf(text.charAt(i))];
+            if (found[state] != 0) {
+                return i + 1 - found[state];
+            }
+        }
+        return -1;
+    }
+
+}
@@ -0,0 +1,312 @@
+package org.util.text.regex.nfa;
+
+import org.util.text.regex.CharSet;
+import org.util.text.regex.ParseTree;
+import org.util.text.regex.TreeNode;
+
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Simulates the Glushkov automaton of a pattern with at most {@value #MAX_POSITIONS} character positions, keeping the
+ * set of active positions in one {@code long}.
+ * <p>
+ * The automaton has one state per {@link TreeNode.Type#LITERAL} or {@link TreeNode.Type#CHAR_CLASS} leaf and no
+ * epsilon transitions; its first, last and follow sets come straight from the operator nodes. A
+ * {@link TreeNode.Type#REPETITION} gets a copy of the positions of its operand per repeat, each shifted past the
+ * previous one, so its expansion counts against the limit. Reading a character
+ * maps the active set through the follow sets, eight bits at a time through precomputed unions, and masks it with the
+ * positions accepting that character: looked up in a table for Latin-1, and binary searched among the intervals the
+ * positions' characters cut the rest of the alphabet into. Each input character costs a bounded number of lookups
+ * and no allocation. Instances are immutable and thread-safe.
+ *
+ * @author ahmad
+ */
+public final class BitParallelMatcher implements PatternMatcher {
+
+    public static final int MAX_POSITIONS = 64;
+
+    private static final int LATIN1 = 256;
+
+    private final boolean nullable;
+    private final long first;
+    private final long last;
+    private final int chunks;
+    private final long[] follow;
+    private final long[] latin1Masks;
+    /* the intervals past Latin-1: their first characters, ascending, and the positions accepting them */
+    private final char[] otherStarts;
+    private final long[] otherMasks;
+
+    private BitParallelMatcher(boolean nullable, long first, long last, int positions, long[] followSets,
+                               CharSet[] sets) {
+        this.nullable = nullable;
+        this.first = first;
+        this.last = last;
+        chunks = (positions + 7) / 8;
+        follow = new long[chunks * 256];
+        for (int k = 0; k < chunks; k++) {
+            for (int bits = 1; bits < 256; bits++) {
+                int low = Integer.numberOfTrailingZeros(bits);
+                int p = 8 * k + low;
+                follow[k * 256 + bits] = follow[k * 256 + (bits & bits - 1)] | (p < positions ? followSets[p] : 0);
+            }
+        }
+        latin1Masks = new long[LATIN1];
+        int[] cuts = new int[1];
+        int cutCount = 0;
+        cuts[cutCount++] = LATIN1;
+        for (int p = 0; p < positions; p++) {
+            CharSet set = sets[p];
+            for (int r = 0; r < set.rangeCount(); r++) {
+                for (int c = set.rangeStart(r), end = Math.min(set.rangeEnd(r), LATIN1 - 1); c <= end; c++) {
+                    latin1Masks[c] |= 1L << p;
+                }
+                if (set.rangeEnd(r) >= LATIN1) {
+                    if (cutCount + 2 > cuts.length) {
+                        cuts = Arrays.copyOf(cuts, 2 * cuts.length + 2);
+                    }
+                    cuts[cutCount++] = Math.max(set.rangeStart(r), LATIN1);
+                    cuts[cutCount++] = set.rangeEnd(r) + 1;
+                }
+            }
+        }
+        Arrays.sort(cuts, 0, cutCount);
+        int intervals = 0;
+        for (int i = 0; i < cutCount; i++) {
+            if (cuts[i] <= Character.MAX_VALUE && (intervals == 0 || cuts[i] != cuts[intervals - 1])) {
+                cuts[intervals++] = cuts[i];
+            }
+        }
+        otherStarts = new char[intervals];
+        for (int i = 0; i < intervals; i++) {
+            otherStarts[i] = (char) cuts[i];
+        }
+        otherMasks = new long[intervals];
+        for (int p = 0; p < positions; p++) {
+            CharSet set = sets[p];
+            for (int r = 0; r < set.rangeCount(); r++) {
+                if (set.rangeEnd(r) >= LATIN1) {
+                    char lo = (char) Math.max(set.rangeStart(r), LATIN1);
+                    for (int i = Arrays.binarySearch(otherStarts, lo);
+                         i < intervals && otherStarts[i] <= set.rangeEnd(r); i++) {
+                        otherMasks[i] |= 1L << p;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * Compiles {@code tree} into a bit-parallel matcher if it has at most {@value #MAX_POSITIONS} character
+     * positions, or into an {@link Nfa} otherwise.
+     */
+    public static PatternMatcher compile(ParseTree tree) {
+        List<TreeNode> nodes = Trees.postOrder(tree.getRoot());
+        int positions = positionCount(nodes);
+        return positions <= MAX_POSITIONS ? glushkov(nodes, positions) : Nfa.compile(tree);
+    }
+
+    /**
+     * Returns the number of positions the expansion of the pattern takes at its largest, counting those of operands
+     * repeated zero times until they are dropped, or {@code MAX_POSITIONS + 1} if it takes more.
+     */
+    private static int positionCount(List<TreeNode> nodes) {
+        int[] counts = new int[nodes.size()];
+        int top = 0, total = 0, peak = 0;
+        for (TreeNode node : nodes) {
+            switch (node.getType()) {
+                case LITERAL:
+                case CHAR_CLASS:
+                    counts[top++] = 1;
+                    ++total;
+                    break;
+                case EPSILON:
+                    counts[top++] = 0;
+                    break;
+                case REPETITION:
+                    int count = Math.min(counts[top - 1] * copies(node), MAX_POSITIONS + 1);
+                    total = Math.min(total - counts[top - 1] + count, MAX_POSITIONS + 1);
+                    counts[top - 1] = count;
+                    break;
+                case CONCATENATION:
+                case ALTERNATION:
+                    --top;
+                    counts[top - 1] = Math.min(counts[top - 1] + counts[top], MAX_POSITIONS + 1);
+                    break;
+            }
+            peak = Math.max(peak, total);
+        }
+        return peak;
+    }
+
+    /**
+     * Returns the number of copies of its operand a repetition expands into: one per repeat up to the maximum, or
+     * up to the minimum with the last one looping if there is no maximum.
+     */
+    private static int copies(TreeNode repetition) {
+        int min = repetition.getMin(), max = repetition.getMax();
+        return max == TreeNode.UNBOUNDED ? Math.max(min, 1) : max;
+    }
+
+    private static BitParallelMatcher glushkov(List<TreeNode> nodes, int positions) {
+        long[] followSets = new long[positions];
+        CharSet[] sets = new CharSet[positions];
+        boolean[] nullable = new boolean[nodes.size()];
+        long[] first = new long[nodes.size()];
+        long[] last = new long[nodes.size()];
+        /* the first position of each operand on the stack */
+        int[] from = new int[nodes.size()];
+        int top = 0, p = 0;
+        for (TreeNode node : nodes) {
+            int a, b;
+            switch (node.getType()) {
+                case LITERAL:
+                case CHAR_CLASS:
+                    sets[p] = node.getCharSet();
+                    from[top] = p;
+                    first[top] = last[top] = 1L << p++;
+                    nullable[top++] = false;
+                    break;
+                case EPSILON:
+                    from[top] = p;
+                    first[top] = last[top] = 0;
+                    nullable[top++] = true;
+                    break;
+                case KLEENE_STAR:
+                case KLEENE_PLUS:
+                    a = top - 1;
+                    link(followSets, last[a], first[a]);
+                    nullable[a] |= node.getType() == TreeNode.Type.KLEENE_STAR;
+                    break;
+                case REPETITION:
+                    p = repeat(node, top - 1, from, first, last, nullable, followSets, sets, p);
+                    break;
+                case CONCATENATION:
+                    b = --top;
+                    a = top - 1;
+                    link(followSets, last[a], first[b]);
+                    first[a] = nullable[a] ? first[a] | first[b] : first[a];
+                    last[a] = nullable[b] ? last[a] | last[b] : last[b];
+                    nullable[a] &= nullable[b];
+                    break;
+                case ALTERNATION:
+                    b = --top;
+                    a = top - 1;
+                    first[a] |= first[b];
+                    last[a] |= last[b];
+                    nullable[a] |= nullable[b];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unexpected " + node.getType() + " node " + node);
+            }
+        }
+        return new BitParallelMatcher(nullable[0], first[0], last[0], p, followSets, sets);
+    }
+
+    /**
+     * Expands the repetition of operand {@code a}, whose positions are the last ones before {@code p}, into copies of
+     * them joined as {@code x x (x (x)?)?} for {@code x{2,4}} or {@code x x+} for {@code x{2,}}, and returns the
+     * next free position.
+     */
+    private static int repeat(TreeNode node, int a, int[] from, long[] first, long[] last, boolean[] nullable,
+                              long[] followSets, CharSet[] sets, int p) {
+        int min = node.getMin(), max = node.getMax(), copies = copies(node), width = p - from[a];
+        if (copies == 0) {
+            Arrays.fill(followSets, from[a], p, 0L);
+            first[a] = last[a] = 0;
+            nullable[a] = true;
+            return from[a];
+        }
+        for (int i = 1; i < copies; i++) {
+            for (int q = from[a]; q < p; q++) {
+                followSets[q + i * width] = followSets[q] << i * width;
+                sets[q + i * width] = sets[q];
+            }
+        }
+        /* fold the copies from the last one, which loops if there is no maximum */
+        int shift = (copies - 1) * width;
+        long f = first[a] << shift, l = last[a] << shift;
+        boolean n = nullable[a];
+        if (max == TreeNode.UNBOUNDED) {
+            link(followSets, l, f);
+            n |= min == 0;
+        } else if (max > min) {
+            n = true;
+        }
+        for (int i = copies - 2; i >= 0; i--) {
+            shift = i * width;
+            long copyFirst = first[a] << shift, copyLast = last[a] << shift;
+            link(followSets, copyLast, f);
+            f = nullable[a] ? copyFirst | f : copyFirst;
+            l = n ? copyLast | l : l;
+            n = nullable[a] && n || max != TreeNode.UNBOUNDED && i >= min;
+        }
+        first[a] = f;
+        last[a] = l;
+        nullable[a] = n;
+        return from[a] + copies * width;
+    }
+
+    /**
+     * Adds the positions of {@code to} to the follow sets of the positions of {@code from}.
+     */
+    private static void link(long[] followSets, long from, long to) {
+        for (long l = from; l != 0; l &= l - 1) {
+            followSets[Long.numberOfTrailingZeros(l)] |= to;
+        }
+    }
+
+    @Override
+    public boolean matches(CharSequence input) {
+        int n = input.length();
+        if (n == 0) {
+            return nullable;
+        }
+        long active = first & mask(input.charAt(0));
+        for (int i = 1; i < n && active != 0; i++) {
+            active = follow(active) & mask(input.charAt(i));
+        }
+        return (active & last) != 0;
+    }
+
+    @Override
+    public boolean find(CharSequence input) {
+        if (nullable) {
+            return true;
+        }
+        long active = 0;
+        for (int i = 0, n = input.length(); i < n; i++) {
+            active = (follow(active) | first) & mask(input.charAt(i));
+            if ((active & last) != 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private long follow(long active) {
+        long next = 0;
+        for (int k = 0; k < chunks; k++) {
+            next |= follow[k * 256 + (int) (active >>> 8 * k & 0xFF)];
+        }
+        return next;
+    }
+
+    private long mask(char c) {
+        if (c < LATIN1) {
+            return latin1Masks[c];
+        }
+        int low = 0, high = otherStarts.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (otherStarts[mid] <= c) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return otherMasks[low];
+    }
+
+}
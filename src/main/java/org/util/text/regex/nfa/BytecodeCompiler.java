@@ -0,0 +1,336 @@
+package org.util.text.regex.nfa;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * Writes the class file of a {@link BytecodeMatcher}: a final class implementing {@link PatternMatcher} whose
+ * {@code matches} and {@code find} methods are the states of a {@link Dfa}, one block of code per state.
+ * <p>
+ * A block returns at the end of the input, otherwise reads the next character and jumps to the block of the next
+ * state through a {@code lookupswitch} whose default is the target of most characters, listing only the characters
+ * leading elsewhere, so a state leaving a character class goes to its default; the dead state is a shared
+ * {@code return false}. Only the states reachable from each method's start state are emitted, in breadth-first order.
+ * The class file targets version 49, so the verifier infers the frames and no stack map is written.
+ *
+ * @author ahmad
+ */
+final class BytecodeCompiler {
+
+    static final int MAX_CODE_LENGTH = 65535;
+
+    private static final int CLASS_VERSION = 49;
+
+    /* constant pool, fixed but for the class name */
+    private static final int THIS_CLASS = 2;
+    private static final int OBJECT_CLASS = 4;
+    private static final int MATCHER_INTERFACE = 6;
+    private static final int INIT_NAME = 7;
+    private static final int VOID_DESCRIPTOR = 8;
+    private static final int OBJECT_INIT = 10;
+    private static final int LENGTH = 16;
+    private static final int CHAR_AT = 20;
+    private static final int MATCHES_NAME = 21;
+    private static final int FIND_NAME = 22;
+    private static final int MATCH_DESCRIPTOR = 23;
+    private static final int CODE_ATTRIBUTE = 24;
+    private static final int POOL_SIZE = 25;
+
+    private static final int ACC_PUBLIC = 0x0001;
+    private static final int ACC_FINAL = 0x0010;
+    private static final int ACC_SUPER = 0x0020;
+
+    private static final int ICONST_0 = 0x03;
+    private static final int ICONST_1 = 0x04;
+    private static final int ILOAD_2 = 0x1C;
+    private static final int ILOAD_3 = 0x1D;
+    private static final int ALOAD_0 = 0x2A;
+    private static final int ALOAD_1 = 0x2B;
+    private static final int ISTORE_2 = 0x3D;
+    private static final int ISTORE_3 = 0x3E;
+    private static final int IINC = 0x84;
+    private static final int IF_ICMPLT = 0xA1;
+    private static final int LOOKUPSWITCH = 0xAB;
+    private static final int IRETURN = 0xAC;
+    private static final int RETURN = 0xB1;
+    private static final int INVOKESPECIAL = 0xB7;
+    private static final int INVOKEINTERFACE = 0xB9;
+
+    /* locals of the match methods: this, input, i, n */
+    private static final int MAX_LOCALS = 4;
+    private static final int MAX_STACK = 2;
+
+    private static final int FAIL = -1;
+
+    private final Dfa dfa;
+    /* runs of consecutive characters of one class: their first characters, ascending, and their classes */
+    private final int[] runStarts;
+    private final int[] runClasses;
+
+    private BytecodeCompiler(Dfa dfa) {
+        this.dfa = dfa;
+        int[] starts = new int[16];
+        int[] classes = new int[16];
+        int count = 0;
+        for (int c = Character.MIN_VALUE; c <= Character.MAX_VALUE; c++) {
+            int cls = dfa.classOf((char) c);
+            if (count == 0 || classes[count - 1] != cls) {
+                if (count == starts.length) {
+                    starts = Arrays.copyOf(starts, 2 * count);
+                    classes = Arrays.copyOf(classes, 2 * count);
+                }
+                starts[count] = c;
+                classes[count++] = cls;
+            }
+        }
+        runStarts = Arrays.copyOf(starts, count);
+        runClasses = Arrays.copyOf(classes, count);
+    }
+
+    private int runEnd(int run) {
+        return run + 1 < runStarts.length ? runStarts[run + 1] : Character.MAX_VALUE + 1;
+    }
+
+    /**
+     * Returns the class file of {@code dfa} named {@code internalName}, or {@code null} if a method would exceed
+     * {@value #MAX_CODE_LENGTH} bytes of code.
+     */
+    static byte[] compile(Dfa dfa, String internalName) {
+        BytecodeCompiler compiler = new BytecodeCompiler(dfa);
+        byte[] matches = compiler.method(dfa.matchStart(), false);
+        byte[] find = matches == null ? null : compiler.method(dfa.findStart(), true);
+        if (find == null) {
+            return null;
+        }
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(matches.length + find.length + 512);
+            DataOutputStream out = new DataOutputStream(bytes);
+            out.writeInt(0xCAFEBABE);
+            out.writeShort(0);
+            out.writeShort(CLASS_VERSION);
+            writePool(out, internalName);
+            out.writeShort(ACC_PUBLIC | ACC_FINAL | ACC_SUPER);
+            out.writeShort(THIS_CLASS);
+            out.writeShort(OBJECT_CLASS);
+            out.writeShort(1);
+            out.writeShort(MATCHER_INTERFACE);
+            out.writeShort(0);
+            out.writeShort(3);
+            writeMethod(out, INIT_NAME, VOID_DESCRIPTOR, 1, 1, new byte[]{
+                    ALOAD_0, (byte) INVOKESPECIAL, 0, OBJECT_INIT, (byte) RETURN
+            });
+            writeMethod(out, MATCHES_NAME, MATCH_DESCRIPTOR, MAX_STACK, MAX_LOCALS, matches);
+            writeMethod(out, FIND_NAME, MATCH_DESCRIPTOR, MAX_STACK, MAX_LOCALS, find);
+            out.writeShort(0);
+            return bytes.toByteArray();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void writePool(DataOutputStream out, String internalName) throws IOException {
+        out.writeShort(POOL_SIZE);
+        utf8(out, internalName);                                // 1
+        classRef(out, 1);                                       // 2
+        utf8(out, "java/lang/Object");                          // 3
+        classRef(out, 3);                                       // 4
+        utf8(out, "org/util/text/regex/nfa/PatternMatcher");    // 5
+        classRef(out, 5);                                       // 6
+        utf8(out, "<init>");                                    // 7
+        utf8(out, "()V");                                       // 8
+        nameAndType(out, 7, 8);                                 // 9
+        memberRef(out, 10, OBJECT_CLASS, 9);                    // 10 Methodref
+        utf8(out, "java/lang/CharSequence");                    // 11
+        classRef(out, 11);                                      // 12
+        utf8(out, "length");                                    // 13
+        utf8(out, "()I");                                       // 14
+        nameAndType(out, 13, 14);                               // 15
+        memberRef(out, 11, 12, 15);                             // 16 InterfaceMethodref
+        utf8(out, "charAt");                                    // 17
+        utf8(out, "(I)C");                                      // 18
+        nameAndType(out, 17, 18);                               // 19
+        memberRef(out, 11, 12, 19);                             // 20 InterfaceMethodref
+        utf8(out, "matches");                                   // 21
+        utf8(out, "find");                                      // 22
+        utf8(out, "(Ljava/lang/CharSequence;)Z");               // 23
+        utf8(out, "Code");                                      // 24
+    }
+
+    private static void utf8(DataOutputStream out, String value) throws IOException {
+        out.writeByte(1);
+        out.writeUTF(value);
+    }
+
+    private static void classRef(DataOutputStream out, int name) throws IOException {
+        out.writeByte(7);
+        out.writeShort(name);
+    }
+
+    private static void nameAndType(DataOutputStream out, int name, int descriptor) throws IOException {
+        out.writeByte(12);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+    }
+
+    private static void memberRef(DataOutputStream out, int tag, int owner, int nameAndType) throws IOException {
+        out.writeByte(tag);
+        out.writeShort(owner);
+        out.writeShort(nameAndType);
+    }
+
+    private static void writeMethod(DataOutputStream out, int name, int descriptor, int maxStack, int maxLocals,
+                                    byte[] code) throws IOException {
+        out.writeShort(ACC_PUBLIC);
+        out.writeShort(name);
+        out.writeShort(descriptor);
+        out.writeShort(1);
+        out.writeShort(CODE_ATTRIBUTE);
+        out.writeInt(12 + code.length);
+        out.writeShort(maxStack);
+        out.writeShort(maxLocals);
+        out.writeInt(code.length);
+        out.write(code);
+        out.writeShort(0);
+        out.writeShort(0);
+    }
+
+    /**
+     * Returns the code of {@code matches}, or of {@code find} if {@code find}, starting in {@code start}, or
+     * {@code null} if it is too long.
+     */
+    private byte[] method(int start, boolean find) {
+        int dead = dfa.deadState();
+        Code code = new Code();
+        code.u1(ALOAD_1).u1(INVOKEINTERFACE).u2(LENGTH).u1(1).u1(0).u1(ISTORE_3)
+                .u1(ICONST_0).u1(ISTORE_2);
+        int[] labels = new int[dfa.stateCount()];
+        Arrays.fill(labels, -1);
+        boolean[] queued = new boolean[dfa.stateCount()];
+        Deque<Integer> queue = new ArrayDeque<>();
+        queue.add(start);
+        queued[start] = true;
+        List<int[]> fixups = new ArrayList<>();
+        int[] targets = new int[runStarts.length];
+        int[] weights = new int[dfa.stateCount()];
+        while (!queue.isEmpty()) {
+            int state = queue.poll();
+            labels[state] = code.length;
+            boolean accepting = dfa.isAccepting(state);
+            if (accepting && (find || absorbs(state))) {
+                code.u1(ICONST_1).u1(IRETURN);
+                continue;
+            }
+            /* if (i < n) skip the return */
+            code.u1(ILOAD_2).u1(ILOAD_3).u1(IF_ICMPLT).u2(5).u1(accepting ? ICONST_1 : ICONST_0).u1(IRETURN);
+            code.u1(ALOAD_1).u1(ILOAD_2).u1(INVOKEINTERFACE).u2(CHAR_AT).u1(2).u1(0).u1(IINC).u1(2).u1(1);
+            int otherwise = -1;
+            for (int r = 0; r < runStarts.length; r++) {
+                targets[r] = dfa.next(state, runClasses[r]);
+                weights[targets[r]] += runEnd(r) - runStarts[r];
+                if (otherwise == -1 || weights[targets[r]] > weights[otherwise]) {
+                    otherwise = targets[r];
+                }
+            }
+            int pairs = 0;
+            for (int r = 0; r < runStarts.length; r++) {
+                weights[targets[r]] = 0;
+                if (targets[r] != otherwise) {
+                    pairs += runEnd(r) - runStarts[r];
+                }
+            }
+            if (pairs > MAX_CODE_LENGTH / 8) {
+                return null;
+            }
+            int switchStart = code.length;
+            code.u1(LOOKUPSWITCH);
+            while (code.length % 4 != 0) {
+                code.u1(0);
+            }
+            branch(code, fixups, switchStart, otherwise == dead ? FAIL : otherwise);
+            code.u4(pairs);
+            for (int r = 0; r < runStarts.length; r++) {
+                if (targets[r] != otherwise) {
+                    for (int c = runStarts[r], end = runEnd(r); c < end; c++) {
+                        code.u4(c);
+                        branch(code, fixups, switchStart, targets[r] == dead ? FAIL : targets[r]);
+                    }
+                }
+            }
+            for (int r = -1; r < runStarts.length; r++) {
+                int target = r < 0 ? otherwise : targets[r];
+                if (target != dead && !queued[target]) {
+                    queued[target] = true;
+                    queue.add(target);
+                }
+            }
+            if (code.length > MAX_CODE_LENGTH) {
+                return null;
+            }
+        }
+        int fail = code.length;
+        code.u1(ICONST_0).u1(IRETURN);
+        if (code.length > MAX_CODE_LENGTH) {
+            return null;
+        }
+        for (int[] fixup : fixups) {
+            int target = fixup[2] == FAIL ? fail : labels[fixup[2]];
+            code.putInt(fixup[1], target - fixup[0]);
+        }
+        return Arrays.copyOf(code.bytes, code.length);
+    }
+
+    /**
+     * Records a 4-byte branch offset from the instruction at {@code from} to the block of {@code target}.
+     */
+    private static void branch(Code code, List<int[]> fixups, int from, int target) {
+        fixups.add(new int[]{from, code.length, target});
+        code.u4(0);
+    }
+
+    private boolean absorbs(int state) {
+        for (int cls = 0; cls < dfa.classCount(); cls++) {
+            if (dfa.next(state, cls) != state) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static final class Code {
+
+        byte[] bytes = new byte[256];
+        int length;
+
+        Code u1(int value) {
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, 2 * length);
+            }
+            bytes[length++] = (byte) value;
+            return this;
+        }
+
+        Code u2(int value) {
+            return u1(value >>> 8).u1(value);
+        }
+
+        Code u4(int value) {
+            return u2(value >>> 16).u2(value);
+        }
+
+        void putInt(int at, int value) {
+            bytes[at] = (byte) (value >>> 24);
+            bytes[at + 1] = (byte) (value >>> 16);
+            bytes[at + 2] = (byte) (value >>> 8);
+            bytes[at + 3] = (byte) value;
+        }
+
+    }
+
+}
@@ -0,0 +1,68 @@
+package org.util.text.regex.nfa;
+
+import org.util.text.regex.ParseTree;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Compiles a pattern into a generated JVM class whose {@code matches} and {@code find} methods are its minimized
+ * {@link Dfa} written out as code: one block per state, a {@code lookupswitch} on the input character per transition
+ * and jumps between blocks, so the JIT sees the automaton itself instead of a table walk.
+ * <p>
+ * Each class is defined by its own class loader, which becomes unreachable with the matcher, so generated classes are
+ * unloaded like any other garbage. Instances are immutable and thread-safe.
+ *
+ * @author ahmad
+ */
+public final class BytecodeMatcher {
+
+    private static final String PREFIX = BytecodeMatcher.class.getName() + "$Generated";
+    private static final AtomicInteger COUNTER = new AtomicInteger();
+
+    private BytecodeMatcher() {
+    }
+
+    /**
+     * Compiles {@code tree} into a generated matcher. A pattern whose DFA is too large to compile falls back to an
+     * {@link Nfa}, and one whose DFA does not fit in a method to that {@link Dfa}.
+     */
+    public static PatternMatcher compile(ParseTree tree) {
+        Dfa dfa;
+        try {
+            dfa = Dfa.compile(tree);
+        } catch (IllegalArgumentException e) {
+            return Nfa.compile(tree);
+        }
+        return compile(dfa);
+    }
+
+    /**
+     * Compiles {@code dfa} into a generated matcher, or returns it if its states do not fit in a method of
+     * {@value BytecodeCompiler#MAX_CODE_LENGTH} bytes.
+     */
+    public static PatternMatcher compile(Dfa dfa) {
+        String name = PREFIX + COUNTER.incrementAndGet();
+        byte[] bytes = BytecodeCompiler.compile(dfa, name.replace('.', '/'));
+        if (bytes == null) {
+            return dfa;
+        }
+        try {
+            return (PatternMatcher) new Loader().define(name, bytes).getDeclaredConstructor().newInstance();
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Cannot instantiate " + name, e);
+        }
+    }
+
+    private static final class Loader extends ClassLoader {
+
+        Loader() {
+            super(BytecodeMatcher.class.getClassLoader());
+        }
+
+        Class<?> define(String name, byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+
+    }
+
+}
@@ -0,0 +1,219 @@
+package org.util.text.regex.nfa;
+
+import org.util.text.regex.CharSet;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Maps input characters to the equivalence classes of an {@link Nfa}: two characters are in the same class when
+ * exactly the same states consume them. Classes are numbered from {@code 1} in the order of their first character,
+ * and the characters no state consumes fall into class {@code 0}.
+ * <p>
+ * The alphabet is cut into intervals at the bounds of the characters and sets the states consume, and each interval
+ * is tagged with the states consuming it, so the classes are found in time proportional to the number of intervals
+ * each state covers rather than to the alphabet. Latin-1 characters are looked up in a table; others are binary
+ * searched among the intervals past Latin-1, adjacent intervals of one class merged.
+ *
+ * @author ahmad
+ */
+final class CharClasses {
+
+    private static final int LATIN1 = 256;
+    private static final int ALPHABET = Character.MAX_VALUE + 1;
+
+    private final int[] latin1 = new int[LATIN1];
+    /* the intervals past Latin-1: their first characters, ascending, and their classes */
+    private final char[] otherStarts;
+    private final int[] otherClasses;
+    private final char[] representatives;
+    private final int count;
+
+    CharClasses(Nfa nfa) {
+        int n = nfa.stateCount();
+        int[] cuts = new int[2 * rangeTotal(nfa) + 2];
+        int cutCount = 0;
+        cuts[cutCount++] = 0;
+        cuts[cutCount++] = LATIN1;
+        for (int s = 0; s < n; s++) {
+            if (nfa.op(s) == Nfa.CHAR) {
+                cuts[cutCount++] = nfa.ch(s);
+                cuts[cutCount++] = nfa.ch(s) + 1;
+            } else if (nfa.op(s) == Nfa.SET) {
+                CharSet set = nfa.set(s);
+                for (int r = 0; r < set.rangeCount(); r++) {
+                    cuts[cutCount++] = set.rangeStart(r);
+                    cuts[cutCount++] = set.rangeEnd(r) + 1;
+                }
+            }
+        }
+        Arrays.sort(cuts, 0, cutCount);
+        int intervals = 0;
+        for (int i = 0; i < cutCount; i++) {
+            if (cuts[i] < ALPHABET && (intervals == 0 || cuts[i] != cuts[intervals - 1])) {
+                cuts[intervals++] = cuts[i];
+            }
+        }
+
+        /* the states consuming each interval, grouped by interval */
+        int[] stateStart = new int[intervals + 1];
+        tag(nfa, cuts, intervals, stateStart, null, null);
+        for (int i = 0; i < intervals; i++) {
+            stateStart[i + 1] += stateStart[i];
+        }
+        int[] states = new int[stateStart[intervals]];
+        tag(nfa, cuts, intervals, stateStart, Arrays.copyOf(stateStart, intervals), states);
+        int[] intervalClass = assign(stateStart, states, intervals);
+
+        count = 1 + max(intervalClass, intervals);
+        representatives = new char[count];
+        boolean[] seen = new boolean[count];
+        for (int i = 0; i < intervals; i++) {
+            int cls = intervalClass[i];
+            if (!seen[cls]) {
+                seen[cls] = true;
+                representatives[cls] = (char) cuts[i];
+            }
+            for (int c = cuts[i], end = Math.min(end(cuts, intervals, i), LATIN1); c < end; c++) {
+                latin1[c] = cls;
+            }
+        }
+        int first = 0;
+        while (cuts[first] < LATIN1) {
+            ++first;
+        }
+        char[] starts = new char[intervals - first];
+        int[] classes = new int[intervals - first];
+        int others = 0;
+        for (int i = first; i < intervals; i++) {
+            if (others == 0 || classes[others - 1] != intervalClass[i]) {
+                starts[others] = (char) cuts[i];
+                classes[others++] = intervalClass[i];
+            }
+        }
+        otherStarts = Arrays.copyOf(starts, others);
+        otherClasses = Arrays.copyOf(classes, others);
+    }
+
+    private static int rangeTotal(Nfa nfa) {
+        int total = 0;
+        for (int s = 0; s < nfa.stateCount(); s++) {
+            if (nfa.op(s) == Nfa.CHAR) {
+                ++total;
+            } else if (nfa.op(s) == Nfa.SET) {
+                total += nfa.set(s).rangeCount();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Tags each interval with the states consuming it, or only counts them if {@code fill} is {@code null}.
+     */
+    private static void tag(Nfa nfa, int[] cuts, int intervals, int[] stateStart, int[] fill, int[] states) {
+        for (int s = 0; s < nfa.stateCount(); s++) {
+            if (nfa.op(s) == Nfa.CHAR) {
+                mark(cuts, intervals, nfa.ch(s), nfa.ch(s), s, stateStart, fill, states);
+            } else if (nfa.op(s) == Nfa.SET) {
+                CharSet set = nfa.set(s);
+                for (int r = 0; r < set.rangeCount(); r++) {
+                    mark(cuts, intervals, set.rangeStart(r), set.rangeEnd(r), s, stateStart, fill, states);
+                }
+            }
+        }
+    }
+
+    private static void mark(int[] cuts, int intervals, int lo, int hi, int state,
+                             int[] stateStart, int[] fill, int[] states) {
+        for (int i = Arrays.binarySearch(cuts, 0, intervals, lo); i < intervals && cuts[i] <= hi; i++) {
+            if (fill == null) {
+                ++stateStart[i + 1];
+            } else {
+                states[fill[i]++] = state;
+            }
+        }
+    }
+
+    /**
+     * Returns the class of each interval, numbering the distinct non-empty sets of consuming states in order.
+     */
+    private static int[] assign(int[] stateStart, int[] states, int intervals) {
+        int[] intervalClass = new int[intervals];
+        Map<StateKey, Integer> ids = new HashMap<>();
+        for (int i = 0; i < intervals; i++) {
+            if (stateStart[i] == stateStart[i + 1]) {
+                continue;
+            }
+            StateKey key = new StateKey(Arrays.copyOfRange(states, stateStart[i], stateStart[i + 1]));
+            Integer id = ids.putIfAbsent(key, ids.size() + 1);
+            intervalClass[i] = id != null ? id : ids.size();
+        }
+        return intervalClass;
+    }
+
+    private static int end(int[] cuts, int intervals, int i) {
+        return i + 1 < intervals ? cuts[i + 1] : ALPHABET;
+    }
+
+    private static int max(int[] values, int length) {
+        int max = 0;
+        for (int i = 0; i < length; i++) {
+            max = Math.max(max, values[i]);
+        }
+        return max;
+    }
+
+    int count() {
+        return count;
+    }
+
+    /**
+     * Returns a character of class {@code cls}, for {@code 1 <= cls < count()}.
+     */
+    char charOf(int cls) {
+        return representatives[cls];
+    }
+
+    int classOf(char c) {
+        if (c < LATIN1) {
+            return latin1[c];
+        }
+        int low = 0, high = otherStarts.length - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (otherStarts[mid] <= c) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return otherClasses[low];
+    }
+
+    /**
+     * Returns the number of runs of one class past Latin-1.
+     */
+    int otherCount() {
+        return otherStarts.length;
+    }
+
+    /**
+     * Returns the first character of the {@code i}-th run past Latin-1.
+     */
+    char otherStart(int i) {
+        return otherStarts[i];
+    }
+
+    /**
+     * Returns the last character of the {@code i}-th run past Latin-1.
+     */
+    char otherEnd(int i) {
+        return i + 1 < otherStarts.length ? (char) (otherStarts[i + 1] - 1) : Character.MAX_VALUE;
+    }
+
+    int otherClass(int i) {
+        return otherClasses[i];
+    }
+
+}
@@ -0,0 +1,233 @@
+package org.util.text.regex.nfa;
+
+import org.util.text.regex.ParseTree;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A minimized DFA read straight from its binary transition table, so a table written once can be mapped into memory
+ * and matched against without being rebuilt, and shared read-only between processes.
+ * <p>
+ * The table holds two start states: one for {@link #matches(CharSequence)} and one for {@link #find(CharSequence)},
+ * whose states keep the automaton's start state active at every position. Input characters are mapped to at most
+ * {@value #MAX_CLASSES} equivalence classes. All values are big-endian:
+ * <pre>
+ * offset  size                       field
+ * 0       4                          magic "RXDF"
+ * 4       2                          format version
+ * 6       1                          transition width in bytes (1, 2 or 4)
+ * 7       1                          reserved
+ * 8       4                          state count
+ * 12      4                          class count
+ * 16      4                          start state of matches
+ * 20      4                          start state of find
+ * 24      4                          dead state, or -1
+ * 28      4                          number of ranges of non-Latin-1 characters with a class
+ * 32      256                        class of each Latin-1 character
+ * 288     2 * others                 the first character of each range, ascending
+ * ...     2 * others                 the last character of each range
+ * ...     others                     their classes
+ * ...     (states + 7) / 8           accepting states, one bit per state
+ * ...     states * classes * width   transition table, row per state
+ * </pre>
+ * Characters in no range are in class {@code 0}.
+ *
+ * @author ahmad
+ */
+public final class Dfa implements PatternMatcher {
+
+    public static final int MAX_CLASSES = 256;
+    public static final int DEFAULT_MAX_STATES = 100_000;
+
+    static final int MAGIC = 0x52584446;
+    static final short VERSION = 2;
+
+    static final int WIDTH_OFFSET = 6;
+    static final int STATE_COUNT_OFFSET = 8;
+    static final int CLASS_COUNT_OFFSET = 12;
+    static final int MATCH_START_OFFSET = 16;
+    static final int FIND_START_OFFSET = 20;
+    static final int DEAD_STATE_OFFSET = 24;
+    static final int OTHERS_OFFSET = 28;
+    static final int LATIN1_OFFSET = 32;
+    static final int HEADER_SIZE = LATIN1_OFFSET + 256;
+
+    private final ByteBuffer buffer;
+    private final int width;
+    private final int stateCount;
+    private final int classCount;
+    private final int matchStart;
+    private final int findStart;
+    private final int dead;
+    private final int others;
+    private final int othersOffset;
+    private final int acceptOffset;
+    private final int tableOffset;
+
+    private Dfa(ByteBuffer buffer) {
+        this.buffer = buffer;
+        if (buffer.limit() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IllegalArgumentException("Not a DFA table");
+        }
+        if (buffer.getShort(4) != VERSION) {
+            throw new IllegalArgumentException("Unsupported DFA table version " + buffer.getShort(4));
+        }
+        width = buffer.get(WIDTH_OFFSET);
+        stateCount = buffer.getInt(STATE_COUNT_OFFSET);
+        classCount = buffer.getInt(CLASS_COUNT_OFFSET);
+        matchStart = buffer.getInt(MATCH_START_OFFSET);
+        findStart = buffer.getInt(FIND_START_OFFSET);
+        dead = buffer.getInt(DEAD_STATE_OFFSET);
+        others = buffer.getInt(OTHERS_OFFSET);
+        othersOffset = HEADER_SIZE;
+        acceptOffset = othersOffset + 5 * others;
+        tableOffset = acceptOffset + (stateCount + 7) / 8;
+        if (width != 1 && width != 2 && width != 4 || classCount < 1 || classCount > MAX_CLASSES
+                || buffer.limit() < tableOffset + (long) stateCount * classCount * width) {
+            throw new IllegalArgumentException("Corrupt DFA table");
+        }
+    }
+
+    /**
+     * Determinizes and minimizes the automaton of {@code tree}.
+     *
+     * @throws IllegalArgumentException if the DFA needs more than {@link #DEFAULT_MAX_STATES} states or more than
+     *                                  {@link #MAX_CLASSES} character classes
+     */
+    public static Dfa compile(ParseTree tree) {
+        return compile(tree, DEFAULT_MAX_STATES);
+    }
+
+    /**
+     * Determinizes and minimizes the automaton of {@code tree}, creating at most {@code maxStates} states before
+     * minimization.
+     *
+     * @throws IllegalArgumentException if the DFA needs more than {@code maxStates} states or more than
+     *                                  {@link #MAX_CLASSES} character classes
+     */
+    public static Dfa compile(ParseTree tree, int maxStates) {
+        return new Dfa(DfaCompiler.compile(Nfa.compile(tree), maxStates));
+    }
+
+    /**
+     * Reads a table from {@code buffer}, from its position to its limit, without copying it.
+     */
+    public static Dfa wrap(ByteBuffer buffer) {
+        return new Dfa(buffer.slice().asReadOnlyBuffer());
+    }
+
+    /**
+     * Maps the table stored in {@code path} into memory.
+     */
+    public static Dfa load(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new Dfa(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    /**
+     * Writes the table to {@code path}, replacing any existing file.
+     */
+    public void save(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer table = toByteBuffer();
+            while (table.hasRemaining()) {
+                channel.write(table);
+            }
+        }
+    }
+
+    /**
+     * Returns a read-only view of the table.
+     */
+    public ByteBuffer toByteBuffer() {
+        ByteBuffer table = buffer.asReadOnlyBuffer();
+        table.clear();
+        table.limit(tableOffset + stateCount * classCount * width);
+        return table;
+    }
+
+    public int stateCount() {
+        return stateCount;
+    }
+
+    public int classCount() {
+        return classCount;
+    }
+
+    @Override
+    public boolean matches(CharSequence input) {
+        int state = matchStart;
+        for (int i = 0, n = input.length(); i < n; i++) {
+            state = next(state, classOf(input.charAt(i)));
+            if (state == dead) {
+                return false;
+            }
+        }
+        return isAccepting(state);
+    }
+
+    @Override
+    public boolean find(CharSequence input) {
+        int state = findStart;
+        for (int i = 0, n = input.length(); i < n; i++) {
+            if (isAccepting(state)) {
+                return true;
+            }
+            state = next(state, classOf(input.charAt(i)));
+        }
+        return isAccepting(state);
+    }
+
+    int matchStart() {
+        return matchStart;
+    }
+
+    int findStart() {
+        return findStart;
+    }
+
+    int deadState() {
+        return dead;
+    }
+
+    int classOf(char c) {
+        if (c < 256) {
+            return buffer.get(LATIN1_OFFSET + c) & 0xFF;
+        }
+        int low = 0, high = others - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            if (buffer.getChar(othersOffset + 2 * mid) > c) {
+                high = mid - 1;
+            } else if (buffer.getChar(othersOffset + 2 * others + 2 * mid) < c) {
+                low = mid + 1;
+            } else {
+                return buffer.get(othersOffset + 4 * others + mid) & 0xFF;
+            }
+        }
+        return 0;
+    }
+
+    int next(int state, int cls) {
+        int index = state * classCount + cls;
+        switch (width) {
+            case 1:
+                return buffer.get(tableOffset + index) & 0xFF;
+            case 2:
+                return buffer.getChar(tableOffset + 2 * index);
+            default:
+                return buffer.getInt(tableOffset + 4 * index);
+        }
+    }
+
+    boolean isAccepting(int state) {
+        return (buffer.get(acceptOffset + (state >>> 3)) & 1 << (state & 7)) != 0;
+    }
+
+}
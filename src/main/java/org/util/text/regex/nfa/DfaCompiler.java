@@ -0,0 +1,350 @@
+package org.util.text.regex.nfa;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Builds the table of a {@link Dfa}: subset construction over the {@link CharClasses} of an {@link Nfa}, Hopcroft's
+ * partition refinement, then merging the character classes whose columns in the minimized table are identical.
+ *
+ * @author ahmad
+ */
+final class DfaCompiler {
+
+    private final Nfa nfa;
+    private final CharClasses classes;
+    private final int classCount;
+    private final int maxStates;
+    private final NfaMatcher closure;
+    private final SparseSet scratch;
+
+    /* subset construction; anchored states come from matches, the others from find */
+    private final Map<StateKey, Integer> anchoredIds = new HashMap<>();
+    private final Map<StateKey, Integer> unanchoredIds = new HashMap<>();
+    private int[][] sets = new int[16][];
+    private boolean[] anchored = new boolean[16];
+    private int[] delta;
+    private int stateCount;
+
+    private DfaCompiler(Nfa nfa, int maxStates) {
+        this.nfa = nfa;
+        this.maxStates = maxStates;
+        classes = new CharClasses(nfa);
+        classCount = classes.count();
+        closure = nfa.matcher();
+        scratch = new SparseSet(nfa.stateCount());
+        delta = new int[16 * classCount];
+    }
+
+    static ByteBuffer compile(Nfa nfa, int maxStates) {
+        DfaCompiler compiler = new DfaCompiler(nfa, maxStates);
+        int matchStart = compiler.determinize(true);
+        int findStart = compiler.determinize(false);
+        return compiler.minimize(matchStart, findStart);
+    }
+
+    private int determinize(boolean anchor) {
+        scratch.clear();
+        closure.addState(scratch, nfa.start());
+        int start = stateFor(anchor);
+        for (int state = start; state < stateCount; state++) {
+            for (int cls = 0; cls < classCount; cls++) {
+                scratch.clear();
+                if (cls != 0) {
+                    char c = classes.charOf(cls);
+                    for (int s : sets[state]) {
+                        if (nfa.consumes(s, c)) {
+                            closure.addState(scratch, nfa.out(s));
+                        }
+                    }
+                }
+                if (!anchored[state]) {
+                    closure.addState(scratch, nfa.start());
+                }
+                int next = stateFor(anchored[state]);
+                delta[state * classCount + cls] = next;
+            }
+        }
+        return start;
+    }
+
+    private int stateFor(boolean anchor) {
+        int[] states = new int[scratch.size()];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = scratch.get(i);
+        }
+        Arrays.sort(states);
+        StateKey key = new StateKey(states);
+        Map<StateKey, Integer> map = anchor ? anchoredIds : unanchoredIds;
+        Integer id = map.get(key);
+        if (id != null) {
+            return id;
+        }
+        if (stateCount == maxStates) {
+            throw new IllegalArgumentException("DFA needs more than " + maxStates + " states");
+        }
+        if (stateCount == sets.length) {
+            int length = 2 * stateCount;
+            sets = Arrays.copyOf(sets, length);
+            anchored = Arrays.copyOf(anchored, length);
+            delta = Arrays.copyOf(delta, length * classCount);
+        }
+        sets[stateCount] = states;
+        anchored[stateCount] = anchor;
+        map.put(key, stateCount);
+        return stateCount++;
+    }
+
+    private boolean isAccepting(int state) {
+        return Arrays.binarySearch(sets[state], nfa.match()) >= 0;
+    }
+
+    private ByteBuffer minimize(int matchStart, int findStart) {
+        int n = stateCount, k = classCount;
+        int[] block = new int[n];
+        int blocks = refine(block);
+
+        int[] representative = new int[blocks];
+        Arrays.fill(representative, -1);
+        for (int s = 0; s < n; s++) {
+            if (representative[block[s]] == -1) {
+                representative[block[s]] = s;
+            }
+        }
+        int[] table = new int[blocks * k];
+        for (int b = 0; b < blocks; b++) {
+            for (int c = 0; c < k; c++) {
+                table[b * k + c] = block[delta[representative[b] * k + c]];
+            }
+        }
+
+        /* merge the classes whose columns are identical */
+        int[] merged = new int[k];
+        Map<StateKey, Integer> columns = new HashMap<>();
+        int mergedCount = 0;
+        for (int c = 0; c < k; c++) {
+            int[] column = new int[blocks];
+            for (int b = 0; b < blocks; b++) {
+                column[b] = table[b * k + c];
+            }
+            Integer existing = columns.putIfAbsent(new StateKey(column), mergedCount);
+            merged[c] = existing != null ? existing : mergedCount++;
+        }
+        if (mergedCount > Dfa.MAX_CLASSES) {
+            throw new IllegalArgumentException("DFA needs " + mergedCount + " character classes, at most "
+                    + Dfa.MAX_CLASSES + " are supported");
+        }
+
+        int dead = -1;
+        for (int s = 0; s < n && dead == -1; s++) {
+            if (anchored[s] && sets[s].length == 0) {
+                dead = block[s];
+            }
+        }
+        return write(blocks, table, merged, mergedCount, block[matchStart], block[findStart], dead, block);
+    }
+
+    /**
+     * Hopcroft's algorithm: splits the states into blocks of equivalent states, starting from the accepting and the
+     * other states and refining by each (block, class) splitter on the work list.
+     *
+     * @return the number of blocks
+     */
+    private int refine(int[] block) {
+        int n = stateCount, k = classCount;
+
+        /* inverse transitions, per class */
+        int[] inverseStart = new int[k * (n + 1)];
+        int[] inverse = new int[k * n];
+        for (int s = 0; s < n; s++) {
+            for (int c = 0; c < k; c++) {
+                ++inverseStart[c * (n + 1) + delta[s * k + c] + 1];
+            }
+        }
+        for (int c = 0; c < k; c++) {
+            for (int t = 0; t < n; t++) {
+                inverseStart[c * (n + 1) + t + 1] += inverseStart[c * (n + 1) + t];
+            }
+        }
+        int[] fill = new int[k * n];
+        for (int s = 0; s < n; s++) {
+            for (int c = 0; c < k; c++) {
+                int t = delta[s * k + c];
+                inverse[c * n + inverseStart[c * (n + 1) + t] + fill[c * n + t]++] = s;
+            }
+        }
+
+        /* partition, kept as ranges of the elements array */
+        int[] elements = new int[n];
+        int[] location = new int[n];
+        int[] blockStart = new int[n];
+        int[] blockEnd = new int[n];
+        int[] marked = new int[n];
+        int blocks = 0;
+        int accepting = 0;
+        for (int s = 0; s < n; s++) {
+            if (isAccepting(s)) {
+                elements[accepting++] = s;
+            }
+        }
+        int other = accepting;
+        for (int s = 0; s < n; s++) {
+            if (!isAccepting(s)) {
+                elements[other++] = s;
+            }
+        }
+        if (accepting > 0) {
+            blockStart[blocks] = 0;
+            blockEnd[blocks++] = accepting;
+        }
+        if (accepting < n) {
+            blockStart[blocks] = accepting;
+            blockEnd[blocks++] = n;
+        }
+        for (int b = 0; b < blocks; b++) {
+            for (int i = blockStart[b]; i < blockEnd[b]; i++) {
+                block[elements[i]] = b;
+                location[elements[i]] = i;
+            }
+        }
+
+        int[] work = new int[n * k];
+        boolean[] waiting = new boolean[n * k];
+        int workCount = 0;
+        if (blocks == 2) {
+            int smaller = accepting <= n - accepting ? 0 : 1;
+            for (int c = 0; c < k; c++) {
+                work[workCount++] = smaller * k + c;
+                waiting[smaller * k + c] = true;
+            }
+        }
+
+        int[] splitter = new int[n];
+        int[] touched = new int[n];
+        while (workCount > 0) {
+            int next = work[--workCount];
+            waiting[next] = false;
+            int b = next / k, c = next % k;
+            int size = blockEnd[b] - blockStart[b];
+            System.arraycopy(elements, blockStart[b], splitter, 0, size);
+            int touchedCount = 0;
+            for (int i = 0; i < size; i++) {
+                int t = splitter[i];
+                for (int j = inverseStart[c * (n + 1) + t], end = inverseStart[c * (n + 1) + t + 1]; j < end; j++) {
+                    int s = inverse[c * n + j];
+                    int x = block[s];
+                    int front = blockStart[x] + marked[x];
+                    if (location[s] >= front) {
+                        int swapped = elements[front];
+                        elements[front] = s;
+                        elements[location[s]] = swapped;
+                        location[swapped] = location[s];
+                        location[s] = front;
+                        if (marked[x]++ == 0) {
+                            touched[touchedCount++] = x;
+                        }
+                    }
+                }
+            }
+            for (int i = 0; i < touchedCount; i++) {
+                int x = touched[i];
+                int m = marked[x];
+                marked[x] = 0;
+                if (m == blockEnd[x] - blockStart[x]) {
+                    continue;
+                }
+                int y = blocks++;
+                blockStart[y] = blockStart[x];
+                blockEnd[y] = blockStart[x] + m;
+                blockStart[x] += m;
+                for (int j = blockStart[y]; j < blockEnd[y]; j++) {
+                    block[elements[j]] = y;
+                }
+                boolean ySmaller = m <= blockEnd[x] - blockStart[x];
+                for (int d = 0; d < k; d++) {
+                    int add = waiting[x * k + d] || ySmaller ? y : x;
+                    if (!waiting[add * k + d]) {
+                        waiting[add * k + d] = true;
+                        work[workCount++] = add * k + d;
+                    }
+                }
+            }
+        }
+        return blocks;
+    }
+
+    private ByteBuffer write(int blocks, int[] table, int[] merged, int mergedCount,
+                             int matchStart, int findStart, int dead, int[] block) {
+        int k = classCount;
+        int width = blocks <= 0x100 ? 1 : blocks <= 0x10000 ? 2 : 4;
+        /* the runs of characters past Latin-1 not in the class of 0, adjacent runs of one class joined */
+        char[] otherStarts = new char[classes.otherCount()];
+        char[] otherEnds = new char[classes.otherCount()];
+        int[] otherClasses = new int[classes.otherCount()];
+        int others = 0;
+        for (int i = 0; i < classes.otherCount(); i++) {
+            int mc = merged[classes.otherClass(i)];
+            if (mc == merged[0]) {
+                continue;
+            }
+            if (others > 0 && otherClasses[others - 1] == mc && otherEnds[others - 1] + 1 == classes.otherStart(i)) {
+                otherEnds[others - 1] = classes.otherEnd(i);
+            } else {
+                otherStarts[others] = classes.otherStart(i);
+                otherEnds[others] = classes.otherEnd(i);
+                otherClasses[others++] = mc;
+            }
+        }
+        int acceptOffset = Dfa.HEADER_SIZE + 5 * others;
+        int tableOffset = acceptOffset + (blocks + 7) / 8;
+        ByteBuffer buffer = ByteBuffer.allocate(tableOffset + blocks * mergedCount * width);
+        buffer.putInt(0, Dfa.MAGIC);
+        buffer.putShort(4, Dfa.VERSION);
+        buffer.put(Dfa.WIDTH_OFFSET, (byte) width);
+        buffer.putInt(Dfa.STATE_COUNT_OFFSET, blocks);
+        buffer.putInt(Dfa.CLASS_COUNT_OFFSET, mergedCount);
+        buffer.putInt(Dfa.MATCH_START_OFFSET, matchStart);
+        buffer.putInt(Dfa.FIND_START_OFFSET, findStart);
+        buffer.putInt(Dfa.DEAD_STATE_OFFSET, dead);
+        buffer.putInt(Dfa.OTHERS_OFFSET, others);
+        for (int ch = 0; ch < 256; ch++) {
+            buffer.put(Dfa.LATIN1_OFFSET + ch, (byte) merged[classes.classOf((char) ch)]);
+        }
+        for (int i = 0; i < others; i++) {
+            buffer.putChar(Dfa.HEADER_SIZE + 2 * i, otherStarts[i]);
+            buffer.putChar(Dfa.HEADER_SIZE + 2 * others + 2 * i, otherEnds[i]);
+            buffer.put(Dfa.HEADER_SIZE + 4 * others + i, (byte) otherClasses[i]);
+        }
+        for (int s = 0; s < stateCount; s++) {
+            if (isAccepting(s)) {
+                int b = block[s];
+                buffer.put(acceptOffset + (b >>> 3), (byte) (buffer.get(acceptOffset + (b >>> 3)) | 1 << (b & 7)));
+            }
+        }
+        boolean[] written = new boolean[mergedCount];
+        for (int c = 0; c < k; c++) {
+            int mc = merged[c];
+            if (written[mc]) {
+                continue;
+            }
+            written[mc] = true;
+            for (int b = 0; b < blocks; b++) {
+                int index = b * mergedCount + mc, target = table[b * k + c];
+                switch (width) {
+                    case 1:
+                        buffer.put(tableOffset + index, (byte) target);
+                        break;
+                    case 2:
+                        buffer.putChar(tableOffset + 2 * index, (char) target);
+                        break;
+                    default:
+                        buffer.putInt(tableOffset + 4 * index, target);
+                }
+            }
+        }
+        return buffer;
+    }
+
+}
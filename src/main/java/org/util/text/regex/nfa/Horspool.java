@@ -0,0 +1,52 @@
+package org.util.text.regex.nfa;
+
+import java.util.Arrays;
+
+/**
+ * Boyer-Moore-Horspool search for one literal. The shift table is indexed by the low byte of a character, taking the
+ * smallest shift of the literal's characters sharing it. {@link String} input is searched with
+ * {@link String#indexOf(String, int)}, which the JIT intrinsifies.
+ *
+ * @author ahmad
+ */
+final class Horspool implements LiteralSearcher {
+
+    private final String literal;
+    private final int[] shift = new int[256];
+
+    Horspool(String literal) {
+        this.literal = literal;
+        int last = literal.length() - 1;
+        Arrays.fill(shift, literal.length());
+        for (int i = 0; i < last; i++) {
+            shift[literal.charAt(i) & 0xFF] = last - i;
+        }
+    }
+
+    @Override
+    public int indexOf(CharSequence text, int from) {
+        if (text instanceof String) {
+            return ((String) text).indexOf(literal, from);
+        }
+        int last = literal.length() - 1;
+        char end = literal.charAt(last);
+        for (int i = Math.max(from, 0) + last, n = text.length(); i < n; ) {
+            char c = text.charAt(i);
+            if (c == end && matchesAt(text, i - last)) {
+                return i - last;
+            }
+            i += shift[c & 0xFF];
+        }
+        return -1;
+    }
+
+    private boolean matchesAt(CharSequence text, int start) {
+        for (int j = literal.length() - 2; j >= 0; j--) {
+            if (text.charAt(start + j) != literal.charAt(j)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,433 @@
+package org.util.text.regex.nfa;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A DFA built lazily from an {@link Nfa}: each DFA state is a closed set of NFA states, created the first time a
+ * transition leads to it, and transitions are cached in a table indexed by state and {@link CharClasses character
+ * class}. Once the table is built for the input at hand, matching costs one table lookup per character.
+ * <p>
+ * The states used by {@link #find(CharSequence)} leave out the closure of the NFA's start state, which is active at
+ * every position; its transitions are precomputed per class instead. This keeps those states small even when the
+ * start state fans out to many alternatives, as in a {@link RegexSet}.
+ * <p>
+ * The cache is bounded by an estimate of its size in bytes. When a new state would exceed the bound the whole cache
+ * is cleared and rebuilt from the current state on; if a single search keeps clearing it without making progress,
+ * the rest of that search falls back to simulating the NFA.
+ * <p>
+ * A lazy DFA is not thread-safe; give each thread its own, for example through {@link Nfa#lazyDfa()}.
+ *
+ * @author ahmad
+ */
+public final class LazyDfa implements PatternMatcher {
+
+    public static final long DEFAULT_CACHE_BYTES = 1 << 20;
+
+    private static final int[] NO_PATTERNS = new int[0];
+
+    private static final int UNKNOWN = -1;
+    private static final int DEAD = -2;
+
+    private static final int STATE_BYTES = 64;
+    private static final int MAX_CLEARS = 3;
+    private static final int MIN_CHARS_PER_STATE = 10;
+
+    private final Nfa nfa;
+    private final CharClasses classes;
+    private final int classCount;
+    private final long maxCacheBytes;
+
+    private final NfaMatcher nfaMatcher;
+    private final SparseSet scratch;
+
+    /* closure of the start state, implied in unanchored states */
+    private final boolean[] inStartClosure;
+    private final int[] startPatterns;
+    private final int[] startStepIndex;
+    private final int[] startStep;
+
+    private final Cache anchored = new Cache(true);
+    private final Cache unanchored = new Cache(false);
+    private long cacheBytes;
+    private int lastClearedStates;
+
+    private long lookups;
+    private long misses;
+    private long statesCreated;
+    private long clears;
+    private long fallbacks;
+
+    LazyDfa(Nfa nfa, long maxCacheBytes) {
+        if (maxCacheBytes <= 0) {
+            throw new IllegalArgumentException("maxCacheBytes = " + maxCacheBytes);
+        }
+        this.nfa = nfa;
+        this.maxCacheBytes = maxCacheBytes;
+        classes = new CharClasses(nfa);
+        classCount = classes.count();
+        nfaMatcher = nfa.matcher();
+        scratch = new SparseSet(nfa.stateCount());
+
+        nfaMatcher.addState(scratch, nfa.start());
+        int[] startClosure = sortedStates();
+        inStartClosure = new boolean[nfa.stateCount()];
+        for (int s : startClosure) {
+            inStartClosure[s] = true;
+        }
+        startStepIndex = new int[classCount + 1];
+        for (int cls = 1; cls < classCount; cls++) {
+            char c = classes.charOf(cls);
+            for (int s : startClosure) {
+                if (nfa.consumes(s, c)) {
+                    ++startStepIndex[cls + 1];
+                }
+            }
+        }
+        for (int cls = 0; cls < classCount; cls++) {
+            startStepIndex[cls + 1] += startStepIndex[cls];
+        }
+        startStep = new int[startStepIndex[classCount]];
+        for (int cls = 1, i = 0; cls < classCount; cls++) {
+            char c = classes.charOf(cls);
+            for (int s : startClosure) {
+                if (nfa.consumes(s, c)) {
+                    startStep[i++] = nfa.out(s);
+                }
+            }
+        }
+        startPatterns = patternsOf(startClosure, NO_PATTERNS);
+    }
+
+    @Override
+    public boolean matches(CharSequence input) {
+        Cache cache = anchored;
+        int state = startState(cache);
+        long clearsAtStart = clears;
+        int lastClear = 0;
+        for (int i = 0, n = input.length(); i < n; i++) {
+            int cls = classes.classOf(input.charAt(i));
+            int next = cache.table[state * classCount + cls];
+            if (next == UNKNOWN) {
+                long before = clears;
+                next = computeNext(cache, state, cls);
+                if (clears != before) {
+                    if (isThrashing(clearsAtStart, i - lastClear)) {
+                        lookups += i + 1;
+                        ++fallbacks;
+                        return next != DEAD && nfaMatcher.resume(cache.sets[next], input, i + 1, true);
+                    }
+                    lastClear = i;
+                }
+            }
+            if (next == DEAD) {
+                lookups += i + 1;
+                return false;
+            }
+            state = next;
+        }
+        lookups += input.length();
+        return cache.accepting[state];
+    }
+
+    @Override
+    public boolean find(CharSequence input) {
+        Cache cache = unanchored;
+        int state = startState(cache);
+        long clearsAtStart = clears;
+        int lastClear = 0;
+        for (int i = 0, n = input.length(); i < n; i++) {
+            if (cache.accepting[state]) {
+                lookups += i;
+                return true;
+            }
+            int cls = classes.classOf(input.charAt(i));
+            int next = cache.table[state * classCount + cls];
+            if (next == UNKNOWN) {
+                long before = clears;
+                next = computeNext(cache, state, cls);
+                if (clears != before) {
+                    if (isThrashing(clearsAtStart, i - lastClear)) {
+                        lookups += i + 1;
+                        ++fallbacks;
+                        return nfaMatcher.resume(cache.sets[next], input, i + 1, false);
+                    }
+                    lastClear = i;
+                }
+            }
+            state = next;
+        }
+        lookups += input.length();
+        return cache.accepting[state];
+    }
+
+    /**
+     * Adds to {@code matched} the indices of the patterns that match the whole of {@code input}.
+     */
+    void matchesAll(CharSequence input, BitSet matched) {
+        Cache cache = anchored;
+        int state = startState(cache);
+        for (int i = 0, n = input.length(); i < n; i++) {
+            int cls = classes.classOf(input.charAt(i));
+            int next = cache.table[state * classCount + cls];
+            if (next == UNKNOWN) {
+                next = computeNext(cache, state, cls);
+            }
+            if (next == DEAD) {
+                lookups += i + 1;
+                return;
+            }
+            state = next;
+        }
+        lookups += input.length();
+        addPatterns(cache.patterns[state], matched);
+    }
+
+    /**
+     * Adds to {@code matched} the indices of the patterns that match somewhere in {@code input}. Unlike
+     * {@link #find(CharSequence)} the whole input is scanned, and a thrashing cache is cleared rather than left for
+     * the NFA.
+     */
+    void findAll(CharSequence input, BitSet matched) {
+        Cache cache = unanchored;
+        int state = startState(cache);
+        for (int i = 0, n = input.length(); i < n; i++) {
+            if (cache.accepting[state]) {
+                addPatterns(cache.patterns[state], matched);
+            }
+            int cls = classes.classOf(input.charAt(i));
+            int next = cache.table[state * classCount + cls];
+            if (next == UNKNOWN) {
+                next = computeNext(cache, state, cls);
+            }
+            state = next;
+        }
+        lookups += input.length();
+        addPatterns(cache.patterns[state], matched);
+    }
+
+    private static void addPatterns(int[] patterns, BitSet matched) {
+        for (int pattern : patterns) {
+            matched.set(pattern);
+        }
+    }
+
+    /**
+     * Returns the number of transitions taken through the cache.
+     */
+    public long cacheLookups() {
+        return lookups;
+    }
+
+    /**
+     * Returns the number of transitions that had to be computed from the NFA.
+     */
+    public long cacheMisses() {
+        return misses;
+    }
+
+    public double cacheHitRate() {
+        return lookups == 0 ? 0 : (double) (lookups - misses) / lookups;
+    }
+
+    /**
+     * Returns the number of DFA states currently cached.
+     */
+    public int stateCount() {
+        return anchored.count + unanchored.count;
+    }
+
+    /**
+     * Returns the number of DFA states created so far, including those dropped by clearing the cache.
+     */
+    public long statesCreated() {
+        return statesCreated;
+    }
+
+    public long cacheBytes() {
+        return cacheBytes;
+    }
+
+    public long cacheClears() {
+        return clears;
+    }
+
+    /**
+     * Returns the number of searches finished by simulating the NFA because the cache was thrashing.
+     */
+    public long nfaFallbacks() {
+        return fallbacks;
+    }
+
+    Nfa nfa() {
+        return nfa;
+    }
+
+    private boolean isThrashing(long clearsAtStart, int charsSinceLastClear) {
+        return clears - clearsAtStart > MAX_CLEARS && charsSinceLastClear < MIN_CHARS_PER_STATE * lastClearedStates;
+    }
+
+    private int startState(Cache cache) {
+        if (cache.start == UNKNOWN) {
+            scratch.clear();
+            if (cache.anchored) {
+                nfaMatcher.addState(scratch, nfa.start());
+            }
+            cache.start = stateFor(cache, sortedStates());
+        }
+        return cache.start;
+    }
+
+    private int computeNext(Cache cache, int state, int cls) {
+        ++misses;
+        scratch.clear();
+        if (cls != 0) {
+            char c = classes.charOf(cls);
+            for (int s : cache.sets[state]) {
+                if (nfa.consumes(s, c)) {
+                    nfaMatcher.addState(scratch, nfa.out(s));
+                }
+            }
+        }
+        if (cache.anchored && scratch.isEmpty()) {
+            cache.table[state * classCount + cls] = DEAD;
+            return DEAD;
+        }
+        int[] states;
+        if (cache.anchored) {
+            states = sortedStates();
+        } else {
+            if (cls != 0) {
+                for (int i = startStepIndex[cls], end = startStepIndex[cls + 1]; i < end; i++) {
+                    nfaMatcher.addState(scratch, startStep[i]);
+                }
+            }
+            states = unanchoredStates();
+        }
+        long before = clears;
+        int next = stateFor(cache, states);
+        if (clears == before) {
+            cache.table[state * classCount + cls] = next;
+        }
+        return next;
+    }
+
+    private int[] sortedStates() {
+        int[] states = new int[scratch.size()];
+        for (int i = 0; i < states.length; i++) {
+            states[i] = scratch.get(i);
+        }
+        Arrays.sort(states);
+        return states;
+    }
+
+    private int[] unanchoredStates() {
+        int count = 0;
+        for (int i = 0, n = scratch.size(); i < n; i++) {
+            if (!inStartClosure[scratch.get(i)]) {
+                ++count;
+            }
+        }
+        int[] states = new int[count];
+        count = 0;
+        for (int i = 0, n = scratch.size(); i < n; i++) {
+            if (!inStartClosure[scratch.get(i)]) {
+                states[count++] = scratch.get(i);
+            }
+        }
+        Arrays.sort(states);
+        return states;
+    }
+
+    private int stateFor(Cache cache, int[] states) {
+        StateKey key = new StateKey(states);
+        Integer id = cache.ids.get(key);
+        if (id != null) {
+            return id;
+        }
+        long bytes = STATE_BYTES + 4L * (classCount + states.length);
+        if (cacheBytes + bytes > maxCacheBytes && stateCount() > 0) {
+            clear();
+        }
+        int state = cache.add(key, patternsOf(states, cache.anchored ? NO_PATTERNS : startPatterns));
+        cacheBytes += bytes;
+        ++statesCreated;
+        return state;
+    }
+
+    /**
+     * Returns the indices of the patterns accepted by the {@code MATCH} states among {@code states}, merged with
+     * {@code implied}.
+     */
+    private int[] patternsOf(int[] states, int[] implied) {
+        int count = implied.length;
+        for (int s : states) {
+            if (nfa.op(s) == Nfa.MATCH) {
+                ++count;
+            }
+        }
+        if (count == implied.length) {
+            return implied;
+        }
+        int[] patterns = Arrays.copyOf(implied, count);
+        count = implied.length;
+        for (int s : states) {
+            if (nfa.op(s) == Nfa.MATCH) {
+                patterns[count++] = nfa.out(s);
+            }
+        }
+        Arrays.sort(patterns);
+        return patterns;
+    }
+
+    private void clear() {
+        lastClearedStates = stateCount();
+        anchored.clear();
+        unanchored.clear();
+        cacheBytes = 0;
+        ++clears;
+    }
+
+    private final class Cache {
+
+        private final boolean anchored;
+        private final Map<StateKey, Integer> ids = new HashMap<>();
+        private int[] table = new int[0];
+        private int[][] sets = new int[0][];
+        private boolean[] accepting = new boolean[0];
+        private int[][] patterns = new int[0][];
+        private int count;
+        private int start = UNKNOWN;
+
+        private Cache(boolean anchored) {
+            this.anchored = anchored;
+        }
+
+        private int add(StateKey key, int[] accepted) {
+            if (count == sets.length) {
+                int length = Math.max(8, 2 * count);
+                table = Arrays.copyOf(table, length * classCount);
+                sets = Arrays.copyOf(sets, length);
+                accepting = Arrays.copyOf(accepting, length);
+                patterns = Arrays.copyOf(patterns, length);
+            }
+            int state = count++;
+            Arrays.fill(table, state * classCount, (state + 1) * classCount, UNKNOWN);
+            sets[state] = key.states();
+            accepting[state] = accepted.length > 0;
+            patterns[state] = accepted;
+            ids.put(key, state);
+            return state;
+        }
+
+        private void clear() {
+            ids.clear();
+            count = 0;
+            start = UNKNOWN;
+        }
+
+    }
+
+}
@@ -0,0 +1,26 @@
+package org.util.text.regex.nfa;
+
+import java.util.Collection;
+
+/**
+ * Finds the first occurrence of any of a fixed set of literals.
+ *
+ * @author ahmad
+ */
+interface LiteralSearcher {
+
+    /**
+     * Returns the start of the first occurrence to end in {@code text} among those starting at or after
+     * {@code from}, or {@code -1}.
+     */
+    int indexOf(CharSequence text, int from);
+
+    /**
+     * Returns a searcher for {@code literals}, which must be non-empty: {@link Horspool} for one literal,
+     * {@link AhoCorasick} for several.
+     */
+    static LiteralSearcher of(Collection<String> literals) {
+        return literals.size() == 1 ? new Horspool(literals.iterator().next()) : new AhoCorasick(literals);
+    }
+
+}
@@ -0,0 +1,16 @@
+package org.util.text.regex.nfa;
+
+/**
+ * Receives the matches found by a {@link StreamMatcher}.
+ *
+ * @author ahmad
+ */
+public interface MatchListener {
+
+    /**
+     * Called once for each offset where a match ends, with the offset of the leftmost match ending there. Offsets count
+     * the characters read since the matcher was created or last reset.
+     */
+    void onMatch(long start, long end);
+
+}
@@ -0,0 +1,163 @@
+package org.util.text.regex.nfa;
+
+import org.util.text.regex.CharSet;
+import org.util.text.regex.ParseTree;
+
+/**
+ * A Thompson NFA stored in flat {@code int} arrays, one slot per state.
+ * <p>
+ * A {@link #CHAR} state consumes its character and moves to {@code out}, and a {@link #SET} state does the same for
+ * any character of its {@link CharSet}; a {@link #SPLIT} state moves to both
+ * {@code out} and {@code out1} without consuming input; a {@link #JUMP} state moves to {@code out}; reaching a
+ * {@link #MATCH} state accepts the pattern whose index is held in its {@code out} slot, which is {@code 0} unless the
+ * automaton was combined by a {@link RegexSet}. Instances are immutable and can be shared between threads; matching
+ * state lives in an {@link NfaMatcher}.
+ *
+ * @author ahmad
+ */
+public final class Nfa implements PatternMatcher {
+
+    static final int CHAR = 0;
+    static final int SPLIT = 1;
+    static final int JUMP = 2;
+    static final int MATCH = 3;
+    static final int SET = 4;
+
+    private final int[] op;
+    private final char[] ch;
+    /* null if no state is a SET */
+    private final CharSet[] sets;
+    private final int[] out;
+    private final int[] out1;
+    private final int stateCount;
+    private final int start;
+    /* the MATCH state, or -1 if the automaton was combined by a RegexSet and has one per pattern */
+    private final int match;
+
+    Nfa(int[] op, char[] ch, CharSet[] sets, int[] out, int[] out1, int start, int match) {
+        this(op, ch, sets, out, out1, op.length, start, match);
+    }
+
+    /**
+     * Creates an automaton of the first {@code stateCount} states of the arrays, which may be longer.
+     */
+    Nfa(int[] op, char[] ch, CharSet[] sets, int[] out, int[] out1, int stateCount, int start, int match) {
+        this.op = op;
+        this.ch = ch;
+        this.sets = sets;
+        this.out = out;
+        this.out1 = out1;
+        this.stateCount = stateCount;
+        this.start = start;
+        this.match = match;
+    }
+
+    public static Nfa compile(ParseTree tree) {
+        return NfaCompiler.compile(tree);
+    }
+
+    public int stateCount() {
+        return stateCount;
+    }
+
+    /**
+     * Returns a new matcher for this automaton. A matcher is not thread-safe, but can be reused for any number of
+     * inputs without allocating.
+     */
+    public NfaMatcher matcher() {
+        return new NfaMatcher(this);
+    }
+
+    /**
+     * Returns a new {@link LazyDfa} for this automaton with a cache of {@link LazyDfa#DEFAULT_CACHE_BYTES}.
+     */
+    public LazyDfa lazyDfa() {
+        return lazyDfa(LazyDfa.DEFAULT_CACHE_BYTES);
+    }
+
+    /**
+     * Returns a new {@link LazyDfa} for this automaton whose state cache holds at most about {@code maxCacheBytes}.
+     */
+    public LazyDfa lazyDfa(long maxCacheBytes) {
+        return new LazyDfa(this, maxCacheBytes);
+    }
+
+    /**
+     * Returns a new {@link StreamMatcher} for this automaton that reports its matches to {@code listener}.
+     */
+    public StreamMatcher streamMatcher(MatchListener listener) {
+        return new StreamMatcher(this, listener);
+    }
+
+    @Override
+    public boolean matches(CharSequence input) {
+        return matcher().matches(input);
+    }
+
+    @Override
+    public boolean find(CharSequence input) {
+        return matcher().find(input);
+    }
+
+    int op(int state) {
+        return op[state];
+    }
+
+    char ch(int state) {
+        return ch[state];
+    }
+
+    /**
+     * Returns the set of a {@link #SET} state, or {@code null} for other states.
+     */
+    CharSet set(int state) {
+        return sets == null ? null : sets[state];
+    }
+
+    /**
+     * Returns whether {@code state} consumes {@code c}.
+     */
+    boolean consumes(int state, char c) {
+        switch (op[state]) {
+            case CHAR:
+                return ch[state] == c;
+            case SET:
+                return sets[state].contains(c);
+            default:
+                return false;
+        }
+    }
+
+    int out(int state) {
+        return out[state];
+    }
+
+    int out1(int state) {
+        return out1[state];
+    }
+
+    int start() {
+        return start;
+    }
+
+    int match() {
+        return match;
+    }
+
+    /**
+     * Returns whether {@code states} holds a {@code MATCH} state, of any pattern if the automaton was combined by a
+     * {@link RegexSet}.
+     */
+    boolean accepts(SparseSet states) {
+        if (match >= 0) {
+            return states.contains(match);
+        }
+        for (int i = 0, n = states.size(); i < n; i++) {
+            if (op[states.get(i)] == MATCH) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+}
@@ -0,0 +1,269 @@
+package org.util.text.regex.nfa;
+
+import org.util.text.regex.CharSet;
+import org.util.text.regex.ParseTree;
+import org.util.text.regex.TreeNode;
+
+import java.util.Arrays;
+
+/**
+ * Thompson's construction over a {@link ParseTree}, visiting the nodes in post-order without recursion.
+ * <p>
+ * Each sub-expression becomes a fragment: a start state plus a list of dangling exits, threaded through the
+ * {@code out}/{@code out1} slots that the exits will later be patched into, with its tail kept so lists are
+ * appended in constant time.
+ * <p>
+ * A {@link TreeNode.Type#REPETITION} is expanded here rather than in the tree: its operand is compiled once, and its
+ * states, which are the last ones created, are copied once per further repeat. The copies are joined as
+ * {@code x x (x (x)?)?} for {@code x{2,4}} and {@code x x+} for {@code x{2,}}, so the optional repeats nest and the
+ * number of states stays linear in the count. Patterns expanding to more than {@value #MAX_STATES} states are
+ * rejected.
+ *
+ * @author ahmad
+ */
+final class NfaCompiler {
+
+    private static final int NONE = -1;
+
+    static final int MAX_STATES = 1 << 24;
+
+    private int[] op = new int[16];
+    private char[] ch = new char[16];
+    private CharSet[] sets;
+    private int[] out = new int[16];
+    private int[] out1 = new int[16];
+    private int stateCount;
+
+    /* fragment stack, with the first state created for each fragment */
+    private int[] fragmentFirst = new int[16];
+    private int[] fragmentStart = new int[16];
+    private int[] fragmentHead = new int[16];
+    private int[] fragmentTail = new int[16];
+    private int fragmentCount;
+
+    private NfaCompiler() {
+    }
+
+    static Nfa compile(ParseTree tree) {
+        NfaCompiler compiler = new NfaCompiler();
+        for (TreeNode node : Trees.postOrder(tree.getRoot())) {
+            compiler.visit(node);
+        }
+        return compiler.finish();
+    }
+
+    private void visit(TreeNode node) {
+        int s, e1, e2;
+        switch (node.getType()) {
+            case LITERAL:
+                s = newState(Nfa.CHAR, node.getValue(), NONE, NONE);
+                pushFragment(s, s, exit(s, 0), exit(s, 0));
+                break;
+            case CHAR_CLASS:
+                s = newState(Nfa.SET, '\u0000', NONE, NONE);
+                if (sets == null) {
+                    sets = new CharSet[op.length];
+                }
+                sets[s] = node.getCharSet();
+                pushFragment(s, s, exit(s, 0), exit(s, 0));
+                break;
+            case EPSILON:
+                epsilon();
+                break;
+            case KLEENE_STAR:
+                star();
+                break;
+            case KLEENE_PLUS:
+                plus();
+                break;
+            case REPETITION:
+                repeat(node.getMin(), node.getMax());
+                break;
+            case CONCATENATION:
+                concatenate();
+                break;
+            case ALTERNATION:
+                e2 = --fragmentCount;
+                e1 = --fragmentCount;
+                s = newState(Nfa.SPLIT, '\u0000', fragmentStart[e1], fragmentStart[e2]);
+                setExit(fragmentTail[e1], fragmentHead[e2]);
+                pushFragment(fragmentFirst[e1], s, fragmentHead[e1], fragmentTail[e2]);
+                break;
+            default:
+                throw new IllegalArgumentException("Unexpected " + node.getType() + " node " + node);
+        }
+    }
+
+    private void epsilon() {
+        int s = newState(Nfa.JUMP, '\u0000', NONE, NONE);
+        pushFragment(s, s, exit(s, 0), exit(s, 0));
+    }
+
+    private void star() {
+        int e1 = --fragmentCount;
+        int s = newState(Nfa.SPLIT, '\u0000', fragmentStart[e1], NONE);
+        patch(fragmentHead[e1], s);
+        pushFragment(fragmentFirst[e1], s, exit(s, 1), exit(s, 1));
+    }
+
+    private void plus() {
+        int e1 = --fragmentCount;
+        int s = newState(Nfa.SPLIT, '\u0000', fragmentStart[e1], NONE);
+        patch(fragmentHead[e1], s);
+        pushFragment(fragmentFirst[e1], fragmentStart[e1], exit(s, 1), exit(s, 1));
+    }
+
+    /**
+     * Makes the fragment on top optional: a split into it or past it.
+     */
+    private void optional() {
+        int e1 = --fragmentCount;
+        int s = newState(Nfa.SPLIT, '\u0000', fragmentStart[e1], NONE);
+        setExit(fragmentTail[e1], exit(s, 1));
+        pushFragment(fragmentFirst[e1], s, fragmentHead[e1], exit(s, 1));
+    }
+
+    private void concatenate() {
+        int e2 = --fragmentCount;
+        int e1 = --fragmentCount;
+        patch(fragmentHead[e1], fragmentStart[e2]);
+        pushFragment(fragmentFirst[e1], fragmentStart[e1], fragmentHead[e2], fragmentTail[e2]);
+    }
+
+    private void repeat(int min, int max) {
+        int e1 = fragmentCount - 1, first = fragmentFirst[e1], last = stateCount;
+        if (max == 0) {
+            --fragmentCount;
+            if (sets != null) {
+                Arrays.fill(sets, first, last, null);
+            }
+            stateCount = first;
+            epsilon();
+            return;
+        }
+        int copies = max == TreeNode.UNBOUNDED ? Math.max(min, 1) : max;
+        if ((long) (last - first) * (copies - 1) + stateCount > MAX_STATES) {
+            throw new IllegalArgumentException("Pattern expands to more than " + MAX_STATES + " states");
+        }
+        boolean[] dangling = new boolean[2 * (last - first)];
+        for (int exit = fragmentHead[e1]; exit != NONE; exit = getExit(exit)) {
+            dangling[exit - 2 * first] = true;
+        }
+        for (int i = 1; i < copies; i++) {
+            copy(e1, first, last, dangling);
+        }
+        if (max == TreeNode.UNBOUNDED) {
+            if (min == 0) {
+                star();
+            } else {
+                plus();
+            }
+        } else if (max > min) {
+            optional();
+        }
+        for (int i = copies - 2; i >= 0; i--) {
+            concatenate();
+            if (max != TreeNode.UNBOUNDED && i >= min) {
+                optional();
+            }
+        }
+    }
+
+    /**
+     * Pushes a copy of fragment {@code e}, whose states are those from {@code first} to {@code last}, exclusive, and
+     * are not yet patched into any other; {@code dangling} tells which of their exits are.
+     */
+    private void copy(int e, int first, int last, boolean[] dangling) {
+        int offset = stateCount - first;
+        for (int s = first; s < last; s++) {
+            int c = newState(op[s], ch[s], NONE, NONE);
+            if (sets != null) {
+                sets[c] = sets[s];
+            }
+            out[c] = moved(out[s], dangling[2 * (s - first)], offset);
+            out1[c] = moved(out1[s], dangling[2 * (s - first) + 1], offset);
+        }
+        pushFragment(first + offset, fragmentStart[e] + offset, fragmentHead[e] + 2 * offset,
+                fragmentTail[e] + 2 * offset);
+    }
+
+    /**
+     * Returns where a slot moves to in a copy: a state moves by {@code offset}, and a dangling exit along with its
+     * state.
+     */
+    private static int moved(int slot, boolean dangling, int offset) {
+        return slot == NONE ? NONE : dangling ? slot + 2 * offset : slot + offset;
+    }
+
+    private Nfa finish() {
+        int match = newState(Nfa.MATCH, '\u0000', 0, NONE);
+        patch(fragmentHead[0], match);
+        return new Nfa(
+                Arrays.copyOf(op, stateCount), Arrays.copyOf(ch, stateCount),
+                sets == null ? null : Arrays.copyOf(sets, stateCount),
+                Arrays.copyOf(out, stateCount), Arrays.copyOf(out1, stateCount),
+                fragmentStart[0], match
+        );
+    }
+
+    private int newState(int o, char c, int next, int next1) {
+        if (stateCount == op.length) {
+            int length = 2 * stateCount;
+            op = Arrays.copyOf(op, length);
+            ch = Arrays.copyOf(ch, length);
+            if (sets != null) {
+                sets = Arrays.copyOf(sets, length);
+            }
+            out = Arrays.copyOf(out, length);
+            out1 = Arrays.copyOf(out1, length);
+        }
+        op[stateCount] = o;
+        ch[stateCount] = c;
+        out[stateCount] = next;
+        out1[stateCount] = next1;
+        return stateCount++;
+    }
+
+    private void pushFragment(int first, int start, int head, int tail) {
+        if (fragmentCount == fragmentStart.length) {
+            int length = 2 * fragmentCount;
+            fragmentFirst = Arrays.copyOf(fragmentFirst, length);
+            fragmentStart = Arrays.copyOf(fragmentStart, length);
+            fragmentHead = Arrays.copyOf(fragmentHead, length);
+            fragmentTail = Arrays.copyOf(fragmentTail, length);
+        }
+        fragmentFirst[fragmentCount] = first;
+        fragmentStart[fragmentCount] = start;
+        fragmentHead[fragmentCount] = head;
+        fragmentTail[fragmentCount] = tail;
+        ++fragmentCount;
+    }
+
+    /**
+     * Encodes the {@code out} ({@code slot == 0}) or {@code out1} ({@code slot == 1}) exit of a state.
+     */
+    private static int exit(int state, int slot) {
+        return state << 1 | slot;
+    }
+
+    private int getExit(int exit) {
+        return (exit & 1) == 0 ? out[exit >>> 1] : out1[exit >>> 1];
+    }
+
+    private void setExit(int exit, int value) {
+        if ((exit & 1) == 0) {
+            out[exit >>> 1] = value;
+        } else {
+            out1[exit >>> 1] = value;
+        }
+    }
+
+    private void patch(int exit, int state) {
+        while (exit != NONE) {
+            int next = getExit(exit);
+            setExit(exit, state);
+            exit = next;
+        }
+    }
+
+}
@@ -0,0 +1,112 @@
+package org.util.text.regex.nfa;
+
+/**
+ * Simulates an {@link Nfa} over an input, keeping the current and the next set of states in two {@link SparseSet}s,
+ * so each input character costs at most one visit per state and no allocation.
+ *
+ * @author ahmad
+ */
+public final class NfaMatcher implements PatternMatcher {
+
+    private final Nfa nfa;
+    private SparseSet current;
+    private SparseSet next;
+    private final int[] stack;
+
+    NfaMatcher(Nfa nfa) {
+        this.nfa = nfa;
+        int n = nfa.stateCount();
+        current = new SparseSet(n);
+        next = new SparseSet(n);
+        stack = new int[2 * n + 1];
+    }
+
+    @Override
+    public boolean matches(CharSequence input) {
+        current.clear();
+        addState(current, nfa.start());
+        return matches(input, 0);
+    }
+
+    @Override
+    public boolean find(CharSequence input) {
+        current.clear();
+        addState(current, nfa.start());
+        return find(input, 0);
+    }
+
+    /**
+     * Continues a search from {@code from}, in the given closed set of states; an unanchored search also adds the
+     * start state.
+     */
+    boolean resume(int[] states, CharSequence input, int from, boolean anchored) {
+        current.clear();
+        for (int state : states) {
+            current.add(state);
+        }
+        if (!anchored) {
+            addState(current, nfa.start());
+        }
+        return anchored ? matches(input, from) : find(input, from);
+    }
+
+    private boolean matches(CharSequence input, int from) {
+        for (int i = from, n = input.length(); i < n && !current.isEmpty(); i++) {
+            step(input.charAt(i));
+        }
+        return isAccepting(current);
+    }
+
+    private boolean find(CharSequence input, int from) {
+        for (int i = from, n = input.length(); i < n; i++) {
+            if (isAccepting(current)) {
+                return true;
+            }
+            step(input.charAt(i));
+            addState(current, nfa.start());
+        }
+        return isAccepting(current);
+    }
+
+    private void step(char c) {
+        SparseSet from = current, to = next;
+        to.clear();
+        for (int i = 0, n = from.size(); i < n; i++) {
+            int state = from.get(i);
+            if (nfa.consumes(state, c)) {
+                addState(to, nfa.out(state));
+            }
+        }
+        current = to;
+        next = from;
+    }
+
+    private boolean isAccepting(SparseSet states) {
+        return nfa.accepts(states);
+    }
+
+    /**
+     * Adds {@code state} and every state reachable from it without consuming input.
+     */
+    void addState(SparseSet states, int state) {
+        int top = 0;
+        stack[top++] = state;
+        while (top > 0) {
+            int s = stack[--top];
+            if (states.contains(s)) {
+                continue;
+            }
+            states.add(s);
+            switch (nfa.op(s)) {
+                case Nfa.SPLIT:
+                    stack[top++] = nfa.out1(s);
+                    stack[top++] = nfa.out(s);
+                    break;
+                case Nfa.JUMP:
+                    stack[top++] = nfa.out(s);
+                    break;
+            }
+        }
+    }
+
+}
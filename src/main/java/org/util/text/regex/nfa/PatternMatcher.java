@@ -0,0 +1,20 @@
+package org.util.text.regex.nfa;
+
+/**
+ * A compiled pattern that can be matched against character sequences.
+ *
+ * @author ahmad
+ */
+public interface PatternMatcher {
+
+    /**
+     * Tells whether the whole input matches.
+     */
+    boolean matches(CharSequence input);
+
+    /**
+     * Tells whether some part of the input matches.
+     */
+    boolean find(CharSequence input);
+
+}
@@ -0,0 +1,99 @@
+package org.util.text.regex.nfa;
+
+import org.util.text.regex.ParseTree;
+
+/**
+ * Rejects input that cannot match a pattern before an automaton reads it, by searching for the
+ * {@link RequiredLiterals} of the pattern: with {@link String#indexOf(String)} or Boyer-Moore-Horspool for one
+ * literal, and Aho-Corasick for several. Whole-input matching also checks the required prefix and suffix.
+ * <p>
+ * A pattern without required literals gets a prefilter that rejects nothing. Instances are immutable and
+ * thread-safe.
+ *
+ * @author ahmad
+ */
+public final class Prefilter {
+
+    private final RequiredLiterals literals;
+    private final LiteralSearcher searcher;
+
+    private Prefilter(RequiredLiterals literals) {
+        this.literals = literals;
+        this.searcher = literals.getFactors().isEmpty() ? null : LiteralSearcher.of(literals.getFactors());
+    }
+
+    public static Prefilter compile(ParseTree tree) {
+        return new Prefilter(RequiredLiterals.of(tree));
+    }
+
+    public RequiredLiterals getLiterals() {
+        return literals;
+    }
+
+    /**
+     * Tells whether this prefilter can reject any input.
+     */
+    public boolean isEffective() {
+        return searcher != null;
+    }
+
+    /**
+     * Returns the start of the first required literal to end in {@code input} among those starting at or after
+     * {@code from}, or {@code -1} if there is none, so no match starts at or after {@code from}. Returns {@code from}
+     * if the pattern has no required literals.
+     */
+    public int indexOf(CharSequence input, int from) {
+        return searcher == null ? from : searcher.indexOf(input, from);
+    }
+
+    /**
+     * Returns {@code false} if no part of {@code input} can match.
+     */
+    public boolean mayFind(CharSequence input) {
+        return searcher == null || searcher.indexOf(input, 0) >= 0;
+    }
+
+    /**
+     * Returns {@code false} if {@code input} as a whole cannot match.
+     */
+    public boolean mayMatch(CharSequence input) {
+        String prefix = literals.getPrefix(), suffix = literals.getSuffix();
+        int n = input.length();
+        if (n < prefix.length() || n < suffix.length()) {
+            return false;
+        }
+        for (int i = 0; i < prefix.length(); i++) {
+            if (input.charAt(i) != prefix.charAt(i)) {
+                return false;
+            }
+        }
+        for (int i = 0, offset = n - suffix.length(); i < suffix.length(); i++) {
+            if (input.charAt(offset + i) != suffix.charAt(i)) {
+                return false;
+            }
+        }
+        return mayFind(input);
+    }
+
+    /**
+     * Returns a matcher that runs {@code matcher} only on input this prefilter does not reject, or {@code matcher}
+     * itself if this prefilter rejects nothing.
+     */
+    public PatternMatcher filter(PatternMatcher matcher) {
+        if (!isEffective()) {
+            return matcher;
+        }
+        return new PatternMatcher() {
+            @Override
+            public boolean matches(CharSequence input) {
+                return mayMatch(input) && matcher.matches(input);
+            }
+
+            @Override
+            public boolean find(CharSequence input) {
+                return mayFind(input) && matcher.find(input);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,231 @@
+package org.util.text.regex.nfa;
+
+import org.util.text.regex.CharSet;
+import org.util.text.regex.Parser;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+
+/**
+ * A set of patterns matched together: one scan of the input reports every pattern that matches, however many
+ * patterns the set holds.
+ * <p>
+ * Each pattern is compiled to its own {@link Nfa}, in parallel, and the automata are joined under a chain of
+ * {@code SPLIT} states into one whose {@code MATCH} states carry the index of their pattern. Matching runs a
+ * {@link LazyDfa} over the combined automaton, so each DFA state knows the patterns it accepts. Adding patterns only
+ * compiles the new ones and appends their states, and a split to the existing start, to state arrays shared by every
+ * version of the automaton and grown by doubling, so adding patterns one at a time copies each state a constant
+ * number of times on average.
+ * <p>
+ * A set is thread-safe: {@link #add(Collection)} publishes a new automaton atomically, and each thread matches with
+ * its own lazy DFA. That DFA is rebuilt from scratch, its cached states discarded, the first time the thread matches
+ * after the set changes, so adding patterns in batches rather than between matches saves rebuilding it.
+ *
+ * @author ahmad
+ */
+public final class RegexSet {
+
+    public static final long DEFAULT_CACHE_BYTES = 16 << 20;
+
+    private static final Snapshot EMPTY = new Snapshot(new String[0], null);
+
+    private final long maxCacheBytes;
+    private final ThreadLocal<LazyDfa> dfas = new ThreadLocal<>();
+    private volatile Snapshot snapshot = EMPTY;
+
+    /*
+     * the states of the combined automaton, appended to under the lock of add; a snapshot reads only the states that
+     * were there when it was published, so appending never disturbs it
+     */
+    private int[] op = new int[16];
+    private char[] ch = new char[16];
+    private CharSet[] sets = new CharSet[16];
+    private int[] out = new int[16];
+    private int[] out1 = new int[16];
+    private int stateCount;
+
+    private RegexSet(long maxCacheBytes) {
+        if (maxCacheBytes <= 0) {
+            throw new IllegalArgumentException("maxCacheBytes = " + maxCacheBytes);
+        }
+        this.maxCacheBytes = maxCacheBytes;
+    }
+
+    /**
+     * Returns an empty set whose lazy DFAs each cache at most {@link #DEFAULT_CACHE_BYTES}.
+     */
+    public static RegexSet create() {
+        return new RegexSet(DEFAULT_CACHE_BYTES);
+    }
+
+    /**
+     * Returns an empty set whose lazy DFAs each cache at most about {@code maxCacheBytes}.
+     */
+    public static RegexSet create(long maxCacheBytes) {
+        return new RegexSet(maxCacheBytes);
+    }
+
+    /**
+     * Compiles {@code patterns} into a new set; pattern {@code i} of the iteration order gets index {@code i}.
+     *
+     * @throws java.util.regex.PatternSyntaxException if any of the patterns is invalid
+     */
+    public static RegexSet compile(Collection<String> patterns) {
+        RegexSet set = create();
+        set.add(patterns);
+        return set;
+    }
+
+    /**
+     * Adds {@code pattern} to the set.
+     *
+     * @return the index of the pattern
+     * @throws java.util.regex.PatternSyntaxException if the pattern is invalid
+     */
+    public int add(String pattern) {
+        return add(Collections.singletonList(pattern));
+    }
+
+    /**
+     * Adds {@code patterns} to the set, parsing and compiling them in parallel. If any of them is invalid the set is
+     * left unchanged.
+     *
+     * @return the index of the first added pattern; the others follow in iteration order
+     * @throws java.util.regex.PatternSyntaxException if any of the patterns is invalid
+     */
+    public synchronized int add(Collection<String> patterns) {
+        String[] added = patterns.toArray(new String[0]);
+        List<Nfa> compiled = Arrays.stream(added).parallel()
+                .map(pattern -> Nfa.compile(Parser.parse(pattern)))
+                .collect(Collectors.toList());
+        Snapshot current = snapshot;
+        int first = current.patterns.length;
+        if (added.length > 0) {
+            String[] all = Arrays.copyOf(current.patterns, first + added.length);
+            System.arraycopy(added, 0, all, first, added.length);
+            snapshot = new Snapshot(all, link(current.nfa, compiled, first));
+        }
+        return first;
+    }
+
+    /**
+     * Appends the states of {@code compiled} to those of {@code nfa}, tagging their {@code MATCH} states with
+     * pattern indices from {@code first}, and splits from a new start state into the old start state and the start
+     * state of each new automaton.
+     */
+    private Nfa link(Nfa nfa, List<Nfa> compiled, int first) {
+        int count = stateCount + compiled.size() + (nfa == null ? -1 : 0);
+        for (Nfa pattern : compiled) {
+            count += pattern.stateCount();
+        }
+        ensureCapacity(count);
+        int[] starts = new int[compiled.size()];
+        int offset = stateCount;
+        for (int i = 0; i < starts.length; i++) {
+            Nfa pattern = compiled.get(i);
+            for (int s = 0; s < pattern.stateCount(); s++) {
+                int t = offset + s;
+                op[t] = pattern.op(s);
+                ch[t] = pattern.ch(s);
+                sets[t] = pattern.set(s);
+                out[t] = op[t] == Nfa.MATCH ? first + i : shift(pattern.out(s), offset);
+                out1[t] = shift(pattern.out1(s), offset);
+            }
+            starts[i] = offset + pattern.start();
+            offset += pattern.stateCount();
+        }
+        int start = starts[starts.length - 1];
+        for (int i = starts.length - 2; i >= 0; i--) {
+            start = split(op, out, out1, offset++, starts[i], start);
+        }
+        if (nfa != null) {
+            start = split(op, out, out1, offset, nfa.start(), start);
+        }
+        stateCount = count;
+        return new Nfa(op, ch, sets, out, out1, count, start, -1);
+    }
+
+    /**
+     * Grows the state arrays to hold at least {@code count} states, doubling them; the published automata keep the
+     * arrays they were built with.
+     */
+    private void ensureCapacity(int count) {
+        if (count > op.length) {
+            int capacity = Math.max(count, 2 * op.length);
+            op = Arrays.copyOf(op, capacity);
+            ch = Arrays.copyOf(ch, capacity);
+            sets = Arrays.copyOf(sets, capacity);
+            out = Arrays.copyOf(out, capacity);
+            out1 = Arrays.copyOf(out1, capacity);
+        }
+    }
+
+    private static int shift(int state, int offset) {
+        return state < 0 ? state : state + offset;
+    }
+
+    private static int split(int[] op, int[] out, int[] out1, int state, int next, int next1) {
+        op[state] = Nfa.SPLIT;
+        out[state] = next;
+        out1[state] = next1;
+        return state;
+    }
+
+    public int size() {
+        return snapshot.patterns.length;
+    }
+
+    public String pattern(int index) {
+        return snapshot.patterns[index];
+    }
+
+    /**
+     * Returns the indices of the patterns that match somewhere in {@code input}.
+     */
+    public BitSet find(CharSequence input) {
+        Snapshot current = snapshot;
+        BitSet matched = new BitSet(current.patterns.length);
+        if (current.nfa != null) {
+            dfaFor(current).findAll(input, matched);
+        }
+        return matched;
+    }
+
+    /**
+     * Returns the indices of the patterns that match the whole of {@code input}.
+     */
+    public BitSet matches(CharSequence input) {
+        Snapshot current = snapshot;
+        BitSet matched = new BitSet(current.patterns.length);
+        if (current.nfa != null) {
+            dfaFor(current).matchesAll(input, matched);
+        }
+        return matched;
+    }
+
+    private LazyDfa dfaFor(Snapshot current) {
+        LazyDfa dfa = dfas.get();
+        if (dfa == null || dfa.nfa() != current.nfa) {
+            dfa = current.nfa.lazyDfa(maxCacheBytes);
+            dfas.set(dfa);
+        }
+        return dfa;
+    }
+
+    private static final class Snapshot {
+
+        private final String[] patterns;
+        private final Nfa nfa;
+
+        private Snapshot(String[] patterns, Nfa nfa) {
+            this.patterns = patterns;
+            this.nfa = nfa;
+        }
+
+    }
+
+}
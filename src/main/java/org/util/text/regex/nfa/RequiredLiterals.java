@@ -0,0 +1,281 @@
+package org.util.text.regex.nfa;
+
+import org.util.text.regex.CharSet;
+import org.util.text.regex.ParseTree;
+import org.util.text.regex.TreeNode;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The literals every match of a pattern must contain: a prefix every match starts with, a suffix every match ends
+ * with, and a set of factors of which every match contains at least one.
+ * <p>
+ * Computed bottom-up over the tree, keeping for each node its common prefix and suffix, the set of its matches if it
+ * has at most {@value #MAX_LITERALS} of them, and its best factor set: the one whose shortest literal is longest. A
+ * concatenation joins the suffixes of its left operand to the prefixes of its right one; an alternation unites the
+ * factors of its operands; a nullable node has none. A class of at most {@value #MAX_LITERALS} characters counts as
+ * the alternation of them, and a larger one as any character; a repetition counts as its least number of repeats.
+ * Literals are cut to {@value #MAX_LENGTH} characters.
+ *
+ * @author ahmad
+ */
+public final class RequiredLiterals {
+
+    public static final int MAX_LITERALS = 32;
+    public static final int MAX_LENGTH = 32;
+
+    private final String prefix;
+    private final String suffix;
+    private final Set<String> factors;
+
+    private RequiredLiterals(String prefix, String suffix, Set<String> factors) {
+        this.prefix = prefix;
+        this.suffix = suffix;
+        this.factors = factors;
+    }
+
+    public static RequiredLiterals of(ParseTree tree) {
+        Deque<Info> stack = new ArrayDeque<>();
+        for (TreeNode node : Trees.postOrder(tree.getRoot())) {
+            Info info;
+            switch (node.getType()) {
+                case LITERAL:
+                    String literal = String.valueOf(node.getValue());
+                    info = new Info(Collections.singleton(literal), literal, literal, Collections.singleton(literal));
+                    break;
+                case CHAR_CLASS:
+                    info = charClass(node.getCharSet());
+                    break;
+                case EPSILON:
+                    info = new Info(Collections.singleton(""), "", "", null);
+                    break;
+                case KLEENE_STAR:
+                    stack.pop();
+                    info = new Info(null, "", "", null);
+                    break;
+                case KLEENE_PLUS:
+                    Info operand = stack.pop();
+                    info = new Info(null, operand.prefix, operand.suffix, best(operand.factors, operand.exact));
+                    break;
+                case REPETITION:
+                    info = repetition(stack.pop(), node.getMin(), node.getMax());
+                    break;
+                case CONCATENATION:
+                    Info right = stack.pop();
+                    info = concatenation(stack.pop(), right);
+                    break;
+                case ALTERNATION:
+                    right = stack.pop();
+                    info = alternation(stack.pop(), right);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unexpected " + node.getType() + " node " + node);
+            }
+            stack.push(info);
+        }
+        Info root = stack.pop();
+        Set<String> factors = best(best(root.factors, root.exact),
+                best(Collections.singleton(root.prefix), Collections.singleton(root.suffix)));
+        return new RequiredLiterals(root.prefix, root.suffix,
+                factors == null ? Collections.<String>emptySet() : Collections.unmodifiableSet(factors));
+    }
+
+    /**
+     * Returns the info of a class, which is that of the alternation of its characters if it has few enough of them.
+     */
+    private static Info charClass(CharSet set) {
+        if (set.size() > MAX_LITERALS) {
+            return new Info(null, "", "", null);
+        }
+        Set<String> chars = new LinkedHashSet<>();
+        for (int r = 0; r < set.rangeCount(); r++) {
+            for (int c = set.rangeStart(r); c <= set.rangeEnd(r); c++) {
+                chars.add(String.valueOf((char) c));
+            }
+        }
+        String common = chars.size() == 1 ? chars.iterator().next() : "";
+        return new Info(chars, common, common, chars);
+    }
+
+    /**
+     * Returns the info of a repetition, which is that of its least number of repeats, joined as a concatenation up to
+     * {@value #MAX_LENGTH} of them, with no exact set unless the count is fixed.
+     */
+    private static Info repetition(Info operand, int min, int max) {
+        if (min == 0) {
+            return new Info(max == 0 ? Collections.singleton("") : null, "", "", null);
+        }
+        Info info = operand;
+        for (int i = 1; i < Math.min(min, MAX_LENGTH); i++) {
+            info = concatenation(info, operand);
+        }
+        if (max == min && min <= MAX_LENGTH) {
+            return info;
+        }
+        return new Info(null, info.prefix, info.suffix, best(info.factors, info.exact));
+    }
+
+    private static Info concatenation(Info left, Info right) {
+        String leftOnly = only(left.exact);
+        String rightOnly = only(right.exact);
+        String prefix = leftOnly != null ? head(leftOnly + right.prefix) : left.prefix;
+        String suffix = rightOnly != null ? tail(left.suffix + rightOnly) : right.suffix;
+        Set<String> exact = product(left.exact, right.exact);
+        Set<String> factors = best(best(left.factors, right.factors), exact);
+        if (left.exact != null) {
+            factors = best(factors, product(left.exact, Collections.singleton(right.prefix), true));
+        }
+        if (right.exact != null) {
+            factors = best(factors, product(Collections.singleton(left.suffix), right.exact, true));
+        }
+        factors = best(factors, Collections.singleton(head(left.suffix + right.prefix)));
+        return new Info(exact, prefix, suffix, factors);
+    }
+
+    private static Info alternation(Info left, Info right) {
+        Set<String> exact = union(left.exact, right.exact);
+        String prefix = commonPrefix(left.prefix, right.prefix);
+        String suffix = commonSuffix(left.suffix, right.suffix);
+        Set<String> factors = union(best(left.factors, left.exact), best(right.factors, right.exact));
+        String affix = prefix.length() >= suffix.length() ? prefix : suffix;
+        factors = best(best(factors, exact), Collections.singleton(affix));
+        return new Info(exact, prefix, suffix, factors);
+    }
+
+    /**
+     * Returns the better factor set: the one whose shortest literal is longest, then the smaller one, or {@code null}
+     * if neither has a non-empty literal in every match.
+     */
+    private static Set<String> best(Set<String> a, Set<String> b) {
+        int scoreA = score(a), scoreB = score(b);
+        if (scoreA <= 0 && scoreB <= 0) {
+            return null;
+        }
+        if (scoreA != scoreB) {
+            return scoreA > scoreB ? a : b;
+        }
+        return a.size() <= b.size() ? a : b;
+    }
+
+    private static int score(Set<String> set) {
+        if (set == null) {
+            return -1;
+        }
+        int min = Integer.MAX_VALUE;
+        for (String s : set) {
+            min = Math.min(min, s.length());
+        }
+        return min;
+    }
+
+    private static String only(Set<String> set) {
+        return set != null && set.size() == 1 ? set.iterator().next() : null;
+    }
+
+    private static Set<String> product(Set<String> left, Set<String> right) {
+        return product(left, right, false);
+    }
+
+    /**
+     * Returns the concatenations of {@code left} and {@code right}, or {@code null} if there are too many or, unless
+     * {@code cut}, one is too long.
+     */
+    private static Set<String> product(Set<String> left, Set<String> right, boolean cut) {
+        if (left == null || right == null || left.size() * right.size() > MAX_LITERALS) {
+            return null;
+        }
+        Set<String> product = new LinkedHashSet<>();
+        for (String l : left) {
+            for (String r : right) {
+                if (l.length() + r.length() > MAX_LENGTH && !cut) {
+                    return null;
+                }
+                product.add(head(l + r));
+            }
+        }
+        return product;
+    }
+
+    private static Set<String> union(Set<String> a, Set<String> b) {
+        if (a == null || b == null || a.size() + b.size() > MAX_LITERALS) {
+            return null;
+        }
+        Set<String> union = new LinkedHashSet<>(a);
+        union.addAll(b);
+        return union.size() <= MAX_LITERALS ? union : null;
+    }
+
+    private static String head(String s) {
+        return s.length() <= MAX_LENGTH ? s : s.substring(0, MAX_LENGTH);
+    }
+
+    private static String tail(String s) {
+        return s.length() <= MAX_LENGTH ? s : s.substring(s.length() - MAX_LENGTH);
+    }
+
+    private static String commonPrefix(String a, String b) {
+        int n = 0;
+        while (n < a.length() && n < b.length() && a.charAt(n) == b.charAt(n)) {
+            ++n;
+        }
+        return a.substring(0, n);
+    }
+
+    private static String commonSuffix(String a, String b) {
+        int n = 0;
+        while (n < a.length() && n < b.length() && a.charAt(a.length() - 1 - n) == b.charAt(b.length() - 1 - n)) {
+            ++n;
+        }
+        return a.substring(a.length() - n);
+    }
+
+    /**
+     * Returns the prefix of every match, at most {@value #MAX_LENGTH} characters.
+     */
+    public String getPrefix() {
+        return prefix;
+    }
+
+    /**
+     * Returns the suffix of every match, at most {@value #MAX_LENGTH} characters.
+     */
+    public String getSuffix() {
+        return suffix;
+    }
+
+    /**
+     * Returns non-empty literals of which every match contains one, or an empty set if the analysis found none.
+     */
+    public Set<String> getFactors() {
+        return factors;
+    }
+
+    @Override
+    public String toString() {
+        return "prefix=" + prefix + ", suffix=" + suffix + ", factors=" + factors;
+    }
+
+    private static final class Info {
+
+        /* the matches, or null if there are too many */
+        final Set<String> exact;
+        final String prefix;
+        final String suffix;
+        /* null if none is known */
+        final Set<String> factors;
+
+        Info(Set<String> exact, String prefix, String suffix, Set<String> factors) {
+            this.exact = exact;
+            this.prefix = prefix;
+            this.suffix = suffix;
+            this.factors = factors;
+        }
+
+    }
+
+}
@@ -0,0 +1,45 @@
+package org.util.text.regex.nfa;
+
+/**
+ * A set of state indices with constant-time insertion, membership test and clearing, iterated in insertion order.
+ *
+ * @author ahmad
+ */
+final class SparseSet {
+
+    private final int[] dense;
+    private final int[] sparse;
+    private int size;
+
+    SparseSet(int capacity) {
+        dense = new int[capacity];
+        sparse = new int[capacity];
+    }
+
+    boolean contains(int value) {
+        int i = sparse[value];
+        return i < size && dense[i] == value;
+    }
+
+    void add(int value) {
+        sparse[value] = size;
+        dense[size++] = value;
+    }
+
+    int get(int i) {
+        return dense[i];
+    }
+
+    int size() {
+        return size;
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    void clear() {
+        size = 0;
+    }
+
+}
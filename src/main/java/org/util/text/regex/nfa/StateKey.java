@@ -0,0 +1,34 @@
+package org.util.text.regex.nfa;
+
+import java.util.Arrays;
+
+/**
+ * A sorted set of NFA states, usable as a hash key for the DFA state it stands for.
+ *
+ * @author ahmad
+ */
+final class StateKey {
+
+    private final int[] states;
+    private final int hash;
+
+    StateKey(int[] states) {
+        this.states = states;
+        this.hash = Arrays.hashCode(states);
+    }
+
+    int[] states() {
+        return states;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof StateKey && Arrays.equals(states, ((StateKey) o).states);
+    }
+
+}
@@ -0,0 +1,147 @@
+package org.util.text.regex.nfa;
+
+import java.nio.CharBuffer;
+
+/**
+ * Finds the matches of an {@link Nfa} in input that arrives in chunks, keeping its state between chunks so that
+ * matches may span them.
+ * <p>
+ * Each active NFA state remembers the leftmost offset at which a match leading to it began. When reading a
+ * character completes a non-empty match, its start and end offsets are reported to the {@link MatchListener} at
+ * once, so nothing of the input is retained and memory stays proportional to the automaton however long the stream
+ * is. A stream matcher is not thread-safe.
+ *
+ * @author ahmad
+ */
+public final class StreamMatcher {
+
+    private final Nfa nfa;
+    private final MatchListener listener;
+    private final int[] stack;
+    private SparseSet current;
+    private SparseSet next;
+    private long[] currentStarts;
+    private long[] nextStarts;
+    private long position;
+
+    StreamMatcher(Nfa nfa, MatchListener listener) {
+        this.nfa = nfa;
+        this.listener = listener;
+        int n = nfa.stateCount();
+        stack = new int[2 * n + 1];
+        current = new SparseSet(n);
+        next = new SparseSet(n);
+        currentStarts = new long[n];
+        nextStarts = new long[n];
+        reset();
+    }
+
+    /**
+     * Reads all of {@code chunk}.
+     */
+    public void feed(CharSequence chunk) {
+        feed(chunk, 0, chunk.length());
+    }
+
+    /**
+     * Reads the characters of {@code chunk} from {@code start} to {@code end}.
+     */
+    public void feed(CharSequence chunk, int start, int end) {
+        checkRange(start, end, chunk.length());
+        for (int i = start; i < end; i++) {
+            step(chunk.charAt(i));
+        }
+    }
+
+    /**
+     * Reads {@code length} characters of {@code chunk} from {@code offset}.
+     */
+    public void feed(char[] chunk, int offset, int length) {
+        checkRange(offset, offset + length, chunk.length);
+        for (int i = offset, end = offset + length; i < end; i++) {
+            step(chunk[i]);
+        }
+    }
+
+    /**
+     * Reads the remaining characters of {@code chunk}, advancing its position to its limit.
+     */
+    public void feed(CharBuffer chunk) {
+        if (chunk.hasArray()) {
+            int offset = chunk.arrayOffset() + chunk.position();
+            feed(chunk.array(), offset, chunk.remaining());
+            chunk.position(chunk.limit());
+        } else {
+            while (chunk.hasRemaining()) {
+                step(chunk.get());
+            }
+        }
+    }
+
+    /**
+     * Returns the number of characters read since creation or the last {@link #reset()}.
+     */
+    public long position() {
+        return position;
+    }
+
+    /**
+     * Forgets the input read so far, as if starting a new stream.
+     */
+    public void reset() {
+        position = 0;
+        current.clear();
+        addState(current, currentStarts, nfa.start(), 0);
+    }
+
+    private void step(char c) {
+        SparseSet from = current, to = next;
+        long[] fromStarts = currentStarts, toStarts = nextStarts;
+        to.clear();
+        /* states are kept in order of their start, so the first start to reach a state is the leftmost */
+        for (int i = 0, n = from.size(); i < n; i++) {
+            int state = from.get(i);
+            if (nfa.consumes(state, c)) {
+                addState(to, toStarts, nfa.out(state), fromStarts[state]);
+            }
+        }
+        ++position;
+        if (to.contains(nfa.match())) {
+            listener.onMatch(toStarts[nfa.match()], position);
+        }
+        addState(to, toStarts, nfa.start(), position);
+        current = to;
+        next = from;
+        currentStarts = toStarts;
+        nextStarts = fromStarts;
+    }
+
+    private void addState(SparseSet states, long[] starts, int state, long start) {
+        int top = 0;
+        stack[top++] = state;
+        while (top > 0) {
+            int s = stack[--top];
+            if (states.contains(s)) {
+                continue;
+            }
+            states.add(s);
+            starts[s] = start;
+            switch (nfa.op(s)) {
+                case Nfa.SPLIT:
+                    stack[top++] = nfa.out1(s);
+                    stack[top++] = nfa.out(s);
+                    break;
+                case Nfa.JUMP:
+                    stack[top++] = nfa.out(s);
+                    break;
+            }
+        }
+    }
+
+    private static void checkRange(int start, int end, int length) {
+        if (start < 0 || start > end || end > length) {
+            throw new IndexOutOfBoundsException("start " + start + ", end " + end + ", length " + length);
+        }
+    }
+
+}
@@ -0,0 +1,52 @@
+package org.util.text.regex.nfa;
+
+import org.util.text.regex.TreeNode;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * @author ahmad
+ */
+final class Trees {
+
+    private Trees() {
+    }
+
+    /**
+     * Lists the operator and leaf nodes under {@code root} in post-order, left operand first, skipping the
+     * {@link TreeNode.Type#SYMBOL} nodes, without recursion.
+     */
+    static List<TreeNode> postOrder(TreeNode root) {
+        List<TreeNode> nodes = new ArrayList<>();
+        Deque<TreeNode> pending = new ArrayDeque<>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            TreeNode node = pending.pop();
+            nodes.add(node);
+            List<TreeNode> children = node.getChildren();
+            switch (node.getType()) {
+                case KLEENE_STAR:
+                case KLEENE_PLUS:
+                case REPETITION:
+                    pending.push(children.get(0));
+                    break;
+                case CONCATENATION:
+                    pending.push(children.get(0));
+                    pending.push(children.get(1));
+                    break;
+                case ALTERNATION:
+                    pending.push(children.get(0));
+                    pending.push(children.get(2));
+                    break;
+            }
+        }
+        for (int i = 0, j = nodes.size() - 1; i < j; i++, j--) {
+            nodes.set(i, nodes.set(j, nodes.get(i)));
+        }
+        return nodes;
+    }
+
+}
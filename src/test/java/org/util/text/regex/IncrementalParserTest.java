@@ -0,0 +1,67 @@
+package org.util.text.regex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * @author ahmad
+ */
+class IncrementalParserTest {
+
+    private static final String EDITS = "ab()|*+\\{},0123";
+
+    @Test
+    void editsBuildTheTreeOfAFullParse() {
+        RandomPatterns random = new RandomPatterns(5);
+        for (int round = 0; round < 1_000; round++) {
+            String pattern = valid(random);
+            IncrementalParser parser = IncrementalParser.of(pattern);
+            ParseTree held = parser.getTree();
+            String heldTree = show(held);
+            for (int edit = 0; edit < 30; edit++) {
+                String current = parser.getPattern();
+                int offset = random.random().nextInt(current.length() + 1);
+                int deleted = Math.min(random.random().nextInt(3), current.length() - offset);
+                String inserted = random.string(random.random().nextBoolean() ? "abc" : EDITS, 3);
+                String edited = current.substring(0, offset) + inserted + current.substring(offset + deleted);
+                String expected;
+                try {
+                    expected = show(Parser.parse(edited));
+                } catch (PatternSyntaxException e) {
+                    assertThrows(PatternSyntaxException.class, () -> parser.edit(offset, deleted, inserted), edited);
+                    assertNull(parser.getTree());
+                    assertEquals(edited, parser.getPattern());
+                    continue;
+                }
+                ParseTree tree = parser.edit(offset, deleted, inserted);
+                assertEquals(expected, show(tree), current + " -> " + edited);
+                assertEquals(heldTree, show(held), "an earlier tree changed");
+                if (random.random().nextBoolean()) {
+                    held = tree;
+                    heldTree = expected;
+                }
+            }
+        }
+    }
+
+    private static String valid(RandomPatterns random) {
+        while (true) {
+            String pattern = random.pattern(16);
+            try {
+                Parser.parse(pattern);
+                return pattern;
+            } catch (PatternSyntaxException ignored) {
+            }
+        }
+    }
+
+    private static String show(ParseTree tree) {
+        return TreePrinter.toString(tree, TreePrinter.Format.COMPACT) + ParserEngineTest.json(tree);
+    }
+
+}
@@ -0,0 +1,69 @@
+package org.util.text.regex;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+
+/**
+ * @author ahmad
+ */
+class ParseTreeCodecTest {
+
+    @Test
+    void readsBackWhatItEncodes() {
+        RandomPatterns random = new RandomPatterns(3);
+        TreeInterner interner = TreeInterner.create();
+        for (int i = 0; i < 5_000; i++) {
+            String pattern = random.pattern(12);
+            ParseTree tree;
+            try {
+                tree = Parser.parse(pattern);
+            } catch (PatternSyntaxException e) {
+                continue;
+            }
+            for (ParseTree written : new ParseTree[]{tree, Parser.parse(pattern, Parser.Engine.MULTI_PASS),
+                    interner.parse(pattern)}) {
+                ByteBuffer buffer = ParseTreeCodec.encode(written);
+                ParseTree read = ParseTreeCodec.read(buffer);
+                assertFalse(buffer.hasRemaining(), pattern);
+                assertEquals(written.toString(), read.toString(), pattern);
+                assertEquals(ParserEngineTest.json(written), ParserEngineTest.json(read), pattern);
+            }
+            ParseTreeCodec.Cursor cursor = ParseTreeCodec.cursor(ParseTreeCodec.encode(tree));
+            int nodes = 0;
+            while (cursor.next()) {
+                ++nodes;
+            }
+            assertEquals(cursor.nodeCount(), nodes, pattern);
+        }
+    }
+
+    @Test
+    void loadsWhatItSaves(@TempDir Path dir) throws IOException {
+        RandomPatterns random = new RandomPatterns(4);
+        List<ParseTree> trees = new ArrayList<>();
+        while (trees.size() < 500) {
+            try {
+                trees.add(Parser.parse(random.pattern(12)));
+            } catch (PatternSyntaxException ignored) {
+            }
+        }
+        Path file = dir.resolve("trees.bin");
+        ParseTreeCodec.save(file, trees);
+        List<ParseTree> loaded = ParseTreeCodec.load(file);
+        assertEquals(trees.size(), loaded.size());
+        for (int i = 0; i < trees.size(); i++) {
+            assertEquals(ParserEngineTest.json(trees.get(i)), ParserEngineTest.json(loaded.get(i)));
+        }
+    }
+
+}
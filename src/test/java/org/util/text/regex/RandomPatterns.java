@@ -0,0 +1,55 @@
+package org.util.text.regex;
+
+import java.util.Random;
+
+/**
+ * Seeded random patterns, edits and inputs for the tests.
+ *
+ * @author ahmad
+ */
+public final class RandomPatterns {
+
+    private static final String[] ATOMS = {
+            "a", "b", "c", "é", "一", ".", "[ab]", "[^a]", "[a-c]", "[é-一]", "[\\]a]", "[a-]", "\\.", "\\(", "\\*"
+    };
+    private static final String[] OPERATORS = {
+            "*", "+", "|", "(", ")", "{2}", "{1,3}", "{0,}", "{0}", "{0,1}", "{2,}"
+    };
+
+    /* the characters the atoms match, and a few they do not */
+    public static final String INPUT = "abcé一丁z].(*";
+
+    private final Random random;
+
+    public RandomPatterns(long seed) {
+        random = new Random(seed);
+    }
+
+    public Random random() {
+        return random;
+    }
+
+    /**
+     * Returns a pattern of up to {@code pieces} atoms and operators, which may be invalid.
+     */
+    public String pattern(int pieces) {
+        StringBuilder pattern = new StringBuilder();
+        for (int i = 0, n = 1 + random.nextInt(pieces); i < n; i++) {
+            pattern.append(random.nextInt(3) == 0
+                    ? OPERATORS[random.nextInt(OPERATORS.length)] : ATOMS[random.nextInt(ATOMS.length)]);
+        }
+        return pattern.toString();
+    }
+
+    /**
+     * Returns a string of up to {@code length} characters of {@code alphabet}.
+     */
+    public String string(String alphabet, int length) {
+        StringBuilder string = new StringBuilder();
+        for (int i = 0, n = random.nextInt(length + 1); i < n; i++) {
+            string.append(alphabet.charAt(random.nextInt(alphabet.length())));
+        }
+        return string.toString();
+    }
+
+}
@@ -0,0 +1,40 @@
+package org.util.text.regex;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * @author ahmad
+ */
+class SinglePassParserTest {
+
+    @Test
+    void listenerThatParsesDoesNotDisturbTheOuterParse() {
+        String outer = "(ab|c)*d{2,3}|[x-z]+";
+        String inner = "a(b|cd)*";
+        String expectedOuter = Parser.parse(outer).toString();
+        String expectedInner = Parser.parse(inner).toString();
+        List<String> nested = new ArrayList<>();
+        ParseListener listener = (regex, phase, nanos, tokens, count) -> {
+            if (regex.equals(outer)) {
+                nested.add(Parser.parse(inner).toString());
+            }
+        };
+        Parser.addListener(listener);
+        try {
+            assertEquals(expectedOuter, Parser.parse(outer).toString());
+            assertEquals(expectedOuter, SinglePassParser.parseCompact(outer).toParseTree().toString());
+        } finally {
+            Parser.removeListener(listener);
+        }
+        assertEquals(7, nested.size());
+        for (String tree : nested) {
+            assertEquals(expectedInner, tree);
+        }
+    }
+
+}
@@ -0,0 +1,141 @@
+package org.util.text.regex.nfa;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.util.text.regex.ParseTree;
+import org.util.text.regex.Parser;
+import org.util.text.regex.RandomPatterns;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks every matcher against {@link java.util.regex} on random patterns that both accept, leaving out stacked
+ * quantifiers, which {@code java.util.regex} reads as possessive or reluctant.
+ *
+ * @author ahmad
+ */
+class MatcherTest {
+
+    private static final Pattern STACKED = Pattern.compile("[*+}][*+{]");
+
+    @Test
+    void matchersAgreeWithJavaUtilRegex() {
+        RandomPatterns random = new RandomPatterns(6);
+        int compared = 0;
+        while (compared < 2_000) {
+            String pattern = random.pattern(10);
+            Pattern expected = compile(pattern);
+            if (expected == null) {
+                continue;
+            }
+            ParseTree tree = Parser.parse(pattern);
+            Nfa nfa = Nfa.compile(tree);
+            List<PatternMatcher> matchers = new ArrayList<>(Arrays.asList(nfa, nfa.matcher(), nfa.lazyDfa(),
+                    nfa.lazyDfa(1), BitParallelMatcher.compile(tree), BytecodeMatcher.compile(tree),
+                    Prefilter.compile(tree).filter(nfa)));
+            try {
+                Dfa dfa = Dfa.compile(tree);
+                matchers.add(dfa);
+                matchers.add(Dfa.wrap(dfa.toByteBuffer()));
+            } catch (IllegalArgumentException ignored) {
+            }
+            RegexSet set = RegexSet.compile(Arrays.asList("zz", pattern));
+            for (int i = 0; i < 20; i++) {
+                String input = random.string(RandomPatterns.INPUT, 10);
+                boolean matches = expected.matcher(input).matches();
+                boolean finds = expected.matcher(input).find();
+                for (PatternMatcher matcher : matchers) {
+                    String name = matcher.getClass().getSimpleName() + " " + pattern + " / " + input;
+                    assertEquals(matches, matcher.matches(input), name);
+                    assertEquals(finds, matcher.find(input), name);
+                }
+                BitSet setMatches = set.matches(input), setFinds = set.find(input);
+                assertEquals(matches, setMatches.get(1), pattern + " / " + input);
+                assertEquals(finds, setFinds.get(1), pattern + " / " + input);
+                assertEquals(input.equals("zz"), setMatches.get(0), pattern + " / " + input);
+                assertEquals(input.contains("zz"), setFinds.get(0), pattern + " / " + input);
+                assertEquals(leftmostStarts(expected, input), streamed(nfa, input), pattern + " / " + input);
+            }
+            ++compared;
+        }
+    }
+
+    @Test
+    void dfaTablesRoundTrip(@TempDir Path dir) throws IOException {
+        RandomPatterns random = new RandomPatterns(7);
+        int compared = 0;
+        while (compared < 200) {
+            String pattern = random.pattern(10);
+            Pattern expected = compile(pattern);
+            if (expected == null) {
+                continue;
+            }
+            Dfa dfa = Dfa.compile(Parser.parse(pattern));
+            /* a new file each time, since a mapped file must not be truncated */
+            Path file = dir.resolve("dfa" + compared + ".bin");
+            dfa.save(file);
+            Dfa loaded = Dfa.load(file);
+            assertEquals(dfa.toByteBuffer(), loaded.toByteBuffer(), pattern);
+            assertEquals(dfa.stateCount(), loaded.stateCount(), pattern);
+            assertEquals(dfa.classCount(), loaded.classCount(), pattern);
+            for (int i = 0; i < 20; i++) {
+                String input = random.string(RandomPatterns.INPUT, 10);
+                assertEquals(expected.matcher(input).matches(), loaded.matches(input), pattern + " / " + input);
+                assertEquals(expected.matcher(input).find(), loaded.find(input), pattern + " / " + input);
+            }
+            ++compared;
+        }
+    }
+
+    /**
+     * Returns the start of the leftmost non-empty match ending at each offset where one ends.
+     */
+    private static Map<Long, Long> leftmostStarts(Pattern pattern, String input) {
+        Map<Long, Long> starts = new HashMap<>();
+        for (int end = 1; end <= input.length(); end++) {
+            for (int start = 0; start < end; start++) {
+                if (pattern.matcher(input.substring(start, end)).matches()) {
+                    starts.put((long) end, (long) start);
+                    break;
+                }
+            }
+        }
+        return starts;
+    }
+
+    /**
+     * Feeds {@code input} to a stream matcher in two chunks and returns the matches it reports.
+     */
+    private static Map<Long, Long> streamed(Nfa nfa, String input) {
+        Map<Long, Long> starts = new HashMap<>();
+        StreamMatcher matcher = nfa.streamMatcher((start, end) -> assertTrue(starts.put(end, start) == null));
+        matcher.feed(input, 0, input.length() / 2);
+        matcher.feed(input, input.length() / 2, input.length());
+        return starts;
+    }
+
+    private static Pattern compile(String pattern) {
+        if (STACKED.matcher(pattern).find()) {
+            return null;
+        }
+        try {
+            Parser.parse(pattern);
+            return Pattern.compile(pattern, Pattern.DOTALL);
+        } catch (PatternSyntaxException e) {
+            return null;
+        }
+    }
+
+}